@@ -1,30 +1,46 @@
+import io.AutoSaver;
+import io.BulkTransfer;
+import io.ImportFormatException;
 import io.ProjectsFileIO;
+import io.ProjectsJournal;
+import io.ShardedProjectStore;
+import metrics.Gauges;
+import metrics.Metrics;
 import model.Project;
 import model.ProjectsManager;
+import server.ProjectsHttpServer;
 import ui.MainUI;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 
 public class ProjectApp {
 
     private static final String FILE_NAME = "projects.ser";
+    private static final String STORE_NAME = "projects.d";
+    private static final String JOURNAL_NAME = "projects.journal";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int SHUTDOWN_WAIT_SECONDS = 5;
 
-    public void run() throws Exception { // we do not catch all exceptions
+    private final File projectsFile = new File(FILE_NAME);
+    private final ShardedProjectStore store = new ShardedProjectStore(new File(STORE_NAME));
+    private final File journalFile = new File(JOURNAL_NAME);
+    private final ProjectsManager projectsManager = new ProjectsManager();
+    private ProjectsJournal journal = null;
+    private AutoSaver autoSaver = null;
+    private Gauges gauges = null;
+    private boolean couldReadFile = false;
 
-        File projectsFile = new File(FILE_NAME);
-        ProjectsManager projectsManager = new ProjectsManager();
-        boolean couldReadFile = false;
+    public void run() throws Exception { // we do not catch all exceptions
 
         try {
 
-            if (projectsFile.exists()) {
-                List<Project> projects = ProjectsFileIO.deSerializeFromFile(projectsFile);
-                projectsManager.setProjects(projects);
-                couldReadFile = true;
-            }
-
+            load();
             MainUI ui = new MainUI(projectsManager);
             ui.mainLoop();
 
@@ -34,16 +50,152 @@ public class ProjectApp {
         }
 
         // run method about to exit - save data
-        if(couldReadFile || !projectsFile.exists()) {
-            List<Project> projectsToSave = projectsManager.getProjects();
-            ProjectsFileIO.serializeToFile(projectsFile, projectsToSave);
-        }
+        save();
         System.out.println("Application exits");
     }
 
+    /**
+     * Runs without the text ui, answering JSON requests over HTTP until the process is stopped.
+     * Stopping the process (Ctrl-C or kill) lets running requests finish and then saves the data.
+     */
+    public void runServer(int port) throws Exception {
+        load();
+        ProjectsHttpServer server = new ProjectsHttpServer(projectsManager, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(SHUTDOWN_WAIT_SECONDS);
+            try {
+                save();
+                System.out.println("Server stopped, projects saved");
+            } catch (IOException e) {
+                System.out.println("Could not save projects: " + e.getMessage());
+            }
+        }, "shutdown"));
+        server.start();
+        System.out.println("Serving projects on http://localhost:" + server.getPort() + "/projects");
+    }
+
+    /**
+     * Imports projects and tasks from a CSV or JSON Lines file, see BulkTransfer, and saves them.
+     */
+    public void runImport(File file) throws Exception {
+        load();
+        try {
+            BulkTransfer.Result result = BulkTransfer.importFile(projectsManager, file,
+                    BulkTransfer.Format.forFile(file));
+            System.out.println("Imported " + result);
+        } catch (ImportFormatException e) {
+            System.out.println(file + ": " + e.getMessage() + ", nothing was imported");
+        }
+        save();
+    }
+
+    /**
+     * Exports all projects and tasks to a CSV or JSON Lines file, see BulkTransfer.
+     * Nothing is changed, so the store is not written.
+     */
+    public void runExport(File file) throws Exception {
+        load();
+        try {
+            BulkTransfer.Result result = BulkTransfer.exportFile(projectsManager.getProjects(), file,
+                    BulkTransfer.Format.forFile(file));
+            System.out.println("Exported " + result);
+        } finally {
+            close();
+        }
+    }
+
+    private void load() throws IOException, ClassNotFoundException {
+        gauges = Metrics.gauges("ProjectsManager")
+                .add("ProjectCount", projectsManager::getProjectCount)
+                .add("TaskCount", projectsManager::getTaskCount)
+                .add("QueryCacheHits", projectsManager.getQueryCache()::getHitCount)
+                .add("QueryCacheMisses", projectsManager.getQueryCache()::getMissCount)
+                .add("QueryCacheEvictions", projectsManager.getQueryCache()::getEvictionCount);
+        boolean migrating = false;
+        if (store.exists()) {
+            store.loadInto(projectsManager);
+            couldReadFile = true;
+            if (projectsFile.exists()) {
+                System.out.println("Loaded projects from " + STORE_NAME + ", " + FILE_NAME
+                        + " is older and was not read");
+            }
+        } else if (projectsFile.exists()) {
+            // an older single snapshot, saved to the store from now on
+            List<Project> projects = ProjectsFileIO.deSerializeFromFile(projectsFile);
+            projectsManager.setProjects(projects);
+            couldReadFile = true;
+            migrating = true;
+        }
+        if (couldReadFile || !projectsFile.exists()) {
+            // replay changes made since the last save, then record new ones
+            journal = ProjectsJournal.open(journalFile, projectsManager,
+                    ProjectsJournal.DEFAULT_COMMIT_INTERVAL_MILLIS);
+            if (migrating) {
+                // save to the store at once and move the old file away, so only one of them is used
+                journal.checkpoint(store, projectsManager::getProjects);
+                File migrated = new File(FILE_NAME + MIGRATED_SUFFIX);
+                Files.move(projectsFile.toPath(), migrated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Moved projects from " + FILE_NAME + " to " + STORE_NAME
+                        + ", the old file is kept as " + migrated);
+            }
+            // fold the journal into the store now and then, so startup replays less
+            autoSaver = AutoSaver.start(projectsManager, store, journal,
+                    AutoSaver.DEFAULT_INTERVAL_SECONDS);
+        }
+    }
+
+    /**
+     * Stops the auto saver and closes the journal without saving to the store.
+     */
+    private void close() throws IOException {
+        if (autoSaver != null) {
+            autoSaver.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        closeGauges();
+    }
+
+    private void save() throws IOException {
+        if (autoSaver != null) {
+            autoSaver.close();
+        }
+        if (journal != null) {
+            // fold the journal into the store, writing only the changed projects
+            journal.checkpoint(store, projectsManager::getProjects);
+            journal.close();
+        } else if(couldReadFile || !projectsFile.exists()) {
+            store.save(projectsManager.getProjects());
+        }
+        closeGauges();
+    }
+
+    /**
+     * Takes the gauges of the manager and the store away.
+     */
+    private void closeGauges() {
+        if (gauges != null) {
+            gauges.close();
+        }
+        store.close();
+    }
+
+    /**
+     * Starts the text ui, with {@code --server [port]} the headless HTTP server, or with
+     * {@code --import file} or {@code --export file} imports or exports projects and tasks.
+     */
     public static void main(String[] args) throws Exception {
 
         ProjectApp app = new ProjectApp();
-        app.run();
+        if (args.length > 0 && args[0].equals("--server")) {
+            app.runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+        } else if (args.length > 1 && args[0].equals("--import")) {
+            app.runImport(new File(args[1]));
+        } else if (args.length > 1 && args[0].equals("--export")) {
+            app.runExport(new File(args[1]));
+        } else {
+            app.run();
+        }
     }
 }
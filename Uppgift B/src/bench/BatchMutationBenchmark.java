@@ -0,0 +1,128 @@
+package bench;
+
+import io.ProjectsJournal;
+import model.NewTask;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.TaskUpdate;
+import model.matcher.ITaskMatcher;
+import model.matcher.StateMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares adding and changing tasks one at a time with the batch methods
+ * Project.addTasks and Project.updateWhere.
+ * <p>
+ * For 1 000 up to 100 000 tasks it prints the throughput in tasks per second of
+ * addTask against addTasks, and of setState on every matching task against one
+ * updateWhere. Each is measured without listeners and with a ProjectsJournal
+ * recording the changes, where the batch methods make one journal call per batch.
+ */
+public class BatchMutationBenchmark {
+
+    private static final TaskPrio[] PRIOS = TaskPrio.values();
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {1_000, 10_000, 100_000};
+
+        System.out.printf("%-8s %-8s %14s %14s %14s %14s%n", "tasks", "journal",
+                "addTask/s", "addTasks/s", "setState/s", "updateWhere/s");
+        for (int size : sizes) {
+            for (boolean journaled : new boolean[]{false, true}) {
+                // run three times and report the last run, so the JIT has warmed up
+                double[] result = null;
+                for (int run = 0; run < 3; run++) {
+                    result = run(size, journaled);
+                }
+                System.out.printf("%-8d %-8s %14.0f %14.0f %14.0f %14.0f%n", size, journaled ? "yes" : "no",
+                        result[0], result[1], result[2], result[3]);
+            }
+        }
+    }
+
+    /**
+     * Returns the tasks per second of addTask, addTasks, setState and updateWhere.
+     */
+    private static double[] run(int size, boolean journaled) throws IOException {
+        List<NewTask> newTasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            newTasks.add(new NewTask("Task number " + i, PRIOS[i % PRIOS.length]));
+        }
+        ITaskMatcher toDo = new StateMatcher(TaskState.TO_DO);
+
+        double[] result = new double[4];
+        try (Setup one = new Setup(journaled)) {
+            long start = System.nanoTime();
+            for (NewTask n : newTasks) {
+                one.project.addTask(n.getDescription(), n.getPrio());
+            }
+            one.flush();
+            result[0] = perSecond(size, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (Task t : one.project.findTasks(toDo)) {
+                t.setState(TaskState.DONE);
+            }
+            one.flush();
+            result[2] = perSecond(size, System.nanoTime() - start);
+        }
+        try (Setup batch = new Setup(journaled)) {
+            long start = System.nanoTime();
+            batch.project.addTasks(newTasks);
+            batch.flush();
+            result[1] = perSecond(size, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            batch.project.updateWhere(toDo, new TaskUpdate().state(TaskState.DONE));
+            batch.flush();
+            result[3] = perSecond(size, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private static double perSecond(int count, long nanos) {
+        return count * 1e9 / nanos;
+    }
+
+    /**
+     * An empty project in a manager, with a journal in a temporary file if asked for.
+     */
+    private static class Setup implements AutoCloseable {
+        final Project project;
+        final ProjectsJournal journal;
+        final File file;
+
+        Setup(boolean journaled) throws IOException {
+            ProjectsManager manager = new ProjectsManager();
+            if (journaled) {
+                file = File.createTempFile("batch-bench", ".journal");
+                journal = ProjectsJournal.open(file, manager, ProjectsJournal.DEFAULT_COMMIT_INTERVAL_MILLIS);
+            } else {
+                file = null;
+                journal = null;
+            }
+            project = manager.addProject("Benchmark", "Batch benchmark project");
+        }
+
+        void flush() throws IOException {
+            if (journal != null) {
+                journal.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (journal != null) {
+                journal.close();
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package bench;
+
+import model.ChangeEventBus;
+import model.ModelListener;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.util.List;
+
+/**
+ * Measures what listening to changes costs the thread that makes them.
+ * <p>
+ * It changes the state of the same tasks over and over and prints the changes per second
+ * with no listener, with a ModelListener that does some work for every change on the
+ * changing thread, and with a ChangeListener on a ChangeEventBus doing the same work per
+ * event on the bus thread. The work is a short busy loop standing in for, for example,
+ * updating a cache or sending the change on.
+ * <p>
+ * Usage: {@code java bench.ChangeEventBenchmark [changes, default 1000000] [work per change in ns, default 1000]}.
+ */
+public class ChangeEventBenchmark {
+
+    private static final TaskState[] STATES = TaskState.values();
+
+    public static void main(String[] args) throws InterruptedException {
+        int changes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long workNanos = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        System.out.printf("%-16s %14s %14s %10s%n", "listener", "changes/s", "delivered", "dropped");
+        for (int run = 0; run < 3; run++) { // the last run is after the JIT has warmed up
+            boolean print = run == 2;
+
+            ProjectsManager plain = createManager();
+            report(print, "none", changes, time(plain, changes), 0, 0);
+
+            ProjectsManager synchronous = createManager();
+            synchronous.addModelListener(new WorkingListener(workNanos));
+            report(print, "ModelListener", changes, time(synchronous, changes), changes, 0);
+
+            ProjectsManager async = createManager();
+            ChangeEventBus bus = ChangeEventBus.start(async);
+            long[] delivered = new long[1];
+            bus.addListener(events -> {
+                for (int i = 0; i < events.size(); i++) {
+                    work(workNanos);
+                }
+                delivered[0] += events.size();
+            });
+            long nanos = time(async, changes);
+            bus.close();
+            report(print, "ChangeEventBus", changes, nanos, delivered[0], bus.getDroppedCount());
+        }
+    }
+
+    private static ProjectsManager createManager() {
+        ProjectsManager manager = new ProjectsManager();
+        Project project = manager.addProject("Benchmark", "Change event benchmark project");
+        for (int i = 0; i < 1000; i++) {
+            project.addTask("Task number " + i, TaskPrio.MEDIUM);
+        }
+        return manager;
+    }
+
+    /**
+     * Returns the time in nanoseconds to make the given number of state changes.
+     */
+    private static long time(ProjectsManager manager, int changes) {
+        List<Task> tasks = manager.getProjects().get(0).getTasks();
+        long start = System.nanoTime();
+        for (int i = 0; i < changes; i++) {
+            tasks.get(i % tasks.size()).setState(STATES[(i / tasks.size()) % STATES.length]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(boolean print, String name, int changes, long nanos, long delivered, long dropped) {
+        if (print) {
+            System.out.printf("%-16s %14.0f %14d %10d%n", name, changes * 1e9 / nanos, delivered, dropped);
+        }
+    }
+
+    private static void work(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * A ModelListener that does the work for every change on the changing thread.
+     */
+    private static class WorkingListener implements ModelListener {
+        private final long workNanos;
+
+        WorkingListener(long workNanos) {
+            this.workNanos = workNanos;
+        }
+
+        @Override
+        public void projectAdded(Project project) {
+        }
+
+        @Override
+        public void projectRemoved(Project project) {
+        }
+
+        @Override
+        public void taskAdded(Project project, Task task) {
+            work(workNanos);
+        }
+
+        @Override
+        public void taskRemoved(Project project, Task task) {
+            work(workNanos);
+        }
+
+        @Override
+        public void taskUpdated(Project project, Task task) {
+            work(workNanos);
+        }
+    }
+}
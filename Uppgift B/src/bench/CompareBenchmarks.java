@@ -0,0 +1,81 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two CSV files written by MicroBenchmark, for example before and after a change.
+ * <p>
+ * For every benchmark and parameter set found in both files it prints the time per operation
+ * and bytes allocated per operation of both runs and the change in percent. A change is marked
+ * as faster or slower only when it is larger than the threshold and larger than the spread
+ * of the two runs together, so noise is not reported as a change.
+ * <p>
+ * Usage: {@code java bench.CompareBenchmarks old.csv new.csv [threshold percent, default 5]}.
+ * Exits with status 1 if anything got slower, so it can be used in a script.
+ */
+public class CompareBenchmarks {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java bench.CompareBenchmarks old.csv new.csv [threshold percent]");
+            return;
+        }
+        Map<String, MicroBenchmark.Result> before = read(new File(args[0]));
+        Map<String, MicroBenchmark.Result> after = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+
+        boolean slower = false;
+        System.out.printf("%-50s %12s %12s %9s %12s %12s %9s%n",
+                "benchmark", "old ns/op", "new ns/op", "change", "old B/op", "new B/op", "change");
+        for (Map.Entry<String, MicroBenchmark.Result> e : before.entrySet()) {
+            MicroBenchmark.Result b = e.getValue();
+            MicroBenchmark.Result a = after.get(e.getKey());
+            if (a == null) {
+                continue;
+            }
+            double change = percent(b.nanosPerOp, a.nanosPerOp);
+            double noise = b.stdev + a.stdev;
+            String verdict = "";
+            if (Math.abs(change) > threshold && Math.abs(a.nanosPerOp - b.nanosPerOp) > noise) {
+                verdict = change < 0 ? "  faster" : "  SLOWER";
+                slower |= change > 0;
+            }
+            System.out.printf(Locale.ROOT, "%-50s %12.1f %12.1f %+8.1f%% %12.1f %12.1f %+8.1f%%%s%n",
+                    e.getKey(), b.nanosPerOp, a.nanosPerOp, change,
+                    b.bytesPerOp, a.bytesPerOp, percent(b.bytesPerOp, a.bytesPerOp), verdict);
+        }
+        if (slower) {
+            System.exit(1);
+        }
+    }
+
+    private static double percent(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    private static Map<String, MicroBenchmark.Result> read(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(MicroBenchmark.CSV_HEADER)) {
+            throw new IOException("Not a benchmark result file: " + file);
+        }
+        Map<String, MicroBenchmark.Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] f = line.split(",");
+            MicroBenchmark.Result r = new MicroBenchmark.Result(f[0], Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+                    Double.parseDouble(f[3]), Double.parseDouble(f[4]), Double.parseDouble(f[5]),
+                    Long.parseLong(f[6]), Integer.parseInt(f[7]));
+            results.put(r.key(), r);
+        }
+        return results;
+    }
+}
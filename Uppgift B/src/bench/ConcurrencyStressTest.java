@@ -0,0 +1,187 @@
+package bench;
+
+import model.Project;
+import model.ProjectSnapshot;
+import model.ProjectState;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.TitleNotUniqueException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uses one ProjectsManager from many threads at once and checks that nothing was lost.
+ * <p>
+ * Every thread adds projects from a small shared set of titles, so many adds of the same
+ * title race each other, and adds, changes and removes tasks in a few shared projects.
+ * While doing so it reads snapshots of the shared projects and checks that each one is
+ * consistent on its own. Afterwards it checks that project IDs and titles are unique, that every shared project
+ * holds exactly the tasks that were added and not removed, that task IDs are unique,
+ * that the running counts and newest snapshot of every project agree with its tasks, and
+ * that the open tasks of each person agree with the queues used by getNextTask.
+ * Prints the time taken and throws an exception if a check fails.
+ */
+public class ConcurrencyStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 20_000;
+    private static final int TITLES = 500;
+    private static final int SHARED_PROJECTS = 4;
+
+    public static void main(String[] args) throws Exception {
+        ProjectsManager manager = new ProjectsManager();
+        Project[] shared = new Project[SHARED_PROJECTS];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = manager.addProject("Shared " + i, "Stress test project");
+        }
+        AtomicInteger[] expectedTasks = new AtomicInteger[SHARED_PROJECTS];
+        for (int i = 0; i < expectedTasks.length; i++) {
+            expectedTasks[i] = new AtomicInteger();
+        }
+        AtomicInteger projectsAdded = new AtomicInteger(SHARED_PROJECTS);
+        AtomicInteger titleClashes = new AtomicInteger();
+        String[] people = {"alice", "bob", "carol", "dave"};
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        Throwable[] failures = new Throwable[THREADS];
+        for (int n = 0; n < THREADS; n++) {
+            int number = n;
+            threads[n] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        int which = random.nextInt(SHARED_PROJECTS);
+                        Project project = shared[which];
+                        switch (random.nextInt(6)) {
+                            case 0:
+                                try {
+                                    manager.addProject("Title " + random.nextInt(TITLES), "Racing project");
+                                    projectsAdded.incrementAndGet();
+                                } catch (TitleNotUniqueException e) {
+                                    titleClashes.incrementAndGet();
+                                }
+                                break;
+                            case 1:
+                            case 2:
+                                project.addTask("Task from thread " + number, TaskPrio.values()[random.nextInt(3)]);
+                                expectedTasks[which].incrementAndGet();
+                                break;
+                            case 3: {
+                                List<Task> tasks = project.getTasks();
+                                if (!tasks.isEmpty()) {
+                                    Task task = tasks.get(random.nextInt(tasks.size()));
+                                    try {
+                                        task.setState(TaskState.values()[random.nextInt(3)]);
+                                        task.setTakenBy(people[random.nextInt(people.length)]);
+                                    } catch (IllegalStateException e) {
+                                        // already taken, a task can only be taken once, or in
+                                        // column storage a view of a task another thread removed
+                                    }
+                                }
+                                break;
+                            }
+                            case 4: {
+                                List<Task> tasks = project.getTasks();
+                                if (!tasks.isEmpty() && project.removeTask(tasks.get(random.nextInt(tasks.size())))) {
+                                    expectedTasks[which].decrementAndGet();
+                                }
+                                break;
+                            }
+                            default:
+                                manager.findProjects("itle " + random.nextInt(TITLES));
+                                project.getState();
+                                manager.getNextTask(people[random.nextInt(people.length)]);
+                                ProjectSnapshot snapshot = project.snapshot();
+                                if (random.nextInt(32) == 0) { // checking reads every task
+                                    checkSnapshot(snapshot);
+                                }
+                                break;
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures[number] = e;
+                }
+            }, "stress-" + n);
+            threads[n].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new IllegalStateException("A worker thread failed", failure);
+            }
+        }
+
+        List<Project> projects = manager.getProjects();
+        check(projects.size() == projectsAdded.get(),
+                "Expected " + projectsAdded.get() + " projects, found " + projects.size());
+        Set<Integer> ids = new HashSet<>();
+        Set<String> titles = new HashSet<>();
+        for (Project p : projects) {
+            check(ids.add(p.getId()), "Duplicate project ID " + p.getId());
+            check(titles.add(p.getTitle().toLowerCase()), "Duplicate project title " + p.getTitle());
+            check(manager.getProjectById(p.getId()) == p, "Project " + p.getId() + " cannot be found by its ID");
+            check(p.verifyAggregates(), "Running counts are wrong in project " + p.getId());
+        }
+        for (int i = 0; i < SHARED_PROJECTS; i++) {
+            List<Task> tasks = shared[i].getTasks();
+            check(tasks.size() == expectedTasks[i].get(),
+                    "Expected " + expectedTasks[i].get() + " tasks in " + shared[i].getTitle() + ", found " + tasks.size());
+            Set<Integer> taskIds = new HashSet<>();
+            for (Task t : tasks) {
+                check(taskIds.add(t.getId()), "Duplicate task ID " + t.getId() + " in " + shared[i].getTitle());
+            }
+        }
+        Map<String, Integer> open = new TreeMap<>();
+        for (Project p : projects) {
+            for (Task t : p.getTasks()) {
+                if (t.getTakenBy() != null && t.getState() != TaskState.DONE) {
+                    open.merge(t.getTakenBy(), 1, Integer::sum);
+                }
+            }
+        }
+        check(manager.getWorkloads().equals(open), "Workloads are " + manager.getWorkloads() + ", expected " + open);
+
+        System.out.printf("%d threads x %d rounds in %.1f ms: %d projects, %d title clashes, all checks passed%n",
+                THREADS, ROUNDS, elapsed / 1e6, projects.size(), titleClashes.get());
+    }
+
+    /**
+     * Checks that the state of a snapshot agrees with its tasks and that its task IDs are unique.
+     */
+    private static void checkSnapshot(ProjectSnapshot snapshot) {
+        int done = 0;
+        Set<Integer> taskIds = new HashSet<>();
+        for (Task t : snapshot.getTasks()) {
+            check(taskIds.add(t.getId()), "Duplicate task ID " + t.getId() + " in " + snapshot);
+            if (t.getState() == TaskState.DONE) {
+                done++;
+            }
+        }
+        ProjectState expected = taskIds.isEmpty() ? ProjectState.EMPTY
+                : done == taskIds.size() ? ProjectState.COMPLETED : ProjectState.ONGOING;
+        check(snapshot.getState() == expected, "State of " + snapshot + " is " + snapshot.getState() + ", expected " + expected);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package bench;
+
+import model.Project;
+import model.ProjectTask;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares answering "which tasks changed lately" with a full pass over all tasks and with
+ * the date indexes, ProjectsManager.findTasksUpdatedBetween and recentlyUpdatedTasks.
+ * <p>
+ * It creates projects whose tasks were last updated on days spread over a year, then
+ * measures finding the tasks updated in the last week, and finding the 100 most recently
+ * updated tasks. The full pass checks the date of every task, and for the most recent
+ * tasks also sorts all of them by date.
+ * <p>
+ * Usage: {@code java bench.DateIndexBenchmark [projects, default 100] [tasks per project, default 10000]}.
+ */
+public class DateIndexBenchmark {
+
+    private static final int RUNS = 50;
+    private static final int RECENT = 100;
+
+    public static void main(String[] args) {
+        int projects = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int tasksPerProject = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        LocalDate today = LocalDate.now();
+        LocalDate weekAgo = today.minusDays(7);
+        ProjectsManager manager = createManager(projects, tasksPerProject, today);
+
+        double scanRange = time(() -> scanBetween(manager, weekAgo, today).size());
+        double indexRange = time(() -> manager.findTasksUpdatedBetween(weekAgo, today).size());
+        double scanRecent = time(() -> scanRecent(manager, RECENT).size());
+        double indexRecent = time(() -> manager.recentlyUpdatedTasks(RECENT).size());
+
+        System.out.printf("%,d projects with %,d tasks each, %,d tasks updated in the last week%n",
+                projects, tasksPerProject, manager.findTasksUpdatedBetween(weekAgo, today).size());
+        System.out.printf("%-22s %14s %14s%n", "query", "full pass ms", "index ms");
+        System.out.printf("%-22s %14.2f %14.3f%n", "updated last week", scanRange, indexRange);
+        System.out.printf("%-22s %14.2f %14.3f%n", RECENT + " most recent", scanRecent, indexRecent);
+    }
+
+    private static List<ProjectTask> scanBetween(ProjectsManager manager, LocalDate from, LocalDate to) {
+        List<ProjectTask> result = new ArrayList<>();
+        for (Project p : manager.getProjects()) {
+            for (Task t : p.getTasks()) {
+                if (!t.getLastUpdated().isBefore(from) && !t.getLastUpdated().isAfter(to)) {
+                    result.add(new ProjectTask(p, t));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<ProjectTask> scanRecent(ProjectsManager manager, int n) {
+        List<ProjectTask> all = new ArrayList<>();
+        for (Project p : manager.getProjects()) {
+            for (Task t : p.getTasks()) {
+                all.add(new ProjectTask(p, t));
+            }
+        }
+        all.sort(Comparator.comparing((ProjectTask pt) -> pt.getTask().getLastUpdated()).reversed());
+        return all.subList(0, Math.min(n, all.size()));
+    }
+
+    /**
+     * Returns the average time in milliseconds of a query, after running it as many times to warm up.
+     */
+    private static double time(Query query) {
+        long found = 0;
+        for (int i = 0; i < RUNS; i++) {
+            found += query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            found += query.run();
+        }
+        long nanos = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println(found);
+        }
+        return nanos / 1e6 / RUNS;
+    }
+
+    private static ProjectsManager createManager(int projects, int tasksPerProject, LocalDate today) {
+        ProjectsManager manager = new ProjectsManager();
+        TaskPrio[] prios = TaskPrio.values();
+        TaskState[] states = TaskState.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Date index benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                project.restoreTask(new Task(i + 1, "Task number " + i, prios[i % prios.length],
+                        states[(p + i) % states.length], null, today.minusDays((i * 7919L + p) % 365)));
+            }
+        }
+        return manager;
+    }
+
+    private interface Query {
+        int run();
+    }
+}
@@ -0,0 +1,197 @@
+package bench;
+
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import server.ProjectsHttpServer;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load test for the HTTP server mode of ProjectApp.
+ * <p>
+ * Many clients, each on its own virtual thread, send requests in a loop for a fixed time:
+ * 70% list the HIGH tasks of a project with a query, 15% find projects by title,
+ * 10% add a task and 5% change a task. Afterwards it prints the requests per second
+ * and the 50th, 99th and highest latency.
+ * <p>
+ * Usage: {@code java bench.HttpLoadTest [clients] [seconds] [base url]}. The defaults are
+ * 1000 clients for 10 seconds. Without a base URL a server with 1 000 projects of 100 tasks
+ * each is started in the same process on a free port; with one, that server is used,
+ * and it must hold projects with the IDs 1 to 1000.
+ */
+public class HttpLoadTest {
+
+    private static final int PROJECTS = 1_000;
+    private static final int TASKS_PER_PROJECT = 100;
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        ProjectsHttpServer server = null;
+        String base;
+        if (args.length > 2) {
+            base = args[2];
+        } else {
+            server = new ProjectsHttpServer(createManager(), 0);
+            server.start();
+            base = "http://localhost:" + server.getPort();
+        }
+
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(threads)
+                .build();
+
+        System.out.printf("%d clients against %s, %d s warm-up, %d s measured%n", clients, base, WARMUP_SECONDS, seconds);
+        run(client, base, clients, WARMUP_SECONDS);
+        Result result = run(client, base, clients, seconds);
+
+        long[] latencies = result.latencies;
+        Arrays.sort(latencies);
+        System.out.printf("requests: %d, errors: %d, %.0f requests/s%n",
+                latencies.length, result.errors, latencies.length / (double) seconds);
+        if (latencies.length > 0) {
+            System.out.printf("latency ms: p50 %.2f, p99 %.2f, max %.2f%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    latencies[latencies.length - 1] / 1e6);
+        }
+
+        client.close();
+        threads.close();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static class Result {
+        long[] latencies;
+        long errors;
+    }
+
+    /**
+     * Lets every client send requests until the time is up, and collects the latencies in nanoseconds.
+     */
+    private static Result run(HttpClient client, String base, int clients, int seconds) throws InterruptedException {
+        long[][] perClient = new long[clients][];
+        int[] counts = new int[clients];
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        long[] end = new long[1];
+
+        for (int c = 0; c < clients; c++) {
+            int number = c;
+            Thread.ofVirtual().start(() -> {
+                long[] mine = new long[1024];
+                int count = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    while (System.nanoTime() < end[0]) {
+                        HttpRequest request = nextRequest(base, random);
+                        long begin = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            if (response.statusCode() >= 500) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (java.io.IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (count == mine.length) {
+                            mine = Arrays.copyOf(mine, count * 2);
+                        }
+                        mine[count++] = System.nanoTime() - begin;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    perClient[number] = mine;
+                    counts[number] = count;
+                    done.countDown();
+                }
+            });
+        }
+
+        end[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        done.await();
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        Result result = new Result();
+        result.latencies = new long[total];
+        int at = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(perClient[c], 0, result.latencies, at, counts[c]);
+            at += counts[c];
+        }
+        result.errors = errors.get();
+        return result;
+    }
+
+    private static HttpRequest nextRequest(String base, ThreadLocalRandom random) {
+        int project = 1 + random.nextInt(PROJECTS);
+        int kind = random.nextInt(100);
+        if (kind < 70) {
+            String query = URLEncoder.encode("prio=HIGH and state!=DONE", StandardCharsets.UTF_8);
+            return HttpRequest.newBuilder(URI.create(base + "/projects/" + project + "/tasks?limit=20&query=" + query)).GET().build();
+        }
+        if (kind < 85) {
+            return HttpRequest.newBuilder(URI.create(base + "/projects?title=" + random.nextInt(PROJECTS))).GET().build();
+        }
+        if (kind < 95) {
+            String body = "{\"description\": \"Load test task\", \"prio\": \"LOW\"}";
+            return HttpRequest.newBuilder(URI.create(base + "/projects/" + project + "/tasks"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+        String state = TaskState.values()[random.nextInt(3)].name();
+        String body = "{\"state\": \"" + state + "\"}";
+        return HttpRequest.newBuilder(URI.create(base + "/projects/" + project + "/tasks/" + (1 + random.nextInt(TASKS_PER_PROJECT))))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static ProjectsManager createManager() {
+        ProjectsManager manager = new ProjectsManager();
+        String[] people = {"alice", "bob", "carol", "dave"};
+        for (int p = 0; p < PROJECTS; p++) {
+            Project project = manager.addProject("Project " + p, "Load test project");
+            for (int i = 0; i < TASKS_PER_PROJECT; i++) {
+                Task task = project.addTask("Task " + i, TaskPrio.values()[i % 3]);
+                if (i % 2 == 0) {
+                    task.setTakenBy(people[i % people.length]);
+                }
+                if (i % 5 == 0) {
+                    task.setState(TaskState.DONE);
+                }
+            }
+        }
+        return manager;
+    }
+}
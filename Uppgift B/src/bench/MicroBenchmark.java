@@ -0,0 +1,306 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A small harness for micro-benchmarks, run from a main method.
+ * <p>
+ * A benchmark is an operation that is called over and over. Each iteration runs the operation
+ * for a fixed time and gives one average time per operation; a few warm-up iterations run
+ * first so the JIT compiler has settled. For every measured iteration the harness also reads
+ * how many bytes the benchmark thread allocated and how many garbage collections ran, like
+ * JMH's {@code -prof gc}, and reports the bytes allocated per operation.
+ * <p>
+ * Each benchmark runs once for every combination of the parameters {@code projects} and
+ * {@code tasks}. The results are printed as a table and can be written to a CSV file, which
+ * CompareBenchmarks compares with the results of another run.
+ * <p>
+ * Options: {@code -p projects=10,1000} and {@code -p tasks=10,100} set the parameters,
+ * {@code -wi n} and {@code -i n} the number of warm-up and measured iterations,
+ * {@code -t ms} the length of one iteration, {@code -f regex} which benchmarks to run
+ * and {@code -o file.csv} where to write the results.
+ */
+public class MicroBenchmark {
+
+    /**
+     * An operation to measure. The argument counts the calls, so an operation can vary its input.
+     */
+    public interface Operation {
+        Object run(long i) throws Exception;
+    }
+
+    /**
+     * Creates the operation of a benchmark and the data it works on, for the given parameters.
+     * Creating it is not measured.
+     */
+    public interface Setup {
+        Operation create(int projects, int tasks) throws Exception;
+    }
+
+    private static class Case {
+        final String name;
+        final Setup setup;
+        final boolean perIteration;
+
+        Case(String name, Setup setup, boolean perIteration) {
+            this.name = name;
+            this.setup = setup;
+            this.perIteration = perIteration;
+        }
+    }
+
+    /**
+     * The result of one benchmark with one set of parameters.
+     */
+    public static class Result {
+        public final String benchmark;
+        public final int projects;
+        public final int tasks;
+        public final double nanosPerOp;
+        public final double stdev;
+        public final double bytesPerOp;
+        public final long gcCount;
+        public final int iterations;
+
+        public Result(String benchmark, int projects, int tasks, double nanosPerOp, double stdev,
+                      double bytesPerOp, long gcCount, int iterations) {
+            this.benchmark = benchmark;
+            this.projects = projects;
+            this.tasks = tasks;
+            this.nanosPerOp = nanosPerOp;
+            this.stdev = stdev;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.iterations = iterations;
+        }
+
+        /**
+         * Returns the benchmark name and parameters, which identify a result between runs.
+         */
+        public String key() {
+            return benchmark + " projects=" + projects + " tasks=" + tasks;
+        }
+    }
+
+    static final String CSV_HEADER = "benchmark,projects,tasks,ns_per_op,stdev,bytes_per_op,gc_count,iterations";
+
+    private final List<Case> cases = new ArrayList<>();
+    private int[] projectCounts = {100, 1000};
+    private int[] taskCounts = {10, 100};
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    private Pattern filter = Pattern.compile(".*");
+    private File output;
+
+    /** Read by every consume, so the JIT cannot prove the results are unused. */
+    private static volatile Object sentinel = new Object();
+    private static Object sink;
+
+    /**
+     * Adds a benchmark whose data is created once for each set of parameters.
+     * Use this for operations that do not change the data.
+     */
+    public MicroBenchmark add(String name, Setup setup) {
+        cases.add(new Case(name, setup, false));
+        return this;
+    }
+
+    /**
+     * Adds a benchmark whose data is created again before every iteration.
+     * Use this for operations that add to the data, so every iteration starts from the same size.
+     */
+    public MicroBenchmark addPerIteration(String name, Setup setup) {
+        cases.add(new Case(name, setup, true));
+        return this;
+    }
+
+    /**
+     * Reads the command line options described in the class comment.
+     *
+     * @throws IllegalArgumentException if an option is unknown or has a bad value
+     */
+    public MicroBenchmark options(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-p": {
+                    int eq = value.indexOf('=');
+                    String name = eq < 0 ? "" : value.substring(0, eq);
+                    int[] values = parseInts(value.substring(eq + 1));
+                    if (name.equals("projects")) {
+                        projectCounts = values;
+                    } else if (name.equals("tasks")) {
+                        taskCounts = values;
+                    } else {
+                        throw new IllegalArgumentException("Unknown parameter: " + value);
+                    }
+                    break;
+                }
+                case "-wi":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    iterationNanos = Long.parseLong(value) * 1_000_000L;
+                    break;
+                case "-f":
+                    filter = Pattern.compile(value);
+                    break;
+                case "-o":
+                    output = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one measured iteration is needed");
+        }
+        return this;
+    }
+
+    /**
+     * Runs all benchmarks selected by the filter, prints the results and writes them to the output file.
+     *
+     * @return the results
+     * @throws Exception if a benchmark fails or the output file cannot be written
+     */
+    public List<Result> run() throws Exception {
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-28s %9s %6s %14s %10s %14s %6s%n",
+                "benchmark", "projects", "tasks", "ns/op", "stdev", "B/op", "gcs");
+        for (Case c : cases) {
+            if (!filter.matcher(c.name).find()) {
+                continue;
+            }
+            for (int projects : projectCounts) {
+                for (int tasks : taskCounts) {
+                    Result r = measure(c, projects, tasks);
+                    results.add(r);
+                    System.out.printf(Locale.ROOT, "%-28s %9d %6d %14.1f %10.1f %14.1f %6d%n",
+                            r.benchmark, r.projects, r.tasks, r.nanosPerOp, r.stdev, r.bytesPerOp, r.gcCount);
+                }
+            }
+        }
+        if (output != null) {
+            writeCsv(output, results);
+            System.out.println("Results written to " + output);
+        }
+        return results;
+    }
+
+    private Result measure(Case c, int projects, int tasks) throws Exception {
+        Operation shared = c.perIteration ? null : c.setup.create(projects, tasks);
+        double[] nanos = new double[iterations];
+        double bytes = 0;
+        long gcs = 0;
+        long ops = 0;
+        for (int it = 0; it < warmupIterations + iterations; it++) {
+            Operation op = shared != null ? shared : c.setup.create(projects, tasks);
+            System.gc(); // leave garbage from the setup out of the measurement
+            long allocatedBefore = allocatedBytes();
+            long gcsBefore = gcCount();
+            long[] timed = runIteration(op);
+            if (it >= warmupIterations) {
+                nanos[it - warmupIterations] = (double) timed[1] / timed[0];
+                bytes += allocatedBytes() - allocatedBefore;
+                gcs += gcCount() - gcsBefore;
+                ops += timed[0];
+            }
+        }
+        double mean = 0;
+        for (double n : nanos) {
+            mean += n;
+        }
+        mean /= nanos.length;
+        double variance = 0;
+        for (double n : nanos) {
+            variance += (n - mean) * (n - mean);
+        }
+        double stdev = nanos.length > 1 ? Math.sqrt(variance / (nanos.length - 1)) : 0;
+        double bytesPerOp = allocatedBytes() < 0 ? Double.NaN : bytes / ops;
+        return new Result(c.name, projects, tasks, mean, stdev, bytesPerOp, gcs, iterations);
+    }
+
+    /**
+     * Calls the operation for one iteration. The clock is read once per batch of calls,
+     * and the batch doubles until it takes at least a millisecond, so cheap operations
+     * are not dominated by the cost of reading the clock.
+     *
+     * @return the number of calls and the time they took in nanoseconds
+     */
+    private long[] runIteration(Operation op) throws Exception {
+        long calls = 0;
+        long batch = 1;
+        long start = System.nanoTime();
+        long now = start;
+        while (now - start < iterationNanos) {
+            long batchStart = now;
+            for (long i = 0; i < batch; i++) {
+                consume(op.run(calls + i));
+            }
+            calls += batch;
+            now = System.nanoTime();
+            if (now - batchStart < 1_000_000L) {
+                batch *= 2;
+            }
+        }
+        return new long[]{calls, now - start};
+    }
+
+    private static void consume(Object result) {
+        if (result == sentinel) {
+            sink = result;
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return -1; // not supported by this JVM
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static void writeCsv(File file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println(CSV_HEADER);
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s,%d,%d,%.3f,%.3f,%.3f,%d,%d%n", r.benchmark, r.projects, r.tasks,
+                        r.nanosPerOp, r.stdev, r.bytesPerOp, r.gcCount, r.iterations);
+            }
+        }
+    }
+
+    private static int[] parseInts(String text) {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,140 @@
+package bench;
+
+import io.ProjectsFileIO;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.AndMatcher;
+import model.matcher.ITaskMatcher;
+import model.matcher.NotDoneMatcher;
+import model.matcher.NotMatcher;
+import model.matcher.OrMatcher;
+import model.matcher.PrioMatcher;
+import model.matcher.StateMatcher;
+import model.matcher.TakenByMatcher;
+import model.matcher.TaskQuery;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Micro-benchmarks of the hot paths of the model and of saving and loading, run with MicroBenchmark.
+ * <p>
+ * Covers ProjectsManager.addProject, findProjects and getProjectById, Project.addTask,
+ * findTasks with each matcher, getState and getLastUpdated, and ProjectsFileIO saving
+ * and loading. Every benchmark runs for each number of projects and tasks per project.
+ * The query cache is turned off, so the searches measure the search itself and not a
+ * cache hit for the same search a moment before.
+ * <p>
+ * Example: {@code java bench.ModelBenchmarks -p projects=100,10000 -p tasks=10,100 -o new.csv},
+ * then {@code java bench.CompareBenchmarks old.csv new.csv} to see what changed.
+ * See MicroBenchmark for all options.
+ */
+public class ModelBenchmarks {
+
+    private static final String[] PEOPLE = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+
+    public static void main(String[] args) throws Exception {
+        MicroBenchmark harness = new MicroBenchmark().options(args);
+
+        harness.addPerIteration("manager.addProject", (projects, tasks) -> {
+            ProjectsManager manager = createManager(projects, 0);
+            return i -> manager.addProject("New project " + i, "Benchmark project");
+        });
+        harness.add("manager.findProjects", (projects, tasks) -> {
+            ProjectsManager manager = createManager(projects, 0);
+            String[] texts = new String[1024];
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = "ject " + (i * 7919 % projects);
+            }
+            return i -> manager.findProjects(texts[(int) (i & 1023)]);
+        });
+        harness.add("manager.getProjectById", (projects, tasks) -> {
+            ProjectsManager manager = createManager(projects, 0);
+            return i -> manager.getProjectById(1 + (int) (i % projects));
+        });
+        harness.addPerIteration("project.addTask", (projects, tasks) -> {
+            Project project = createManager(1, tasks).getProjects().get(0);
+            TaskPrio[] prios = TaskPrio.values();
+            return i -> project.addTask("New task", prios[(int) (i % prios.length)]);
+        });
+
+        addFindTasks(harness, "prio", new PrioMatcher(TaskPrio.HIGH));
+        addFindTasks(harness, "state", new StateMatcher(TaskState.IN_PROGRESS));
+        addFindTasks(harness, "notDone", new NotDoneMatcher());
+        addFindTasks(harness, "takenBy", new TakenByMatcher("alice"));
+        addFindTasks(harness, "and", new AndMatcher(new PrioMatcher(TaskPrio.HIGH), new NotDoneMatcher()));
+        addFindTasks(harness, "or", new OrMatcher(new PrioMatcher(TaskPrio.HIGH), new TakenByMatcher("bob")));
+        addFindTasks(harness, "not", new NotMatcher(new PrioMatcher(TaskPrio.LOW)));
+        addFindTasks(harness, "query", TaskQuery.parse("prio=HIGH and state!=DONE and takenBy=carol"));
+
+        harness.add("project.getState", (projects, tasks) -> {
+            List<Project> list = createManager(projects, tasks).getProjects();
+            return i -> list.get((int) (i % list.size())).getState();
+        });
+        harness.add("project.getLastUpdated", (projects, tasks) -> {
+            List<Project> list = createManager(projects, tasks).getProjects();
+            return i -> list.get((int) (i % list.size())).getLastUpdated();
+        });
+
+        harness.add("fileIO.serialize", (projects, tasks) -> {
+            List<Project> list = createManager(projects, tasks).getProjects();
+            File file = File.createTempFile("model-bench", ".ser");
+            file.deleteOnExit();
+            return i -> {
+                ProjectsFileIO.serializeToFile(file, list);
+                return file;
+            };
+        });
+        harness.add("fileIO.deserialize", (projects, tasks) -> {
+            File file = File.createTempFile("model-bench", ".ser");
+            file.deleteOnExit();
+            ProjectsFileIO.serializeToFile(file, createManager(projects, tasks).getProjects());
+            return i -> {
+                List<Project> loaded = ProjectsFileIO.deSerializeFromFile(file);
+                for (Project p : loaded) {
+                    p.getTaskCount(); // load the tasks that the mapped snapshot leaves on disk
+                }
+                return loaded;
+            };
+        });
+
+        harness.run();
+    }
+
+    /**
+     * Adds a benchmark that searches the projects one after another with the matcher.
+     */
+    private static void addFindTasks(MicroBenchmark harness, String name, ITaskMatcher matcher) {
+        harness.add("findTasks." + name, (projects, tasks) -> {
+            List<Project> list = createManager(projects, tasks).getProjects();
+            return i -> list.get((int) (i % list.size())).findTasks(matcher);
+        });
+    }
+
+    /**
+     * Creates projects with the given number of tasks each, with a mix of priorities,
+     * states and assignees.
+     */
+    static ProjectsManager createManager(int projects, int tasksPerProject) {
+        ProjectsManager manager = new ProjectsManager();
+        manager.getQueryCache().setCapacity(0);
+        TaskPrio[] prios = TaskPrio.values();
+        TaskState[] states = TaskState.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                Task task = project.addTask("Task number " + i, prios[i % prios.length]);
+                if (i % 3 == 0) {
+                    task.setTakenBy(PEOPLE[(p + i) % PEOPLE.length]);
+                }
+                if (i % 4 != 0) {
+                    task.setState(states[(p + i) % states.length]);
+                }
+            }
+        }
+        return manager;
+    }
+}
@@ -0,0 +1,145 @@
+package bench;
+
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.ITaskMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what keeping old versions of a project with Project.snapshot costs, and what
+ * readers gain from searching a snapshot instead of the locked project.
+ * <p>
+ * The first part changes one task at a time and keeps every version, once as snapshots and
+ * once as copies from Project.copy, and prints the memory each kept version takes. The
+ * second part runs reader threads that search the project for done tasks while a writer
+ * changes task states all the time, and prints the searches per second with the locked
+ * Project.findTasks and with ProjectSnapshot.findTasks, and the changes the writer made.
+ * Both check every task; a locked search holds the project lock for the whole search,
+ * while a snapshot search takes no lock at all.
+ * <p>
+ * Usage: {@code java bench.MvccSnapshotBenchmark [tasks, default 10000] [readers, default 4] [seconds, default 3]}.
+ */
+public class MvccSnapshotBenchmark {
+
+    private static final int VERSIONS = 200;
+    private static final TaskState[] STATES = TaskState.values();
+
+    public static void main(String[] args) throws InterruptedException {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Project project = createProject(taskCount);
+        List<Task> tasks = project.getTasks();
+        List<Object> kept = new ArrayList<>();
+        long snapshotBytes = keptBytes(kept, () -> {
+            tasks.get(kept.size() * 7 % tasks.size()).setState(STATES[kept.size() % STATES.length]);
+            kept.add(project.snapshot());
+        });
+        long copyBytes = keptBytes(kept, () -> {
+            tasks.get(kept.size() * 7 % tasks.size()).setState(STATES[kept.size() % STATES.length]);
+            kept.add(project.copy());
+        });
+        System.out.printf("%,d tasks, %d versions kept after one change each%n", taskCount, VERSIONS);
+        System.out.printf("%-12s %16s%n", "version", "bytes each");
+        System.out.printf("%-12s %,16d%n", "snapshot", snapshotBytes / VERSIONS);
+        System.out.printf("%-12s %,16d%n", "copy", copyBytes / VERSIONS);
+
+        System.out.printf("%n%d readers and 1 writer for %d s%n", readers, seconds);
+        System.out.printf("%-12s %16s %16s%n", "reader", "searches/s", "changes/s");
+        // a matcher without an index, so both readers check every task
+        ITaskMatcher done = task -> task.getState() == TaskState.DONE && task.getPrio() == TaskPrio.HIGH;
+        for (int run = 0; run < 2; run++) { // the second run is after the JIT has warmed up
+            boolean print = run == 1;
+            race(print, "locked", project, readers, seconds, () -> project.findTasks(done).size());
+            race(print, "snapshot", project, readers, seconds, () -> project.snapshot().findTasks(done).size());
+        }
+    }
+
+    private static Project createProject(int taskCount) {
+        Project project = new ProjectsManager().addProject("Benchmark", "Snapshot benchmark project");
+        TaskPrio[] prios = TaskPrio.values();
+        for (int i = 0; i < taskCount; i++) {
+            Task t = project.addTask("Task number " + i, prios[i % prios.length]);
+            t.setState(STATES[i % STATES.length]);
+        }
+        return project;
+    }
+
+    /**
+     * Returns the memory taken by the versions that an action adds to a list, after running it
+     * as many times as versions are kept. The list is emptied first.
+     */
+    private static long keptBytes(List<Object> kept, Runnable addVersion) {
+        kept.clear();
+        long before = usedMemory();
+        for (int i = 0; i < VERSIONS; i++) {
+            addVersion.run();
+        }
+        return usedMemory() - before;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs reader threads doing a search and one thread changing task states for a while,
+     * and prints the searches and changes per second.
+     */
+    private static void race(boolean print, String name, Project project, int readers, int seconds,
+                             Search search) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder searches = new LongAdder();
+        long[] changes = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int n = 0; n < readers; n++) {
+            threads.add(new Thread(() -> {
+                long found = 0;
+                while (running.get()) {
+                    found += search.run();
+                    searches.increment();
+                }
+                if (found < 0) {
+                    System.out.println(found); // keeps the searches from being optimized away
+                }
+            }, "reader-" + n));
+        }
+        threads.add(new Thread(() -> {
+            List<Task> tasks = project.getTasks();
+            long i = 0;
+            while (running.get()) {
+                tasks.get((int) (i % tasks.size())).setState(STATES[(int) ((i * 7 + i / tasks.size()) % STATES.length)]);
+                i++;
+            }
+            changes[0] = i;
+        }, "writer"));
+        for (Thread t : threads) {
+            t.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (print) {
+            System.out.printf("%-12s %,16.0f %,16.0f%n", name, searches.sum() / (double) seconds,
+                    changes[0] / (double) seconds);
+        }
+    }
+
+    private interface Search {
+        int run();
+    }
+}
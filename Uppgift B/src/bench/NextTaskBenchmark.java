@@ -0,0 +1,112 @@
+package bench;
+
+import model.Project;
+import model.ProjectTask;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.AndMatcher;
+import model.matcher.NotDoneMatcher;
+import model.matcher.TakenByMatcher;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares finding the next task of a person by searching all projects and sorting with
+ * ProjectsManager.getNextTask, which reads it from the person's queue.
+ * <p>
+ * The search finds the open tasks of the person with a TakenByMatcher in every project and
+ * sorts them by priority, as was done before the queues. The query cache is turned off so
+ * that every search really runs. It also prints how many priority changes per second the
+ * manager makes to tasks that are in a queue, which move them in their heap.
+ * <p>
+ * Usage: {@code java bench.NextTaskBenchmark [projects, default 200] [tasks per project, default 2000] [people, default 20]}.
+ */
+public class NextTaskBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int CHANGES = 200_000;
+    private static final Comparator<ProjectTask> NEXT_FIRST = Comparator
+            .comparing((ProjectTask pt) -> pt.getTask().getPrio(), Comparator.reverseOrder())
+            .thenComparing(pt -> pt.getTask().getDescription());
+
+    public static void main(String[] args) {
+        int projects = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int tasksPerProject = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int people = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        ProjectsManager manager = createManager(projects, tasksPerProject, people);
+        manager.getQueryCache().setCapacity(0);
+        manager.getNextTask("user0"); // reads the projects into the queues
+
+        System.out.printf("%,d projects with %,d tasks each, %d people with %,d open tasks each%n",
+                projects, tasksPerProject, people, manager.getWorkload("user0"));
+        System.out.printf("%-22s %14s%n", "next task", "us per query");
+        for (int run = 0; run < 3; run++) { // the last run is after the JIT has warmed up
+            boolean print = run == 2;
+            long found = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                String person = "user" + (i % people);
+                List<ProjectTask> open = manager.findTasks(new AndMatcher(new TakenByMatcher(person), new NotDoneMatcher()));
+                open.sort(NEXT_FIRST);
+                found += open.isEmpty() ? 0 : open.get(0).getTask().getId();
+            }
+            double scan = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES * 1000; i++) {
+                ProjectTask next = manager.getNextTask("user" + (i % people));
+                found += next == null ? 0 : next.getTask().getId();
+            }
+            double peek = (System.nanoTime() - start) / 1e3 / (QUERIES * 1000);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES * 100; i++) {
+                found += manager.getNextTasks("user" + (i % people), 10).size();
+            }
+            double first10 = (System.nanoTime() - start) / 1e3 / (QUERIES * 100);
+
+            if (print) {
+                System.out.printf("%-22s %,14.2f%n", "search and sort", scan);
+                System.out.printf("%-22s %,14.2f%n", "getNextTask", peek);
+                System.out.printf("%-22s %,14.2f%n", "getNextTasks, 10", first10);
+            }
+            if (found == 42) {
+                System.out.println(); // keeps the queries from being optimized away
+            }
+        }
+
+        List<Project> all = manager.getProjects();
+        TaskPrio[] prios = TaskPrio.values();
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < CHANGES; i++) {
+            Project p = all.get(random.nextInt(all.size()));
+            Task t = p.getTaskById(1 + 4 * random.nextInt(tasksPerProject / 4)); // every fourth task is taken
+            t.setPrio(prios[i % prios.length]);
+        }
+        double changesPerSecond = CHANGES / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("%nPriority changes of queued tasks: %,.0f per second%n", changesPerSecond);
+    }
+
+    private static ProjectsManager createManager(int projects, int tasksPerProject, int people) {
+        ProjectsManager manager = new ProjectsManager();
+        TaskPrio[] prios = TaskPrio.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Next task benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                Task t = project.addTask("Task number " + i, prios[i % prios.length]);
+                if (i % 4 == 0) {
+                    t.setTakenBy("user" + (i / 4 % people));
+                    if (i % 3 == 0) {
+                        t.setState(TaskState.DONE);
+                    }
+                }
+            }
+        }
+        return manager;
+    }
+}
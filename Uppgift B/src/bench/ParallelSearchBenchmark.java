@@ -0,0 +1,80 @@
+package bench;
+
+import model.Project;
+import model.ProjectTask;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.ITaskMatcher;
+import model.matcher.TaskQuery;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how ProjectsManager.findTasks scales with the number of threads.
+ * <p>
+ * It searches 1 000 000 tasks in 10 000 projects with pools of 1 thread up to the
+ * number of available cores, and prints the best time and the speed-up over one thread.
+ * Two searches are measured: an indexed query ("all open HIGH tasks") and a matcher
+ * that has to look at every task. The query cache is turned off, so every run really
+ * searches the projects instead of reading the result of the run before.
+ */
+public class ParallelSearchBenchmark {
+
+    private static final int PROJECTS = 10_000;
+    private static final int TASKS_PER_PROJECT = 100;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) {
+        ProjectsManager manager = new ProjectsManager();
+        String[] people = {"alice", "bob", "carol", "dave"};
+        for (int p = 0; p < PROJECTS; p++) {
+            Project project = manager.addProject("Project " + p, "Benchmark project");
+            for (int i = 0; i < TASKS_PER_PROJECT; i++) {
+                Task task = project.addTask("Task " + i, TaskPrio.values()[i % 3]);
+                if (i % 2 == 0) {
+                    task.setTakenBy(people[i % people.length]);
+                }
+                if (i % 5 == 0) {
+                    task.setState(TaskState.DONE);
+                }
+            }
+        }
+
+        manager.getQueryCache().setCapacity(0);
+
+        ITaskMatcher indexed = TaskQuery.parse("prio=HIGH and state!=DONE");
+        ITaskMatcher scanning = t -> t.getDescription().endsWith("8") && t.getTakenBy() != null;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-10s %-8s %12s %10s %10s%n", "query", "threads", "best ms", "speed-up", "results");
+        for (String name : new String[]{"indexed", "scan"}) {
+            ITaskMatcher matcher = name.equals("indexed") ? indexed : scanning;
+            double single = 0;
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long best = Long.MAX_VALUE;
+                int results = 0;
+                for (int run = 0; run <= RUNS; run++) {
+                    long start = System.nanoTime();
+                    List<ProjectTask> found = manager.findTasks(matcher, pool);
+                    long time = System.nanoTime() - start;
+                    if (run > 0) { // the first run is warm-up
+                        best = Math.min(best, time);
+                    }
+                    results = found.size();
+                }
+                pool.shutdown();
+                if (threads == 1) {
+                    single = best;
+                }
+                System.out.printf("%-10s %-8d %12.2f %10.2f %10d%n", name, threads, best / 1e6, single / best, results);
+                if (threads < cores && threads * 2 > cores) {
+                    threads = cores / 2; // make sure the last row uses all cores
+                }
+            }
+        }
+    }
+}
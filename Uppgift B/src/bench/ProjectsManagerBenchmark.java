@@ -0,0 +1,82 @@
+package bench;
+
+import model.ProjectsManager;
+
+import java.util.Random;
+
+/**
+ * Measures how ProjectsManager behaves as the number of projects grows.
+ * <p>
+ * For 1 000 up to 1 000 000 projects it prints the average time to add a project
+ * (which checks that the title is unique), to look up a project by ID and to check
+ * that a title is unique. With the ID and title indexes all three stay flat.
+ * It also prints the average time of a findProjects search for part of a title,
+ * with the query cache turned off so that every search uses the title index.
+ */
+public class ProjectsManagerBenchmark {
+
+    private static final int LOOKUPS = 1_000_000;
+    private static final int SEARCHES = 10_000;
+
+    public static void main(String[] args) {
+        int[] sizes = {1_000, 10_000, 100_000, 1_000_000};
+
+        System.out.printf("%-10s %14s %14s %14s %14s%n", "projects", "add ns/op", "byId ns/op", "unique ns/op", "find ns/op");
+        for (int size : sizes) {
+            // run twice and report the second run, so the JIT has warmed up
+            long[] result = null;
+            for (int run = 0; run < 2; run++) {
+                result = run(size);
+            }
+            System.out.printf("%-10d %14.1f %14.1f %14.1f %14.1f%n", size,
+                    (double) result[0] / size, (double) result[1] / LOOKUPS, (double) result[2] / LOOKUPS,
+                    (double) result[3] / SEARCHES);
+        }
+    }
+
+    private static long[] run(int size) {
+        ProjectsManager manager = new ProjectsManager();
+        manager.getQueryCache().setCapacity(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            manager.addProject("Project " + i, "Benchmark project");
+        }
+        long added = System.nanoTime();
+
+        Random random = new Random(42);
+        int found = 0;
+        long lookupStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (manager.getProjectById(1 + random.nextInt(size)) != null) {
+                found++;
+            }
+        }
+        long lookedUp = System.nanoTime();
+
+        String[] titles = new String[1024];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = "PROJECT " + random.nextInt(size * 2);
+        }
+        long uniqueStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (manager.isTitleUnique(titles[i & 1023])) {
+                found++;
+            }
+        }
+        long checked = System.nanoTime();
+
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = "ject " + random.nextInt(size);
+        }
+        long searchStart = System.nanoTime();
+        for (int i = 0; i < SEARCHES; i++) {
+            found += manager.findProjects(titles[i & 1023]).size();
+        }
+        long searched = System.nanoTime();
+
+        if (found == 0) {
+            throw new IllegalStateException("Nothing found");
+        }
+        return new long[]{added - start, lookedUp - lookupStart, checked - uniqueStart, searched - searchStart};
+    }
+}
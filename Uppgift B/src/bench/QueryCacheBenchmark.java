@@ -0,0 +1,114 @@
+package bench;
+
+import model.Project;
+import model.ProjectsManager;
+import model.QueryCache;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.ITaskMatcher;
+import model.matcher.NotDoneMatcher;
+import model.matcher.PrioMatcher;
+import model.matcher.TakenByMatcher;
+import model.matcher.TaskQuery;
+
+import java.util.List;
+
+/**
+ * Measures the query cache on a dashboard that runs the same few searches over and over,
+ * with a change to one task now and then.
+ * <p>
+ * Each round runs a few task searches on every project and a few title searches, and after
+ * every given number of rounds changes the state of one task in one project. It prints the
+ * rounds per second with the cache turned off and on, and the hits, misses and
+ * invalidations of the cache.
+ * <p>
+ * Usage: {@code java bench.QueryCacheBenchmark [projects, default 50] [tasks per project, default 2000] [rounds per change, default 10]}.
+ */
+public class QueryCacheBenchmark {
+
+    private static final int ROUNDS = 2000;
+
+    public static void main(String[] args) {
+        int projects = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int tasksPerProject = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int roundsPerChange = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        ProjectsManager manager = createManager(projects, tasksPerProject);
+        QueryCache cache = manager.getQueryCache();
+        int capacity = cache.getCapacity();
+
+        System.out.printf("%,d projects with %,d tasks each, one change every %d rounds%n",
+                projects, tasksPerProject, roundsPerChange);
+        System.out.printf("%-8s %12s %10s %10s %14s%n", "cache", "rounds/s", "hits", "misses", "invalidations");
+        for (int run = 0; run < 3; run++) { // the last run is after the JIT has warmed up
+            boolean print = run == 2;
+            cache.setCapacity(0);
+            report(print, "off", manager, roundsPerChange);
+            cache.setCapacity(capacity);
+            report(print, "on", manager, roundsPerChange);
+        }
+    }
+
+    private static void report(boolean print, String name, ProjectsManager manager, int roundsPerChange) {
+        QueryCache cache = manager.getQueryCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        long invalidations = cache.getInvalidationCount();
+        long nanos = time(manager, roundsPerChange);
+        if (print) {
+            System.out.printf("%-8s %,12.0f %,10d %,10d %,14d%n", name, ROUNDS / (nanos / 1e9),
+                    cache.getHitCount() - hits, cache.getMissCount() - misses,
+                    cache.getInvalidationCount() - invalidations);
+        }
+    }
+
+    /**
+     * Returns the time in nanoseconds to run the dashboard rounds.
+     */
+    private static long time(ProjectsManager manager, int roundsPerChange) {
+        List<Project> projects = manager.getProjects();
+        ITaskMatcher[] searches = {
+                new PrioMatcher(TaskPrio.HIGH),
+                new NotDoneMatcher(),
+                new TakenByMatcher("user3"),
+                TaskQuery.parse("prio = HIGH and state != DONE"),
+        };
+        TaskState[] states = TaskState.values();
+        long found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Project p : projects) {
+                for (ITaskMatcher m : searches) {
+                    found += p.findTasks(m).size();
+                }
+            }
+            found += manager.findProjects("Project 1").size();
+            found += manager.findProjects("benchmark").size();
+            if (round % roundsPerChange == 0) {
+                Project p = projects.get(round % projects.size());
+                Task t = p.getTasks().get(round % p.getTaskCount());
+                t.setState(states[round % states.length]);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println(found); // keeps the searches from being optimized away
+        }
+        return nanos;
+    }
+
+    private static ProjectsManager createManager(int projects, int tasksPerProject) {
+        ProjectsManager manager = new ProjectsManager();
+        TaskPrio[] prios = TaskPrio.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Query cache benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                Task t = project.addTask("Task number " + i, prios[i % prios.length]);
+                if (i % 4 == 0) {
+                    t.setTakenBy("user" + (i % 10));
+                }
+            }
+        }
+        return manager;
+    }
+}
@@ -0,0 +1,147 @@
+package bench;
+
+import io.ProjectsFileIO;
+import io.ShardedProjectStore;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares saving and loading all projects as one snapshot file with a ShardedProjectStore.
+ * <p>
+ * It measures a full save, a save after changing one task, a startup that only reads the
+ * projects and leaves their tasks in the mapped files, and a load with all tasks read.
+ * The single file is always written completely; the store only writes the changed project.
+ * The store is opened with 1 thread and with one thread per core, to show how opening the
+ * shards scales with the number of cores. The tasks are read on the calling thread.
+ * <p>
+ * Usage: {@code java bench.ShardedStoreBenchmark [projects, default 200] [tasks per project, default 5000]}.
+ */
+public class ShardedStoreBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int projects = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int tasksPerProject = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        ProjectsManager manager = createManager(projects, tasksPerProject);
+        List<Project> live = manager.getProjects();
+
+        File tempDir = Files.createTempDirectory("shards").toFile();
+        File file = new File(tempDir, "projects.ser");
+        try {
+            double fileSave = time(() -> ProjectsFileIO.serializeToFile(file, live));
+            double fileChange = time(() -> {
+                changeOneTask(live);
+                ProjectsFileIO.serializeToFile(file, live);
+            });
+            double fileStartup = time(() -> new ProjectsManager().setProjects(ProjectsFileIO.deSerializeFromFile(file)));
+            double fileLoad = time(() -> {
+                ProjectsManager loaded = new ProjectsManager();
+                loaded.setProjects(ProjectsFileIO.deSerializeFromFile(file));
+                readAllTasks(loaded);
+            });
+
+            File storeDir = new File(tempDir, "projects.d");
+            double storeSave = time(() -> { // a new store writes all
+                try (ShardedProjectStore fresh = new ShardedProjectStore(storeDir)) {
+                    fresh.save(live);
+                }
+            });
+            ShardedProjectStore store = new ShardedProjectStore(storeDir);
+            store.save(live);
+            double storeChange = time(() -> {
+                changeOneTask(live);
+                store.save(live);
+            });
+            ForkJoinPool one = new ForkJoinPool(1);
+            ForkJoinPool all = new ForkJoinPool(cores);
+            double storeStartupOne = time(() -> store.loadInto(new ProjectsManager(), one));
+            double storeStartupAll = time(() -> store.loadInto(new ProjectsManager(), all));
+            double storeLoad = time(() -> {
+                ProjectsManager loaded = new ProjectsManager();
+                store.loadInto(loaded, all);
+                readAllTasks(loaded);
+            });
+            one.shutdown();
+            all.shutdown();
+            store.close();
+
+            System.out.printf("%,d projects with %,d tasks each, %d cores%n", projects, tasksPerProject, cores);
+            System.out.printf("%-26s %14s %14s%n", "operation", "single file ms", "sharded ms");
+            System.out.printf("%-26s %14.1f %14.1f%n", "save all", fileSave, storeSave);
+            System.out.printf("%-26s %14.1f %14.1f%n", "save after one change", fileChange, storeChange);
+            System.out.printf("%-26s %14.1f %14.1f%n", "startup, 1 thread", fileStartup, storeStartupOne);
+            System.out.printf("%-26s %14s %14.1f%n", "startup, " + cores + " threads", "", storeStartupAll);
+            System.out.printf("%-26s %14.1f %14.1f%n", "startup and read all tasks", fileLoad, storeLoad);
+        } finally {
+            deleteAll(tempDir);
+        }
+    }
+
+    /**
+     * Reads the tasks of every project, on the calling thread.
+     */
+    private static void readAllTasks(ProjectsManager manager) {
+        for (Project p : manager.getProjects()) {
+            p.getState();
+        }
+    }
+
+    private static void changeOneTask(List<Project> projects) {
+        Task task = projects.get(projects.size() / 2).getTasks().get(0);
+        task.setState(task.getState() == TaskState.DONE ? TaskState.TO_DO : TaskState.DONE);
+    }
+
+    /**
+     * Returns the average time in milliseconds of an action, after running it as many times to warm up.
+     */
+    private static double time(Action action) throws Exception {
+        for (int i = 0; i < RUNS; i++) {
+            action.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            action.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static ProjectsManager createManager(int projects, int tasksPerProject) {
+        ProjectsManager manager = new ProjectsManager();
+        TaskPrio[] prios = TaskPrio.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Sharded store benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                Task t = project.addTask("Task number " + i, prios[i % prios.length]);
+                if (i % 4 == 0) {
+                    t.setTakenBy("user" + (i % 10));
+                }
+            }
+        }
+        return manager;
+    }
+
+    private static void deleteAll(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteAll(f);
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,125 @@
+package bench;
+
+import io.MappedProjectStore;
+import io.ProjectsBinaryIO;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Compares the binary snapshot format with java.io serialization.
+ * <p>
+ * For 1 000, 100 000 and 1 000 000 tasks it prints the save time, load time and
+ * file size of both formats. The "mapped" rows load the binary snapshot through
+ * MappedProjectStore, which only reads the project directory and leaves the tasks on disk.
+ * The "deflate" rows write compressed snapshots with Deflater level 1, 6 and 9 and read them
+ * back with all tasks, like the "binary" rows. The ratio is the size of the uncompressed
+ * binary snapshot divided by the size of the file.
+ * Each measurement is the best of a few runs after a warm-up.
+ * Run with a large enough heap, for example {@code java -Xmx2g bench.SnapshotFormatBenchmark}.
+ */
+public class SnapshotFormatBenchmark {
+
+    private static final int TASKS_PER_PROJECT = 100;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1_000, 100_000, 1_000_000};
+        File file = File.createTempFile("snapshot-bench", ".bin");
+        file.deleteOnExit();
+
+        System.out.printf("%-10s %-8s %12s %12s %14s %7s%n", "tasks", "format", "save ms", "load ms", "bytes", "ratio");
+        for (int size : sizes) {
+            List<Project> projects = createProjects(size);
+
+            long binaryBytes = 0;
+            for (String format : new String[]{"binary", "mapped", "java.io", "deflate1", "deflate6", "deflate9"}) {
+                long[] result = measure(file, projects, format);
+                if (format.equals("binary")) {
+                    binaryBytes = result[2];
+                }
+                System.out.printf("%-10d %-8s %12.1f %12.1f %14d %7.2f%n", size, format,
+                        result[0] / 1e6, result[1] / 1e6, result[2], (double) binaryBytes / result[2]);
+            }
+        }
+    }
+
+    /**
+     * Creates projects holding the given number of tasks in total,
+     * with a mix of priorities, states and assignees.
+     */
+    static List<Project> createProjects(int taskCount) {
+        ProjectsManager manager = new ProjectsManager();
+        String[] people = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+        TaskPrio[] prios = TaskPrio.values();
+        Project project = null;
+        for (int i = 0; i < taskCount; i++) {
+            if (i % TASKS_PER_PROJECT == 0) {
+                project = manager.addProject("Project " + i / TASKS_PER_PROJECT, "Benchmark project");
+            }
+            Task task = project.addTask("Task number " + i, prios[i % prios.length]);
+            if (i % 3 == 0) {
+                task.setTakenBy(people[i % people.length]);
+            }
+            if (i % 4 == 0) {
+                task.setState(TaskState.DONE);
+            }
+        }
+        return manager.getProjects();
+    }
+
+    /**
+     * Returns the best save time and load time in nanoseconds, and the file size in bytes.
+     */
+    private static long[] measure(File file, List<Project> projects, String format) throws Exception {
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        for (int run = 0; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            save(file, projects, format);
+            long saved = System.nanoTime();
+            List<Project> loaded = load(file, format);
+            long end = System.nanoTime();
+            if (loaded.size() != projects.size()) {
+                throw new IllegalStateException("Loaded " + loaded.size() + " projects, expected " + projects.size());
+            }
+            if (run > 0) { // the first run is warm-up
+                bestSave = Math.min(bestSave, saved - start);
+                bestLoad = Math.min(bestLoad, end - saved);
+            }
+        }
+        return new long[]{bestSave, bestLoad, file.length()};
+    }
+
+    private static void save(File file, List<Project> projects, String format) throws IOException {
+        if (format.startsWith("deflate")) {
+            ProjectsBinaryIO.writeToFile(file, projects, Integer.parseInt(format.substring(7)));
+        } else if (!format.equals("java.io")) {
+            ProjectsBinaryIO.writeToFile(file, projects);
+        } else {
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+                out.writeObject(projects);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Project> load(File file, String format) throws Exception {
+        if (format.equals("binary") || format.startsWith("deflate")) {
+            return ProjectsBinaryIO.readFromFile(file);
+        }
+        if (format.equals("mapped")) {
+            return MappedProjectStore.load(file);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            return (List<Project>) in.readObject();
+        }
+    }
+}
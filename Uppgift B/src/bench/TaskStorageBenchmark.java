@@ -0,0 +1,128 @@
+package bench;
+
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskColumns;
+import model.TaskPrio;
+import model.TaskState;
+import model.matcher.ITaskMatcher;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Compares the heap used per task and the speed of a full scan with the tasks kept
+ * as Task objects and with the tasks kept in column storage (Project.useColumnStorage).
+ * <p>
+ * It creates projects with tasks that have mixed priorities, states, assignees and
+ * update dates, measures the heap after a garbage collection, then moves every project
+ * to column storage and measures again. The scan looks for tasks updated after a given
+ * day with a matcher, which the priority, state and assignee indexes cannot answer, so
+ * every task is checked: with Task.getLastUpdated in the first case and with the day
+ * column in the second. (Project.findTasksUpdatedBetween answers this from a date index.)
+ * <p>
+ * Usage: {@code java bench.TaskStorageBenchmark [projects, default 100] [tasks per project, default 10000]}.
+ * Give the JVM enough heap for both layouts, for example -Xmx2g.
+ */
+public class TaskStorageBenchmark {
+
+    private static final String[] PEOPLE = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+    private static final int SCANS = 20;
+
+    public static void main(String[] args) {
+        int projects = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int tasksPerProject = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long tasks = (long) projects * tasksPerProject;
+        LocalDate today = LocalDate.now();
+        ITaskMatcher recent = new UpdatedAfterMatcher(today.minusDays(30));
+
+        long empty = usedHeap();
+        ProjectsManager manager = createManager(projects, tasksPerProject, today);
+        long objects = usedHeap();
+        double objectScan = scan(manager, recent);
+
+        for (Project p : manager.getProjects()) {
+            p.useColumnStorage();
+        }
+        long columns = usedHeap();
+        double columnScan = scan(manager, recent);
+
+        System.out.printf("%,d projects with %,d tasks each%n", projects, tasksPerProject);
+        System.out.printf("%-10s %14s %14s%n", "storage", "bytes/task", "scan ms");
+        System.out.printf("%-10s %14.1f %14.1f%n", "objects", (double) (objects - empty) / tasks, objectScan);
+        System.out.printf("%-10s %14.1f %14.1f%n", "columns", (double) (columns - empty) / tasks, columnScan);
+    }
+
+    /**
+     * Returns the average time in milliseconds to search all projects with the matcher.
+     */
+    private static double scan(ProjectsManager manager, ITaskMatcher matcher) {
+        List<Project> projects = manager.getProjects();
+        long found = 0;
+        for (int i = 0; i < SCANS; i++) { // warm up
+            for (Project p : projects) {
+                found += p.findTasks(matcher).size();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < SCANS; i++) {
+            for (Project p : projects) {
+                found += p.findTasks(matcher).size();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println(found);
+        }
+        return nanos / 1e6 / SCANS;
+    }
+
+    private static ProjectsManager createManager(int projects, int tasksPerProject, LocalDate today) {
+        ProjectsManager manager = new ProjectsManager();
+        TaskPrio[] prios = TaskPrio.values();
+        TaskState[] states = TaskState.values();
+        for (int p = 0; p < projects; p++) {
+            Project project = manager.addProject("Project " + p, "Storage benchmark project");
+            for (int i = 0; i < tasksPerProject; i++) {
+                project.restoreTask(new Task(i + 1, "Task number " + i, prios[i % prios.length],
+                        states[(p + i) % states.length], i % 3 == 0 ? PEOPLE[(p + i) % PEOPLE.length] : null,
+                        today.minusDays((i * 7919L) % 365)));
+            }
+        }
+        return manager;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Matches tasks updated after a given day. Matchers are not answered by the date index, so it scans.
+     */
+    private static class UpdatedAfterMatcher implements ITaskMatcher {
+        private final LocalDate after;
+        private final int afterDay;
+
+        UpdatedAfterMatcher(LocalDate after) {
+            this.after = after;
+            this.afterDay = (int) after.toEpochDay();
+        }
+
+        @Override
+        public boolean match(Task task) {
+            return task.getLastUpdated().isAfter(after);
+        }
+
+        @Override
+        public boolean matchRow(TaskColumns columns, int row) {
+            return columns.lastUpdatedDayAt(row) > afterDay;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package io;
+
+import metrics.Metrics;
+import metrics.OperationStats;
+import model.ModelListener;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the projects in the background at a fixed interval, but only when something changed.
+ * <p>
+ * A save first takes a point-in-time copy of every project with Project.copy. Each project is
+ * locked only while its own tasks are copied, so the user interface waits at most for one
+ * project to be copied and never for the file to be written. The copy is then written on the
+ * background thread through ProjectsFileIO, which writes a temporary file, forces it to disk
+ * and renames it over the old snapshot.
+ * <p>
+ * When a journal is given, the save is a journal checkpoint. The copy is then taken after the
+ * journal has been flushed, so changes made while the snapshot is written stay in the journal.
+ * <p>
+ * When started with a ShardedProjectStore instead of a file, the store copies and writes only
+ * the projects that changed since the last save, and the copy times below are not measured.
+ * <p>
+ * The time of each save and the longest time a single project was locked for copying are kept,
+ * and also published as the metrics AutoSaver.save, AutoSaver.copyAll and AutoSaver.copyProject.
+ */
+public class AutoSaver implements ModelListener, Closeable {
+
+    /** Default time between two checks for changes. */
+    public static final long DEFAULT_INTERVAL_SECONDS = 30;
+
+    private static final OperationStats SAVE_STATS = Metrics.operation("AutoSaver", "save");
+    private static final OperationStats COPY_ALL_STATS = Metrics.operation("AutoSaver", "copyAll");
+    private static final OperationStats COPY_PROJECT_STATS = Metrics.operation("AutoSaver", "copyProject");
+
+    private final ProjectsManager manager;
+    private final File file;
+    private final ShardedProjectStore store;
+    private final ProjectsJournal journal;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong changes = new AtomicLong();
+    private final Object saveLock = new Object();
+    private long savedChanges;
+    private volatile int saveCount;
+    private volatile long lastSaveNanos;
+    private volatile long lastCopyNanos;
+    private volatile long longestProjectLockNanos;
+    private volatile IOException failure;
+
+    private AutoSaver(ProjectsManager manager, File file, ShardedProjectStore store, ProjectsJournal journal) {
+        this.manager = manager;
+        this.file = file;
+        this.store = store;
+        this.journal = journal;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "projects-autosave");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts saving the projects of the manager at a fixed interval.
+     *
+     * @param manager the projects to save
+     * @param file the snapshot file to replace
+     * @param journal the journal to checkpoint, or null to only write the snapshot
+     * @param intervalSeconds how often to check for changes
+     * @return the started saver
+     */
+    public static AutoSaver start(ProjectsManager manager, File file, ProjectsJournal journal, long intervalSeconds) {
+        return start(new AutoSaver(manager, file, null, journal), intervalSeconds);
+    }
+
+    /**
+     * Starts saving the changed projects of the manager to a sharded store at a fixed interval.
+     *
+     * @param manager the projects to save
+     * @param store the store to save to
+     * @param journal the journal to checkpoint, or null to only save to the store
+     * @param intervalSeconds how often to check for changes
+     * @return the started saver
+     */
+    public static AutoSaver start(ProjectsManager manager, ShardedProjectStore store, ProjectsJournal journal,
+                                  long intervalSeconds) {
+        return start(new AutoSaver(manager, null, store, journal), intervalSeconds);
+    }
+
+    private static AutoSaver start(AutoSaver saver, long intervalSeconds) {
+        saver.manager.addModelListener(saver);
+        saver.scheduler.scheduleWithFixedDelay(saver::saveInBackground,
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return saver;
+    }
+
+    private void saveInBackground() {
+        try {
+            saveIfChanged();
+        } catch (IOException e) {
+            failure = e; // see getFailure, the next save tries again
+        }
+    }
+
+    /**
+     * Saves the projects now if anything changed since the last save.
+     *
+     * @return true if the projects were saved, false if nothing had changed
+     * @throws IOException if the snapshot could not be written
+     */
+    public boolean saveIfChanged() throws IOException {
+        synchronized (saveLock) {
+            long seen = changes.get();
+            if (seen == savedChanges) {
+                return false;
+            }
+            long start = SAVE_STATS.start();
+            long begin = System.nanoTime();
+            if (store != null && journal != null) {
+                journal.checkpoint(store, manager::getProjects);
+            } else if (store != null) {
+                store.save(manager.getProjects());
+            } else if (journal != null) {
+                journal.checkpoint(file, this::copyProjects);
+            } else {
+                ProjectsFileIO.serializeToFile(file, copyProjects());
+            }
+            lastSaveNanos = System.nanoTime() - begin;
+            SAVE_STATS.stop(start);
+            savedChanges = seen;
+            saveCount++;
+            failure = null;
+            return true;
+        }
+    }
+
+    /**
+     * Copies all projects, locking one project at a time.
+     */
+    private List<Project> copyProjects() {
+        long start = COPY_ALL_STATS.start();
+        long begin = System.nanoTime();
+        long longest = 0;
+        List<Project> live = manager.getProjects();
+        List<Project> copies = new ArrayList<>(live.size());
+        for (Project p : live) {
+            long projectStart = COPY_PROJECT_STATS.start();
+            long copyBegin = System.nanoTime();
+            copies.add(p.copy());
+            longest = Math.max(longest, System.nanoTime() - copyBegin);
+            COPY_PROJECT_STATS.stop(projectStart);
+        }
+        lastCopyNanos = System.nanoTime() - begin;
+        longestProjectLockNanos = longest;
+        COPY_ALL_STATS.stop(start);
+        return copies;
+    }
+
+    /**
+     * Returns the number of saves made so far.
+     *
+     * @return the number of saves
+     */
+    public int getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * Returns how long the last save took, from the start of the copy until the file was replaced.
+     *
+     * @return the time in milliseconds, or 0 if nothing was saved yet
+     */
+    public double getLastSaveMillis() {
+        return lastSaveNanos / 1e6;
+    }
+
+    /**
+     * Returns how long the copy of all projects took in the last save.
+     *
+     * @return the time in milliseconds, or 0 if nothing was saved yet
+     */
+    public double getLastCopyMillis() {
+        return lastCopyNanos / 1e6;
+    }
+
+    /**
+     * Returns the longest time one project was locked during the last save. This is the
+     * longest another thread using that project could have had to wait for the save.
+     *
+     * @return the time in milliseconds, or 0 if nothing was saved yet
+     */
+    public double getLongestStallMillis() {
+        return longestProjectLockNanos / 1e6;
+    }
+
+    /**
+     * Stops the background saves, waiting for a save that is running to finish.
+     * The caller makes the last save when the application exits.
+     */
+    @Override
+    public void close() {
+        manager.removeModelListener(this);
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the result of the last save that failed in the background, or null.
+     *
+     * @return the error of the last background save, or null if it succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void projectAdded(Project project) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void projectRemoved(Project project) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void taskAdded(Project project, Task task) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void tasksAdded(Project project, List<Task> tasks) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void tasksUpdated(Project project, List<Task> tasks) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void taskRemoved(Project project, Task task) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void taskUpdated(Project project, Task task) {
+        changes.incrementAndGet();
+    }
+}
@@ -0,0 +1,535 @@
+package io;
+
+import model.NewTask;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.TitleNotUniqueException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports and exports projects and tasks as CSV or JSON Lines, one task per record.
+ * <p>
+ * Every record names its project by title, so a file can be produced by other systems
+ * without knowing any IDs. The columns (or JSON members) are:
+ * project, projectDescription, taskId, description, prio, state, takenBy and lastUpdated.
+ * A record without description, prio, state and takenBy stands for a project without tasks.
+ * CSV files start with a header line naming the columns, in any order.
+ * <p>
+ * Files are read and written in a streaming way through buffered file channels, one record
+ * at a time, so a file of any size can be handled. An import reads the file twice: first
+ * every record is checked, and only if all of them are correct are they added through
+ * ProjectsManager and Project. A bad record therefore stops the import with its line number
+ * before anything has changed.
+ * <p>
+ * An import keeps the rules of the model: a project is found by its title in the same way
+ * as isTitleUnique does, and a new project is only created when no project has that title.
+ * New tasks always get the next task ID of their project, so the taskId and lastUpdated
+ * columns written by an export are ignored when the file is imported again.
+ */
+public class BulkTransfer {
+
+    /** The file formats that can be imported and exported. */
+    public enum Format {
+        CSV, JSON_LINES;
+
+        /**
+         * Picks the format from the file name: .csv for CSV, .jsonl or .ndjson for JSON Lines.
+         *
+         * @param file the file to import or export
+         * @return the format of the file
+         * @throws IllegalArgumentException if the file name has no known extension
+         */
+        public static Format forFile(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return JSON_LINES;
+            }
+            throw new IllegalArgumentException("Unknown file type, use .csv or .jsonl: " + file);
+        }
+    }
+
+    private static final String[] COLUMNS = {
+            "project", "projectDescription", "taskId", "description", "prio", "state", "takenBy", "lastUpdated"
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The outcome of an import or export.
+     */
+    public static class Result {
+        private final long records;
+        private final int projectsCreated;
+        private final long nanos;
+
+        Result(long records, int projectsCreated, long nanos) {
+            this.records = records;
+            this.projectsCreated = projectsCreated;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the number of records read or written, one per task or empty project.
+         *
+         * @return the number of records
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the number of projects an import had to create.
+         *
+         * @return the number of new projects, always 0 for an export
+         */
+        public int getProjectsCreated() {
+            return projectsCreated;
+        }
+
+        /**
+         * Returns how long the import or export took.
+         *
+         * @return the time in milliseconds
+         */
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        /**
+         * Returns the throughput of the import or export.
+         *
+         * @return the number of records handled per second
+         */
+        public double getRecordsPerSecond() {
+            return nanos == 0 ? 0 : records * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d records, %d new projects in %.1f ms (%.0f records/s)",
+                    records, projectsCreated, getMillis(), getRecordsPerSecond());
+        }
+    }
+
+    /**
+     * Writes the projects and their tasks to a file.
+     *
+     * @param projects the projects to write
+     * @param file the file to write, replaced if it exists
+     * @param format the format of the file
+     * @return the number of records written and the time it took
+     * @throws IOException if the file could not be written
+     */
+    public static Result exportFile(List<Project> projects, File file, Format format) throws IOException {
+        long begin = System.nanoTime();
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(
+                     Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE)) {
+            StringBuilder sb = new StringBuilder(256);
+            if (format == Format.CSV) {
+                out.write(String.join(",", COLUMNS));
+                out.write('\n');
+            }
+            for (Project p : projects) {
+                List<Task> tasks = p.getTasks();
+                if (tasks.isEmpty()) {
+                    sb.setLength(0);
+                    appendRecord(sb, format, p, null);
+                    out.append(sb);
+                    records++;
+                }
+                for (Task t : tasks) {
+                    sb.setLength(0);
+                    appendRecord(sb, format, p, t);
+                    out.append(sb);
+                    records++;
+                }
+            }
+        }
+        return new Result(records, 0, System.nanoTime() - begin);
+    }
+
+    private static void appendRecord(StringBuilder sb, Format format, Project p, Task t) {
+        if (format == Format.CSV) {
+            appendCsv(sb, p.getTitle()).append(',');
+            appendCsv(sb, p.getDescription()).append(',');
+            if (t != null) {
+                sb.append(t.getId()).append(',');
+                appendCsv(sb, t.getDescription()).append(',');
+                sb.append(t.getPrio().name()).append(',');
+                sb.append(t.getState().name()).append(',');
+                appendCsv(sb, t.getTakenBy()).append(',');
+                sb.append(t.getLastUpdated());
+            } else {
+                sb.append(",,,,,");
+            }
+        } else {
+            sb.append("{\"project\":");
+            Json.appendString(sb, p.getTitle());
+            sb.append(",\"projectDescription\":");
+            Json.appendString(sb, p.getDescription());
+            if (t != null) {
+                sb.append(",\"taskId\":").append(t.getId());
+                sb.append(",\"description\":");
+                Json.appendString(sb, t.getDescription());
+                sb.append(",\"prio\":\"").append(t.getPrio().name()).append('"');
+                sb.append(",\"state\":\"").append(t.getState().name()).append('"');
+                sb.append(",\"takenBy\":");
+                Json.appendString(sb, t.getTakenBy());
+                sb.append(",\"lastUpdated\":\"").append(t.getLastUpdated()).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends a CSV field, quoted only when it holds a comma, a quote or a line break.
+     */
+    private static StringBuilder appendCsv(StringBuilder sb, String s) {
+        if (s == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(s);
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Reads projects and tasks from a file and adds them to the manager.
+     * <p>
+     * Records for a title that already exists are added to that project. Other titles get
+     * a new project, with the projectDescription of the first record for that title.
+     * The tasks are added in batches with Project.addTasks, with their state and takenBy.
+     *
+     * @param manager the manager to add the projects and tasks to
+     * @param file the file to read
+     * @param format the format of the file
+     * @return the number of records imported, the number of new projects and the time it took
+     * @throws ImportFormatException if a record is not correct; nothing has been imported then
+     * @throws IOException if the file could not be read
+     */
+    public static Result importFile(ProjectsManager manager, File file, Format format) throws IOException {
+        long begin = System.nanoTime();
+        // check every record first, so a bad line does not leave half an import behind
+        readRecords(file, format, record -> { });
+
+        Importer importer = new Importer(manager);
+        long records = readRecords(file, format, importer);
+        importer.addPending();
+        return new Result(records, importer.projectsCreated, System.nanoTime() - begin);
+    }
+
+    private interface RecordHandler {
+        void handle(Record record);
+    }
+
+    /**
+     * Adds records to the manager, looking up the project only when the title changes.
+     * Tasks for the same project are collected and added with one call of Project.addTasks.
+     */
+    private static class Importer implements RecordHandler {
+        private static final int BATCH_SIZE = 4096;
+
+        private final ProjectsManager manager;
+        private final List<NewTask> pending = new ArrayList<>(BATCH_SIZE);
+        private String title;
+        private Project project;
+        private int projectsCreated;
+
+        Importer(ProjectsManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void handle(Record record) {
+            if (!record.project.equals(title)) {
+                addPending();
+                project = findOrAddProject(record);
+                title = record.project;
+            }
+            if (record.prio == null) {
+                return;
+            }
+            pending.add(new NewTask(record.description, record.prio, record.state, record.takenBy));
+            if (pending.size() == BATCH_SIZE) {
+                addPending();
+            }
+        }
+
+        void addPending() {
+            if (!pending.isEmpty()) {
+                project.addTasks(pending);
+                pending.clear();
+            }
+        }
+
+        private Project findOrAddProject(Record record) {
+            Project found = manager.getProjectByTitle(record.project);
+            if (found != null) {
+                return found;
+            }
+            try {
+                Project added = manager.addProject(record.project,
+                        record.projectDescription == null ? "" : record.projectDescription);
+                projectsCreated++;
+                return added;
+            } catch (TitleNotUniqueException e) {
+                return manager.getProjectByTitle(record.project); // added by another thread meanwhile
+            }
+        }
+    }
+
+    /**
+     * Reads all records of the file and gives them to the handler.
+     *
+     * @return the number of records read
+     */
+    private static long readRecords(File file, Format format, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             Reader in = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1)) {
+            return format == Format.CSV ? readCsv(in, handler) : readJsonLines(in, handler);
+        }
+    }
+
+    private static long readJsonLines(Reader in, RecordHandler handler) throws IOException {
+        BufferedReader lines = new BufferedReader(in, BUFFER_SIZE);
+        long records = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            Map<String, String> members;
+            try {
+                members = Json.parseObject(line);
+            } catch (IllegalArgumentException e) {
+                throw new ImportFormatException(lineNumber, e.getMessage());
+            }
+            handler.handle(Record.of(lineNumber, members::get));
+            records++;
+        }
+        return records;
+    }
+
+    private static long readCsv(Reader in, RecordHandler handler) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        List<String> header = csv.next();
+        if (header == null) {
+            return 0;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim(), i);
+        }
+        if (!columns.containsKey("project")) {
+            throw new ImportFormatException(1, "The header has no project column");
+        }
+        long records = 0;
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue; // empty line
+            }
+            if (fields.size() != header.size()) {
+                throw new ImportFormatException(csv.recordLine,
+                        "Expected " + header.size() + " fields, found " + fields.size());
+            }
+            List<String> values = fields;
+            handler.handle(Record.of(csv.recordLine, name -> {
+                Integer i = columns.get(name);
+                return i == null || values.get(i).isEmpty() ? null : values.get(i);
+            }));
+            records++;
+        }
+        return records;
+    }
+
+    private interface Fields {
+        String get(String name);
+    }
+
+    /**
+     * One checked record of an import file. A record without prio stands for a project only.
+     */
+    private static class Record {
+        final String project;
+        final String projectDescription;
+        final String description;
+        final TaskPrio prio;
+        final TaskState state;
+        final String takenBy;
+
+        private Record(String project, String projectDescription, String description,
+                       TaskPrio prio, TaskState state, String takenBy) {
+            this.project = project;
+            this.projectDescription = projectDescription;
+            this.description = description;
+            this.prio = prio;
+            this.state = state;
+            this.takenBy = takenBy;
+        }
+
+        static Record of(long line, Fields fields) throws ImportFormatException {
+            String project = fields.get("project");
+            if (project == null || project.isBlank()) {
+                throw new ImportFormatException(line, "The project title is missing");
+            }
+            String description = fields.get("description");
+            String prio = fields.get("prio");
+            String state = fields.get("state");
+            String takenBy = fields.get("takenBy");
+            if (description == null && prio == null && state == null && takenBy == null) {
+                return new Record(project, fields.get("projectDescription"), null, null, null, null);
+            }
+            if (description == null) {
+                throw new ImportFormatException(line, "The task description is missing");
+            }
+            if (prio == null) {
+                throw new ImportFormatException(line, "The task prio is missing");
+            }
+            return new Record(project, fields.get("projectDescription"), description,
+                    parse(line, "prio", prio, TaskPrio.class),
+                    state == null ? TaskState.TO_DO : parse(line, "state", state, TaskState.class),
+                    takenBy);
+        }
+
+        private static <E extends Enum<E>> E parse(long line, String name, String text, Class<E> type)
+                throws ImportFormatException {
+            try {
+                return Enum.valueOf(type, text.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ImportFormatException(line, "Unknown " + name + " '" + text + "', expected one of "
+                        + Arrays.toString(type.getEnumConstants()));
+            }
+        }
+    }
+
+    /**
+     * Splits CSV text into records of fields. Quoted fields may hold commas, quotes written
+     * as two quotes, and line breaks.
+     */
+    private static class CsvReader {
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int pos;
+        private int limit;
+        private long line = 1;
+        private long recordLine;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos++];
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return the fields of the record, or null at the end of the text
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>(COLUMNS.length);
+            StringBuilder field = new StringBuilder();
+            while (true) {
+                if (c == '"') {
+                    while (true) {
+                        c = read();
+                        if (c < 0) {
+                            throw new ImportFormatException(recordLine, "Missing closing quote");
+                        }
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') {
+                                break;
+                            }
+                        } else if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                    if (c >= 0 && c != ',' && c != '\r' && c != '\n') {
+                        throw new ImportFormatException(line, "Unexpected text after a closing quote");
+                    }
+                } else {
+                    while (c >= 0 && c != ',' && c != '\r' && c != '\n') {
+                        field.append((char) c);
+                        c = read();
+                    }
+                }
+                fields.add(field.toString());
+                field.setLength(0);
+                if (c != ',') {
+                    break;
+                }
+                c = read();
+            }
+            if (c == '\r') {
+                c = read();
+                if (c >= 0 && c != '\n') {
+                    pos--; // a lone carriage return also ends the line
+                }
+            }
+            line++;
+            return fields;
+        }
+    }
+
+    private BulkTransfer() {
+    }
+}
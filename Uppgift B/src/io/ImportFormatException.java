@@ -0,0 +1,27 @@
+package io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a line of an import file cannot be read as a project or task.
+ */
+public class ImportFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long lineNumber;
+
+    public ImportFormatException(long lineNumber, String message) {
+        super("Line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Returns the line of the file where the bad record starts, counted from 1.
+     *
+     * @return the line number
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+}
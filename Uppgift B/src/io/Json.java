@@ -0,0 +1,261 @@
+package io;
+
+import model.Project;
+import model.ProjectTask;
+import model.Task;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns projects and tasks into JSON text, and reads small flat JSON objects.
+ * <p>
+ * Only what the HTTP server and the JSON Lines import need is supported: an object to read
+ * must be flat, with values that are strings, numbers, true, false or null. Numbers and
+ * booleans are returned as their text, so the caller decides how to convert them.
+ */
+public class Json {
+
+    public static String project(Project p) {
+        StringBuilder sb = new StringBuilder(160);
+        appendProject(sb, p);
+        return sb.toString();
+    }
+
+    public static String projects(List<Project> projects) {
+        StringBuilder sb = new StringBuilder(64 + projects.size() * 160);
+        sb.append('[');
+        for (int i = 0; i < projects.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendProject(sb, projects.get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    public static String task(Task t) {
+        StringBuilder sb = new StringBuilder(160);
+        appendTask(sb, t);
+        return sb.toString();
+    }
+
+    public static String tasks(List<Task> tasks) {
+        StringBuilder sb = new StringBuilder(64 + tasks.size() * 160);
+        sb.append('[');
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendTask(sb, tasks.get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    public static String projectTasks(List<ProjectTask> found) {
+        StringBuilder sb = new StringBuilder(64 + found.size() * 180);
+        sb.append('[');
+        for (int i = 0; i < found.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"projectId\":").append(found.get(i).getProject().getId()).append(",\"task\":");
+            appendTask(sb, found.get(i).getTask());
+            sb.append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    public static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        appendString(sb, message);
+        return sb.append('}').toString();
+    }
+
+    private static void appendProject(StringBuilder sb, Project p) {
+        sb.append("{\"id\":").append(p.getId());
+        sb.append(",\"title\":");
+        appendString(sb, p.getTitle());
+        sb.append(",\"description\":");
+        appendString(sb, p.getDescription());
+        sb.append(",\"created\":\"").append(p.getCreated()).append('"');
+        sb.append(",\"state\":\"").append(p.getState().name()).append('"');
+        sb.append(",\"lastUpdated\":\"").append(p.getLastUpdated()).append('"');
+        sb.append(",\"taskCount\":").append(p.getTaskCount());
+        sb.append('}');
+    }
+
+    private static void appendTask(StringBuilder sb, Task t) {
+        sb.append("{\"id\":").append(t.getId());
+        sb.append(",\"description\":");
+        appendString(sb, t.getDescription());
+        sb.append(",\"prio\":\"").append(t.getPrio().name()).append('"');
+        sb.append(",\"state\":\"").append(t.getState().name()).append('"');
+        sb.append(",\"takenBy\":");
+        appendString(sb, t.getTakenBy());
+        sb.append(",\"lastUpdated\":\"").append(t.getLastUpdated()).append('"');
+        sb.append('}');
+    }
+
+    /**
+     * Appends a string as a quoted JSON string, or null.
+     *
+     * @param sb where to append
+     * @param s the string, may be null
+     */
+    public static void appendString(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Reads a flat JSON object.
+     *
+     * @param text the JSON text
+     * @return the members of the object; null values are stored as null
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    public static Map<String, String> parseObject(String text) {
+        Reader r = new Reader(text);
+        Map<String, String> result = new HashMap<>();
+        r.expect('{');
+        if (!r.consume('}')) {
+            do {
+                String key = r.readString();
+                r.expect(':');
+                result.put(key, r.readValue());
+            } while (r.consume(','));
+            r.expect('}');
+        }
+        r.skipSpace();
+        if (r.pos != text.length()) {
+            throw r.error("Unexpected text after the object");
+        }
+        return result;
+    }
+
+    private static class Reader {
+        private final String text;
+        private int pos;
+
+        Reader(String text) {
+            this.text = text;
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        String readValue() {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}".indexOf(text.charAt(pos)) < 0
+                    && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw error("Expected a string, number, true, false or null");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char e = text.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Bad unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Bad unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e); // \" \\ \/
+                }
+            }
+            throw error("Missing closing quote");
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+
+    private Json() {
+    }
+}
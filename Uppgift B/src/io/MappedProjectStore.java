@@ -0,0 +1,346 @@
+package io;
+
+import model.Project;
+import model.Task;
+import model.TaskLoader;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Loads projects from a binary snapshot that is memory-mapped with FileChannel.map.
+ * <p>
+ * At startup only the project directory at the end of the file is read: ID, title,
+ * description and where the tasks of each project are stored. The tasks of a project
+ * are read from the mapped file the first time the project's tasks are used, so startup
+ * time and memory use depend on the number of projects and not on the number of tasks.
+ * <p>
+ * The mapping stays valid as long as any project that was never used is still reachable.
+ * A new snapshot must therefore be written to another file and moved over the old one,
+ * as ProjectsJournal.checkpoint does, never written into the mapped file itself.
+ * <p>
+ * Compressed snapshots are mapped the same way. The checksum of every block is checked
+ * when the file is loaded, so a damaged file is found at startup, but a block is only
+ * inflated when the tasks of its project are first used.
+ */
+public class MappedProjectStore {
+
+    /**
+     * Loads the projects of a binary snapshot.
+     * <p>
+     * Version 2 and 3 snapshots and compressed snapshots are mapped and their tasks are loaded
+     * lazily. Older versions do not have a directory and are read completely.
+     *
+     * @param file the snapshot file
+     * @return the projects stored in the file
+     * @throws IOException if the file could not be read or is not a binary snapshot
+     */
+    public static List<Project> load(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshots larger than 2 GB are not supported: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt(0) == ProjectsBinaryIO.COMPRESSED_MAGIC) {
+                byte version = buffer.get(4);
+                if (version != 1 && version != ProjectsBinaryIO.COMPRESSED_VERSION) {
+                    throw new IOException("Unsupported compressed snapshot version: " + version);
+                }
+                return readCompressedDirectory(buffer, file, version > 1);
+            }
+            if (buffer.getInt(0) != ProjectsBinaryIO.MAGIC) {
+                throw new IOException("Not a binary projects snapshot: " + file);
+            }
+            byte version = buffer.get(4);
+            if (version == 1) {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                    in.skipBytes(ProjectsBinaryIO.HEADER_BYTES);
+                    return ProjectsBinaryIO.readVersion1(in);
+                }
+            }
+            if (version != 2 && version != ProjectsBinaryIO.VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            return readDirectory(buffer, version > 2);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Damaged projects snapshot: " + file, e);
+        }
+    }
+
+    private static List<Project> readDirectory(ByteBuffer buffer, boolean hasAssignees) throws IOException {
+        int trailer = buffer.limit() - ProjectsBinaryIO.TRAILER_BYTES;
+        if (buffer.getInt(trailer + 8) != ProjectsBinaryIO.MAGIC) {
+            throw new IOException("Snapshot has no directory, it was not completely written");
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) buffer.getLong(trailer));
+
+        int projectCount = readVarInt(in);
+        List<Project> projects = new ArrayList<>(projectCount);
+        for (int i = 0; i < projectCount; i++) {
+            int id = in.getInt();
+            LocalDate created = LocalDate.ofEpochDay(in.getInt());
+            int nextTaskId = in.getInt();
+            int taskCount = in.getInt();
+            int offset = (int) in.getLong();
+            int length = in.getInt();
+            String title = readString(in);
+            String descr = readString(in);
+            Map<String, Integer> assignees = hasAssignees ? readAssignees(in) : null;
+
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset).limit(offset + length);
+            Block block = new Block(slice.slice(), taskCount, assignees);
+            projects.add(new Project(title, descr, id, created, nextTaskId, block));
+        }
+        return projects;
+    }
+
+    private static List<Project> readCompressedDirectory(ByteBuffer buffer, File file, boolean hasAssignees)
+            throws IOException {
+        int trailer = buffer.limit() - ProjectsBinaryIO.COMPRESSED_TRAILER_BYTES;
+        if (buffer.getInt(trailer + 12) != ProjectsBinaryIO.COMPRESSED_MAGIC) {
+            throw new IOException("Snapshot has no directory, it was not completely written");
+        }
+        int directoryOffset = (int) buffer.getLong(trailer);
+        ByteBuffer directory = buffer.duplicate();
+        directory.position(directoryOffset).limit(trailer);
+        if (crc32c(directory) != buffer.getInt(trailer + 8)) {
+            throw new IOException("Damaged directory in compressed snapshot: " + file);
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(directoryOffset);
+        int projectCount = readVarInt(in);
+        List<Project> projects = new ArrayList<>(projectCount);
+        for (int i = 0; i < projectCount; i++) {
+            int id = in.getInt();
+            LocalDate created = LocalDate.ofEpochDay(in.getInt());
+            int nextTaskId = in.getInt();
+            int taskCount = in.getInt();
+            int offset = (int) in.getLong();
+            int length = in.getInt();
+            int inflatedLength = in.getInt();
+            int checksum = in.getInt();
+            String title = readString(in);
+            String descr = readString(in);
+            Map<String, Integer> assignees = hasAssignees ? readAssignees(in) : null;
+
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset).limit(offset + length);
+            slice = slice.slice();
+            if (crc32c(slice) != checksum) {
+                throw new IOException("Damaged block of project " + id + " in compressed snapshot: " + file);
+            }
+            Block block = new CompressedBlock(slice, taskCount, assignees, inflatedLength, checksum);
+            projects.add(new Project(title, descr, id, created, nextTaskId, block));
+        }
+        return projects;
+    }
+
+    /**
+     * Reads the open tasks by assignee of a project, see ProjectsBinaryIO.
+     *
+     * @return the counts by name, or null if they were not known when the file was written
+     */
+    static Map<String, Integer> readAssignees(ByteBuffer in) {
+        int size = readVarInt(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Integer> open = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            open.put(name, readVarInt(in));
+        }
+        return Collections.unmodifiableMap(open);
+    }
+
+    static int crc32c(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The stored tasks of one project, still in the mapped file.
+     */
+    static class Block implements TaskLoader {
+        final ByteBuffer bytes;
+        private final int taskCount;
+        private final Map<String, Integer> openTasksByAssignee;
+
+        Block(ByteBuffer bytes, int taskCount) {
+            this(bytes, taskCount, null);
+        }
+
+        Block(ByteBuffer bytes, int taskCount, Map<String, Integer> openTasksByAssignee) {
+            this.bytes = bytes;
+            this.taskCount = taskCount;
+            this.openTasksByAssignee = openTasksByAssignee;
+        }
+
+        @Override
+        public int getTaskCount() {
+            return taskCount;
+        }
+
+        @Override
+        public Map<String, Integer> getOpenTasksByAssignee() {
+            return openTasksByAssignee;
+        }
+
+        /**
+         * Copies the stored bytes of this block to a stream, without reading the tasks.
+         */
+        void copyTo(OutputStream out) throws IOException {
+            ByteBuffer in = bytes.duplicate();
+            byte[] chunk = new byte[Math.min(in.remaining(), 64 * 1024)];
+            while (in.hasRemaining()) {
+                int n = Math.min(chunk.length, in.remaining());
+                in.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+
+        @Override
+        public List<Task> loadTasks() {
+            return readTasks(bytes.duplicate());
+        }
+
+        static List<Task> readTasks(ByteBuffer in) {
+            String[] table = new String[readVarInt(in)];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = readString(in);
+            }
+
+            TaskPrio[] prios = TaskPrio.values();
+            TaskState[] states = TaskState.values();
+            int count = readVarInt(in);
+            List<Task> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = in.getInt();
+                String descr = table[readVarInt(in)];
+                TaskPrio prio = prios[in.get()];
+                TaskState state = states[in.get()];
+                int takenByRef = readVarInt(in);
+                String takenBy = takenByRef == 0 ? null : table[takenByRef - 1];
+                LocalDate lastUpdated = LocalDate.ofEpochDay(in.getInt());
+                tasks.add(new Task(id, descr, prio, state, takenBy, lastUpdated));
+            }
+            return tasks;
+        }
+    }
+
+    /**
+     * The stored tasks of one project in a compressed snapshot, inflated when they are needed.
+     * <p>
+     * copyTo writes the inflated block, so a project that was never used can be saved in the
+     * uncompressed format too. copyStoredTo copies the compressed bytes as they are.
+     */
+    static class CompressedBlock extends Block {
+        private final int inflatedLength;
+        private final int checksum;
+
+        CompressedBlock(ByteBuffer bytes, int taskCount, Map<String, Integer> openTasksByAssignee,
+                        int inflatedLength, int checksum) {
+            super(bytes, taskCount, openTasksByAssignee);
+            this.inflatedLength = inflatedLength;
+            this.checksum = checksum;
+        }
+
+        int getInflatedLength() {
+            return inflatedLength;
+        }
+
+        int getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Copies the compressed bytes of this block to a stream.
+         */
+        void copyStoredTo(OutputStream out) throws IOException {
+            super.copyTo(out);
+        }
+
+        @Override
+        void copyTo(OutputStream out) throws IOException {
+            out.write(inflate());
+        }
+
+        @Override
+        public List<Task> loadTasks() {
+            return readTasks(ByteBuffer.wrap(inflate()));
+        }
+
+        private byte[] inflate() {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(bytes.duplicate());
+                byte[] result = new byte[inflatedLength];
+                int n = 0;
+                while (n < result.length) {
+                    int got = inflater.inflate(result, n, result.length - n);
+                    if (got == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IllegalStateException("Compressed block is shorter than its stored length");
+                    }
+                    n += got;
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Damaged compressed block in snapshot", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in snapshot");
+    }
+
+    private MappedProjectStore() {
+    }
+}
@@ -0,0 +1,416 @@
+package io;
+
+import model.Project;
+import model.Task;
+import model.TaskLoader;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Reads and writes projects in a compact binary snapshot format.
+ * <p>
+ * The file starts with a magic number and a schema version. Strings are stored once in a
+ * string table and referred to by index, enums are stored as one byte and dates as the
+ * number of days since 1970-01-01.
+ * <p>
+ * Schema version 2 stores each project's tasks in a separate block with its own string table,
+ * followed by a small directory of the projects. This lets MappedProjectStore read only the
+ * directory at startup and load the tasks of a project when it is first used. Version 3
+ * adds to the directory how many open tasks each person has in each project, so that
+ * ProjectsManager.getNextTask only has to load the projects where the person has some.
+ * Layout of version 3 (all numbers are big-endian):
+ * <pre>
+ * int      magic "PRJB"
+ * byte     version
+ * blocks   one per project:
+ *            varint number of strings, then for each: varint byte length, UTF-8 bytes
+ *            varint number of tasks, then for each:
+ *              int id, varint description, byte prio, byte state,
+ *              varint takenBy (0 = none, otherwise string index + 1), int lastUpdated
+ * varint   number of projects, then for each:
+ *            int id, int created, int nextTaskId, int number of tasks,
+ *            long block offset, int block length, string title, string description,
+ *            assignees
+ * long     directory offset
+ * int      magic "PRJB"
+ * </pre>
+ * where assignees is a varint, 0 if the counts are not known, otherwise the number of
+ * people with tasks taken and not done plus one, followed for each by the name as a
+ * string and the number of such tasks as a varint.
+ * Version 2 files, which have no assignees in the directory, and version 1 files, which
+ * hold one string table for the whole file followed by all projects and tasks, can still
+ * be read.
+ * <p>
+ * A compressed snapshot has its own magic number, "PRJZ", and the same layout as version 3,
+ * except that each block is compressed with Deflater and has a CRC32C checksum:
+ * <pre>
+ * int      magic "PRJZ"
+ * byte     version
+ * blocks   one per project: a version 3 block, compressed (raw deflate, no header)
+ * varint   number of projects, then for each:
+ *            int id, int created, int nextTaskId, int number of tasks,
+ *            long block offset, int block length, int inflated block length,
+ *            int CRC32C of the compressed block, string title, string description,
+ *            assignees
+ * long     directory offset
+ * int      CRC32C of the directory
+ * int      magic "PRJZ"
+ * </pre>
+ * Compressed version 1 files, which have no assignees in the directory, can still be read.
+ */
+public class ProjectsBinaryIO {
+
+    /** The first four bytes of every binary snapshot: "PRJB". */
+    public static final int MAGIC = 0x50524A42;
+
+    /** The schema version written by this class. */
+    public static final byte VERSION = 3;
+
+    /** Size of the magic number and the version at the start of the file. */
+    static final int HEADER_BYTES = 5;
+
+    /** Size of the directory offset and the magic number at the end of the file. */
+    static final int TRAILER_BYTES = 12;
+
+    /** The first four bytes of every compressed snapshot: "PRJZ". */
+    public static final int COMPRESSED_MAGIC = 0x50524A5A;
+
+    /** The version of the compressed snapshot layout written by this class. */
+    public static final byte COMPRESSED_VERSION = 2;
+
+    /** Size of the directory offset, directory checksum and magic number at the end of a compressed file. */
+    static final int COMPRESSED_TRAILER_BYTES = 16;
+
+    /**
+     * Writes the projects to the file in the binary snapshot format.
+     * <p>
+     * Projects whose tasks were never loaded from a memory-mapped snapshot are
+     * copied from that snapshot as they are, without loading their tasks.
+     *
+     * @param file the file to write
+     * @param data the projects to save
+     * @throws IOException if the file could not be written or would be larger than 2 GB
+     */
+    public static void writeToFile(File file, List<Project> data) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            long[] offsets = new long[data.size()];
+            int[] lengths = new int[data.size()];
+            int[] taskCounts = new int[data.size()];
+            List<Map<String, Integer>> assignees = new ArrayList<>(data.size());
+            for (int i = 0; i < data.size(); i++) {
+                Project p = data.get(i);
+                offsets[i] = out.size();
+                synchronized (p) { // the tasks must not be loaded or changed while the block is chosen and written
+                    TaskLoader loader = p.getPendingTaskLoader();
+                    if (loader instanceof MappedProjectStore.Block) {
+                        MappedProjectStore.Block block = (MappedProjectStore.Block) loader;
+                        block.copyTo(out);
+                        taskCounts[i] = block.getTaskCount();
+                        assignees.add(block.getOpenTasksByAssignee());
+                    } else {
+                        List<Task> tasks = p.getTasks();
+                        writeBlock(out, tasks);
+                        taskCounts[i] = tasks.size();
+                        assignees.add(openTasksByAssignee(tasks));
+                    }
+                }
+                lengths[i] = (int) (out.size() - offsets[i]);
+            }
+
+            long directoryOffset = out.size();
+            writeVarInt(out, data.size());
+            for (int i = 0; i < data.size(); i++) {
+                Project p = data.get(i);
+                out.writeInt(p.getId());
+                out.writeInt((int) p.getCreated().toEpochDay());
+                out.writeInt(p.getNextTaskId());
+                out.writeInt(taskCounts[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                writeString(out, p.getTitle());
+                writeString(out, p.getDescription());
+                writeAssignees(out, assignees.get(i));
+            }
+            out.writeLong(directoryOffset);
+            out.writeInt(MAGIC);
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Snapshots larger than 2 GB are not supported");
+            }
+        }
+    }
+
+    /**
+     * Writes the projects to the file as a compressed snapshot, or with level 0 in the
+     * uncompressed binary snapshot format.
+     * <p>
+     * Projects whose tasks were never loaded from a memory-mapped snapshot are copied from
+     * that snapshot without loading their tasks, and from a compressed snapshot also without
+     * compressing them again.
+     *
+     * @param file the file to write
+     * @param data the projects to save
+     * @param level the Deflater level from 1 (fastest) to 9 (smallest), or 0 for no compression
+     * @throws IOException if the file could not be written or would be larger than 2 GB
+     * @throws IllegalArgumentException if the level is not between 0 and 9
+     */
+    public static void writeToFile(File file, List<Project> data, int level) throws IOException {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9: " + level);
+        }
+        if (level == 0) {
+            writeToFile(file, data);
+            return;
+        }
+        Deflater deflater = new Deflater(level, true);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(COMPRESSED_MAGIC);
+            out.writeByte(COMPRESSED_VERSION);
+
+            long[] offsets = new long[data.size()];
+            int[] lengths = new int[data.size()];
+            int[] inflatedLengths = new int[data.size()];
+            int[] checksums = new int[data.size()];
+            int[] taskCounts = new int[data.size()];
+            List<Map<String, Integer>> assignees = new ArrayList<>(data.size());
+            for (int i = 0; i < data.size(); i++) {
+                Project p = data.get(i);
+                offsets[i] = out.size();
+                synchronized (p) { // the tasks must not be loaded or changed while the block is chosen and written
+                    TaskLoader loader = p.getPendingTaskLoader();
+                    if (loader instanceof MappedProjectStore.CompressedBlock) {
+                        MappedProjectStore.CompressedBlock block = (MappedProjectStore.CompressedBlock) loader;
+                        block.copyStoredTo(out);
+                        inflatedLengths[i] = block.getInflatedLength();
+                        checksums[i] = block.getChecksum();
+                        taskCounts[i] = block.getTaskCount();
+                        assignees.add(block.getOpenTasksByAssignee());
+                    } else {
+                        CRC32C crc = new CRC32C();
+                        deflater.reset();
+                        DeflaterOutputStream compressed = new DeflaterOutputStream(
+                                new CheckedOutputStream(out, crc), deflater, 8 * 1024);
+                        // the deflater is called once per buffer, not once per written byte
+                        DataOutputStream blockOut = new DataOutputStream(
+                                new BufferedOutputStream(compressed, 8 * 1024));
+                        if (loader instanceof MappedProjectStore.Block) {
+                            MappedProjectStore.Block block = (MappedProjectStore.Block) loader;
+                            block.copyTo(blockOut);
+                            taskCounts[i] = block.getTaskCount();
+                            assignees.add(block.getOpenTasksByAssignee());
+                        } else {
+                            List<Task> tasks = p.getTasks();
+                            writeBlock(blockOut, tasks);
+                            taskCounts[i] = tasks.size();
+                            assignees.add(openTasksByAssignee(tasks));
+                        }
+                        blockOut.flush();
+                        compressed.finish(); // not close, that would close the file
+                        inflatedLengths[i] = blockOut.size();
+                        checksums[i] = (int) crc.getValue();
+                    }
+                }
+                lengths[i] = (int) (out.size() - offsets[i]);
+            }
+
+            long directoryOffset = out.size();
+            CRC32C crc = new CRC32C();
+            DataOutputStream directory = new DataOutputStream(new CheckedOutputStream(out, crc));
+            writeVarInt(directory, data.size());
+            for (int i = 0; i < data.size(); i++) {
+                Project p = data.get(i);
+                directory.writeInt(p.getId());
+                directory.writeInt((int) p.getCreated().toEpochDay());
+                directory.writeInt(p.getNextTaskId());
+                directory.writeInt(taskCounts[i]);
+                directory.writeLong(offsets[i]);
+                directory.writeInt(lengths[i]);
+                directory.writeInt(inflatedLengths[i]);
+                directory.writeInt(checksums[i]);
+                writeString(directory, p.getTitle());
+                writeString(directory, p.getDescription());
+                writeAssignees(directory, assignees.get(i));
+            }
+            directory.flush();
+            out.writeLong(directoryOffset);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(COMPRESSED_MAGIC);
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Snapshots larger than 2 GB are not supported");
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static void writeBlock(DataOutputStream out, List<Task> tasks) throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        for (Task t : tasks) {
+            intern(t.getDescription(), strings, table);
+            if (t.getTakenBy() != null) {
+                intern(t.getTakenBy(), strings, table);
+            }
+        }
+
+        writeVarInt(out, table.size());
+        for (String s : table) {
+            writeString(out, s);
+        }
+        writeVarInt(out, tasks.size());
+        for (Task t : tasks) {
+            out.writeInt(t.getId());
+            writeVarInt(out, strings.get(t.getDescription()));
+            out.writeByte(t.getPrio().ordinal());
+            out.writeByte(t.getState().ordinal());
+            writeVarInt(out, t.getTakenBy() == null ? 0 : strings.get(t.getTakenBy()) + 1);
+            out.writeInt((int) t.getLastUpdated().toEpochDay());
+        }
+    }
+
+    /**
+     * Counts the tasks that are taken and not done, by name as written.
+     */
+    static Map<String, Integer> openTasksByAssignee(List<Task> tasks) {
+        Map<String, Integer> open = new TreeMap<>();
+        for (Task t : tasks) {
+            if (t.getTakenBy() != null && t.getState() != TaskState.DONE) {
+                open.merge(t.getTakenBy(), 1, Integer::sum);
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Writes the open tasks by assignee of a project, or 0 if they are not known.
+     */
+    static void writeAssignees(DataOutput out, Map<String, Integer> open) throws IOException {
+        if (open == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, open.size() + 1);
+        for (Map.Entry<String, Integer> e : open.entrySet()) {
+            writeString(out, e.getKey());
+            writeVarInt(out, e.getValue());
+        }
+    }
+
+    /**
+     * Reads all projects and all their tasks from a file in the binary snapshot format.
+     * <p>
+     * Use MappedProjectStore to load the tasks only when they are needed.
+     *
+     * @param file the file to read
+     * @return the projects stored in the file
+     * @throws IOException if the file could not be read or is not a binary snapshot
+     */
+    public static List<Project> readFromFile(File file) throws IOException {
+        List<Project> projects = MappedProjectStore.load(file);
+        for (Project p : projects) {
+            p.getTasks();
+        }
+        return projects;
+    }
+
+    /**
+     * Reads projects from a stream holding a version 1 snapshot.
+     *
+     * @param in the stream to read from, positioned just after the magic number and version
+     * @return the projects stored in the stream
+     * @throws IOException if the stream could not be read
+     */
+    static List<Project> readVersion1(DataInputStream in) throws IOException {
+        String[] table = new String[readVarInt(in)];
+        byte[] buffer = new byte[256];
+        for (int i = 0; i < table.length; i++) {
+            int length = readVarInt(in);
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            table[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        TaskPrio[] prios = TaskPrio.values();
+        TaskState[] states = TaskState.values();
+        int projectCount = readVarInt(in);
+        List<Project> projects = new ArrayList<>(projectCount);
+        for (int i = 0; i < projectCount; i++) {
+            int id = in.readInt();
+            String title = table[readVarInt(in)];
+            String descr = table[readVarInt(in)];
+            LocalDate created = LocalDate.ofEpochDay(in.readInt());
+            int nextTaskId = in.readInt();
+            Project project = new Project(title, descr, id, created);
+
+            int taskCount = readVarInt(in);
+            for (int j = 0; j < taskCount; j++) {
+                int taskId = in.readInt();
+                String taskDescr = table[readVarInt(in)];
+                TaskPrio prio = prios[in.readByte()];
+                TaskState state = states[in.readByte()];
+                int takenByRef = readVarInt(in);
+                String takenBy = takenByRef == 0 ? null : table[takenByRef - 1];
+                LocalDate lastUpdated = LocalDate.ofEpochDay(in.readInt());
+                project.restoreTask(new Task(taskId, taskDescr, prio, state, takenBy, lastUpdated));
+            }
+            project.restoreNextTaskId(nextTaskId);
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void intern(String s, Map<String, Integer> strings, List<String> table) {
+        if (!strings.containsKey(s)) {
+            strings.put(s, table.size());
+            table.add(s);
+        }
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private ProjectsBinaryIO() {
+    }
+}
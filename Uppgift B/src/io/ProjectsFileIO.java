@@ -1,38 +1,155 @@
 package io;
 
+import metrics.Gauges;
+import metrics.Metrics;
+import metrics.OperationStats;
 import model.Project;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ProjectsFileIO {
 
+    /** The first two bytes of a file written with java.io serialization. */
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    private static final OperationStats SERIALIZE_STATS = Metrics.operation("ProjectsFileIO", "serializeToFile");
+    private static final OperationStats DESERIALIZE_STATS = Metrics.operation("ProjectsFileIO", "deSerializeFromFile");
+
+    /**
+     * Deflater level used by serializeToFile, from the system property projects.compression:
+     * 1 (fastest) to 9 (smallest) writes compressed snapshots, 0 or no value uncompressed ones.
+     */
+    private static final int COMPRESSION_LEVEL = Integer.getInteger("projects.compression", 0);
+
+    /** Size of the last snapshot written or read, published as the gauge SnapshotBytes. */
+    private static volatile long snapshotBytes;
+
+    /** The class keeps no state apart from snapshotBytes, so its gauges stay for the whole run. */
+    private static final Gauges GAUGES = Metrics.gauges("ProjectsFileIO").add("SnapshotBytes", () -> snapshotBytes);
+
     /**
      * Call this method before the application exits, to store the users and projects,
-     * in serialized form.
+     * in the binary snapshot format of ProjectsBinaryIO.
+     * <p>
+     * The snapshot is compressed when the system property projects.compression is set to a
+     * level from 1 to 9, see serializeToFile(File, List, int).
+     * <p>
+     * The projects are first written to a temporary file next to the given file, which is
+     * forced to disk and then renamed over the old file in one atomic step. A crash while
+     * saving therefore leaves either the old file or the new one, never a half-written file.
      */
     public static void serializeToFile(File file, List<Project> data) throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
-            out.writeObject(data);
+        serializeToFile(file, data, COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Stores the projects like serializeToFile(File, List), compressed with the given level.
+     * <p>
+     * A compressed snapshot is usually several times smaller, since the same names and values
+     * repeat in every project, and each block has a CRC32C checksum that is checked on load.
+     * Writing it takes more time; reading it takes a little more time for each project
+     * whose tasks are used.
+     *
+     * @param file the file to replace
+     * @param data the projects to save
+     * @param level the Deflater level from 1 (fastest) to 9 (smallest), or 0 for no compression
+     * @throws IOException if the file could not be written
+     * @throws IllegalArgumentException if the level is not between 0 and 9
+     */
+    public static void serializeToFile(File file, List<Project> data, int level) throws IOException {
+        long start = SERIALIZE_STATS.start();
+        try {
+            File tempFile = new File(file.getPath() + ".tmp");
+            ProjectsBinaryIO.writeToFile(tempFile, data, level);
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file);
+            snapshotBytes = file.length();
+        } finally {
+            SERIALIZE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Forces the directory entry of a renamed file to disk, so the rename survives a power loss.
+     * Not every platform can open a directory; there the rename is left to the file system.
+     */
+    static void syncDirectory(File file) {
+        Path dir = file.getAbsoluteFile().toPath().getParent();
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on this platform
         }
     }
 
     /**
      * Call this method at startup of the application, to deserialize the users and
      * projects from the specified file.
+     * <p>
+     * Binary snapshots, compressed or not, and older files written with java.io serialization
+     * can be read, the format is detected from the first bytes of the file. An older file is written
+     * in the binary format the next time the projects are saved.
+     * <p>
+     * Binary snapshots are memory-mapped by MappedProjectStore, and the tasks of a project
+     * are only read when the project is first used.
+     *
+     * @throws IOException if the file could not be read or is in no known format, also when
+     *         it is too short to tell
      */
     @SuppressWarnings("unchecked")
     public static List<Project> deSerializeFromFile(File file) throws IOException, ClassNotFoundException {
-        if (!file.exists()) {
-            return new ArrayList<>();
+        long start = DESERIALIZE_STATS.start();
+        try {
+            if (!file.exists()) {
+                return new ArrayList<>();
+            }
+
+            int magic = readMagic(file);
+            if (magic == ProjectsBinaryIO.MAGIC || magic == ProjectsBinaryIO.COMPRESSED_MAGIC) {
+                snapshotBytes = file.length();
+                return MappedProjectStore.load(file);
+            }
+            if (magic >>> 16 == JAVA_SERIALIZATION_MAGIC) {
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                    snapshotBytes = file.length();
+                    return (List<Project>) in.readObject();
+                }
+            }
+            throw new IOException("Unknown projects file format: " + file);
+        } finally {
+            DESERIALIZE_STATS.stop(start);
         }
+    }
 
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            return (List<Project>) in.readObject();
+    /**
+     * Reads the first four bytes of a file, which tell its format.
+     *
+     * @return the magic number, or 0 if the file is too short to have one, which
+     *         matches no known format
+     */
+    private static int readMagic(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt();
+        } catch (EOFException e) {
+            return 0;
         }
     }
 
     private ProjectsFileIO() {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,486 @@
+package io;
+
+import model.ModelListener;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of changes made to the projects.
+ * <p>
+ * Every change to the model is written as a small record at the end of the journal file,
+ * so the cost of saving a change does not depend on how many projects and tasks there are.
+ * Records are collected in memory and written in batches by a background thread,
+ * with one fsync per batch (group commit). If the application crashes, at most the
+ * changes of the last unwritten batch are lost.
+ * <p>
+ * At startup the journal is replayed on top of the last snapshot. A checkpoint writes
+ * a new snapshot and empties the journal. Replaying a record twice gives the same result
+ * as replaying it once, so a crash in the middle of a checkpoint is also safe.
+ * <p>
+ * If a batch cannot be written, the journal stops and makes the manager refuse every later
+ * change with an IllegalStateException, see ProjectsManager.refuseChanges. Changes are then
+ * refused before anything is changed, so no change is kept in memory that will not be
+ * written. Only the changes of the failed batch, and those made while it was being written,
+ * are lost. flush, checkpoint and close throw the error.
+ * <p>
+ * The journal never throws from its listener methods, which are called after a change has
+ * been made. Changes made after close are no longer recorded.
+ */
+public class ProjectsJournal implements ModelListener, Closeable {
+
+    /** Default time the background thread waits before committing a batch. */
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 50;
+
+    /** A batch larger than this is committed without waiting for the interval. */
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    /*
+     * Records of type 1 and 3 hold their strings as written by writeUTF, which cannot write
+     * strings over 64 KB. They are only read, from journals written by older versions.
+     */
+    private static final byte PUT_PROJECT_UTF = 1;
+    private static final byte REMOVE_PROJECT = 2;
+    private static final byte PUT_TASK_UTF = 3;
+    private static final byte REMOVE_TASK = 4;
+    private static final byte PUT_PROJECT = 5;
+    private static final byte PUT_TASK = 6;
+
+    private final FileChannel channel;
+    private final ProjectsManager manager;
+    private final long commitIntervalMillis;
+    private final Object lock = new Object();
+    private final Object writeLock = new Object();
+    private final Thread committer;
+    private ByteArrayOutputStream batch;
+    private IOException failure;
+    private boolean closed;
+
+    private ProjectsJournal(FileChannel channel, ProjectsManager manager, long commitIntervalMillis) {
+        this.channel = channel;
+        this.manager = manager;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.batch = new ByteArrayOutputStream();
+        this.committer = new Thread(this::commitLoop, "projects-journal");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal file, replays it into the manager, and starts recording
+     * every later change made through the manager.
+     * <p>
+     * A half-written record at the end of the file (from a crash) is cut off.
+     * A record is taken as half-written if it is longer than the rest of the file
+     * or its checksum does not match.
+     *
+     * @param file the journal file, created if it does not exist
+     * @param manager the manager that already holds the last snapshot
+     * @param commitIntervalMillis how long changes may wait in memory before they are written
+     * @return the opened journal
+     * @throws IOException if the journal file could not be read or opened
+     */
+    public static ProjectsJournal open(File file, ProjectsManager manager, long commitIntervalMillis) throws IOException {
+        long validLength = replay(file, manager);
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+
+        ProjectsJournal journal = new ProjectsJournal(channel, manager, commitIntervalMillis);
+        manager.addModelListener(journal);
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * Applies all complete records of a journal file to the manager.
+     *
+     * @param file the journal file
+     * @param manager the manager to apply the records to
+     * @return the length in bytes of the part of the file that held complete records
+     * @throws IOException if the file could not be read
+     */
+    static long replay(File file, ProjectsManager manager) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        long fileLength = file.length();
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > fileLength - validLength - 8) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), manager);
+                validLength += 8 + payload.length;
+            }
+        }
+        return validLength;
+    }
+
+    private static void apply(DataInputStream in, ProjectsManager manager) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case PUT_PROJECT:
+            case PUT_PROJECT_UTF: {
+                int id = in.readInt();
+                String title = readString(in, type == PUT_PROJECT);
+                String descr = readString(in, type == PUT_PROJECT);
+                LocalDate created = LocalDate.ofEpochDay(in.readInt());
+                manager.restoreProject(new Project(title, descr, id, created));
+                break;
+            }
+            case REMOVE_PROJECT: {
+                Project project = manager.getProjectById(in.readInt());
+                if (project != null) {
+                    manager.removeProject(project);
+                }
+                break;
+            }
+            case PUT_TASK:
+            case PUT_TASK_UTF: {
+                Project project = manager.getProjectById(in.readInt());
+                if (project == null) {
+                    break; // removed later in the journal, already folded into the snapshot
+                }
+                int id = in.readInt();
+                String descr = readString(in, type == PUT_TASK);
+                TaskPrio prio = TaskPrio.values()[in.readByte()];
+                TaskState state = TaskState.values()[in.readByte()];
+                String takenBy = in.readBoolean() ? readString(in, type == PUT_TASK) : null;
+                LocalDate lastUpdated = LocalDate.ofEpochDay(in.readInt());
+                project.restoreTask(new Task(id, descr, prio, state, takenBy, lastUpdated));
+                break;
+            }
+            case REMOVE_TASK: {
+                Project project = manager.getProjectById(in.readInt());
+                Task task = project == null ? null : project.getTaskById(in.readInt());
+                if (task != null) {
+                    project.removeTask(task);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * Reads a string written with ProjectsBinaryIO.writeString, or with writeUTF by older versions.
+     */
+    private static String readString(DataInputStream in, boolean lengthPrefixed) throws IOException {
+        if (!lengthPrefixed) {
+            return in.readUTF();
+        }
+        byte[] bytes = new byte[ProjectsBinaryIO.readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void projectAdded(Project project) {
+        append(out -> {
+            out.writeByte(PUT_PROJECT);
+            out.writeInt(project.getId());
+            ProjectsBinaryIO.writeString(out, project.getTitle());
+            ProjectsBinaryIO.writeString(out, project.getDescription());
+            out.writeInt((int) project.getCreated().toEpochDay());
+        });
+    }
+
+    @Override
+    public void projectRemoved(Project project) {
+        append(out -> {
+            out.writeByte(REMOVE_PROJECT);
+            out.writeInt(project.getId());
+        });
+    }
+
+    @Override
+    public void taskAdded(Project project, Task task) {
+        putTask(project, task);
+    }
+
+    @Override
+    public void taskRemoved(Project project, Task task) {
+        append(out -> {
+            out.writeByte(REMOVE_TASK);
+            out.writeInt(project.getId());
+            out.writeInt(task.getId());
+        });
+    }
+
+    @Override
+    public void taskUpdated(Project project, Task task) {
+        putTask(project, task);
+    }
+
+    @Override
+    public void tasksAdded(Project project, List<Task> tasks) {
+        putTasks(project, tasks);
+    }
+
+    @Override
+    public void tasksUpdated(Project project, List<Task> tasks) {
+        putTasks(project, tasks);
+    }
+
+    private void putTask(Project project, Task task) {
+        append(out -> writeTask(out, project, task));
+    }
+
+    /**
+     * Records many tasks of a project with one visit to the batch.
+     */
+    private void putTasks(Project project, List<Task> tasks) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(tasks.size() * 48);
+        DataOutputStream out = new DataOutputStream(records);
+        for (Task task : tasks) {
+            frame(out, o -> writeTask(o, project, task));
+        }
+        add(records);
+    }
+
+    private static void writeTask(DataOutputStream out, Project project, Task task) throws IOException {
+        out.writeByte(PUT_TASK);
+        out.writeInt(project.getId());
+        out.writeInt(task.getId());
+        ProjectsBinaryIO.writeString(out, task.getDescription());
+        out.writeByte(task.getPrio().ordinal());
+        out.writeByte(task.getState().ordinal());
+        out.writeBoolean(task.getTakenBy() != null);
+        if (task.getTakenBy() != null) {
+            ProjectsBinaryIO.writeString(out, task.getTakenBy());
+        }
+        out.writeInt((int) task.getLastUpdated().toEpochDay());
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(RecordWriter writer) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+        frame(new DataOutputStream(record), writer);
+        add(record);
+    }
+
+    /**
+     * Writes one record with its length and checksum in front.
+     */
+    private static void frame(DataOutputStream out, RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            writer.write(new DataOutputStream(bytes));
+            out.writeInt(bytes.size());
+            CRC32 crc = new CRC32();
+            byte[] payload = bytes.toByteArray();
+            crc.update(payload);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen, writes go to memory
+        }
+    }
+
+    /**
+     * Adds framed records to the batch that the background thread writes next. Called after
+     * the change was made, so it never throws: after a failure the manager refuses changes
+     * before they are made, and a change that got past that is dropped with its batch.
+     */
+    private void add(ByteArrayOutputStream records) {
+        synchronized (lock) {
+            if (closed || failure != null) {
+                return;
+            }
+            try {
+                records.writeTo(batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (batch.size() >= MAX_BATCH_BYTES) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                if (batch.size() < MAX_BATCH_BYTES) {
+                    try {
+                        lock.wait(commitIntervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            try {
+                commit();
+            } catch (IOException e) {
+                return; // kept in failure by commit
+            }
+        }
+    }
+
+    /**
+     * Writes the current batch to the file and forces it to disk. If that fails, the error
+     * is kept, the batch is dropped, the manager refuses all later changes, and the journal
+     * is not written again.
+     */
+    private void commit() throws IOException {
+        synchronized (writeLock) {
+            ByteArrayOutputStream toWrite;
+            synchronized (lock) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (batch.size() == 0) {
+                    return;
+                }
+                toWrite = batch;
+                batch = new ByteArrayOutputStream();
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(toWrite.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    batch = new ByteArrayOutputStream();
+                    lock.notifyAll();
+                }
+                manager.refuseChanges("Journal could not be written", e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes all changes recorded so far to disk and waits until they are stored.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public void flush() throws IOException {
+        commit();
+    }
+
+    /**
+     * Writes a new snapshot of all projects and then empties the journal.
+     * <p>
+     * ProjectsFileIO replaces the old snapshot in one atomic step, so a crash never
+     * leaves a half-written snapshot behind.
+     *
+     * @param snapshotFile the snapshot file to replace
+     * @param projects the projects to save
+     * @throws IOException if the snapshot or the journal could not be written
+     */
+    public void checkpoint(File snapshotFile, List<Project> projects) throws IOException {
+        checkpoint(snapshotFile, () -> projects);
+    }
+
+    /**
+     * Writes a new snapshot and then empties the journal, taking the projects to save
+     * only after all earlier changes have been written to the journal.
+     * <p>
+     * Use this when the projects are a copy taken for saving: any change made before the
+     * copy is in the copy, and any change made after it stays in the journal.
+     *
+     * @param snapshotFile the snapshot file to replace
+     * @param projects called once to get the projects to save
+     * @throws IOException if the snapshot or the journal could not be written
+     */
+    public void checkpoint(File snapshotFile, Supplier<List<Project>> projects) throws IOException {
+        checkpoint(() -> ProjectsFileIO.serializeToFile(snapshotFile, projects.get()));
+    }
+
+    /**
+     * Saves the changed projects to a sharded store and then empties the journal, taking
+     * the projects to save only after all earlier changes have been written to the journal.
+     * <p>
+     * The store copies each changed project while saving, so the live projects of the
+     * manager can be given.
+     *
+     * @param store the store to save to
+     * @param projects called once to get the projects to save
+     * @throws IOException if the store or the journal could not be written
+     */
+    public void checkpoint(ShardedProjectStore store, Supplier<List<Project>> projects) throws IOException {
+        checkpoint(() -> store.save(projects.get()));
+    }
+
+    private interface SnapshotWriter {
+        void write() throws IOException;
+    }
+
+    private void checkpoint(SnapshotWriter snapshot) throws IOException {
+        synchronized (writeLock) {
+            flush();
+            snapshot.write();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes all remaining changes and closes the journal file.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        manager.removeModelListener(this);
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package io;
+
+import metrics.Gauges;
+import metrics.Metrics;
+import metrics.OperationStats;
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskLoader;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Stores the projects in a directory, one file (shard) per project, listed by a manifest.
+ * <p>
+ * At startup the shards are opened in parallel on a fork/join pool: each worker maps one
+ * file with FileChannel.map and reads only its header. The tasks of a project are read
+ * from the mapped file the first time they are used, as MappedProjectStore does, so
+ * startup time and memory use depend on the number of projects and not on the number of
+ * tasks. The header also holds how many open tasks each person has in the project, so
+ * ProjectsManager.getNextTask only loads the projects it needs. The projects are handed to
+ * ProjectsManager.restoreProject in manifest order as soon as each one is ready.
+ * A damaged task block is therefore only found when its project is first used.
+ * <p>
+ * A save only writes the projects that changed since they were last read or written,
+ * found by comparing Project.getChangeCount with the count at that time. Unchanged
+ * projects keep their shard file, so the time to save depends on the size of the change.
+ * <p>
+ * Shards are never overwritten. Each save writes its shards under a new generation number,
+ * forces them to disk and then replaces the manifest in one atomic step, like
+ * ProjectsFileIO does for a single snapshot. Only then are the shards that the new manifest
+ * does not list deleted. A crash at any point leaves the old or the new manifest, and every
+ * shard it lists.
+ * <p>
+ * Layout of the manifest (all numbers are big-endian):
+ * <pre>
+ * int      magic "PRJM"
+ * byte     version
+ * long     generation of the last save
+ * varint   number of projects, then for each: int project ID, long generation of its shard
+ * </pre>
+ * Layout of a shard, named p&lt;project ID&gt;-&lt;generation&gt;.prj:
+ * <pre>
+ * int      magic "PRJS"
+ * byte     version
+ * int id, int created, int nextTaskId, int number of tasks, string title, string description
+ * assignees the open tasks by person, as in the directory of ProjectsBinaryIO version 3
+ * block    the tasks, in the block format of ProjectsBinaryIO version 3
+ * </pre>
+ * Version 1 shards, which have no assignees, can still be read.
+ */
+public class ShardedProjectStore implements Closeable {
+
+    /** The first four bytes of the manifest: "PRJM". */
+    public static final int MANIFEST_MAGIC = 0x50524A4D;
+
+    /** The first four bytes of every shard: "PRJS". */
+    public static final int SHARD_MAGIC = 0x50524A53;
+
+    /** The version of the manifest layout written by this class. */
+    public static final byte VERSION = 1;
+
+    /** The version of the shard layout written by this class. */
+    public static final byte SHARD_VERSION = 2;
+
+    private static final String MANIFEST_NAME = "manifest";
+    private static final String SHARD_SUFFIX = ".prj";
+
+    private static final OperationStats LOAD_STATS = Metrics.operation("ShardedProjectStore", "load");
+    private static final OperationStats SAVE_STATS = Metrics.operation("ShardedProjectStore", "save");
+
+    private final File dir;
+    private final File manifest;
+    private long generation;
+    private Map<Project, Saved> saved = new IdentityHashMap<>();
+    private volatile int lastShardsWritten;
+    private volatile long lastBytesWritten;
+    private final Gauges gauges;
+
+    /**
+     * Creates a store in the given directory. Nothing is read or written until load or save.
+     * The gauges ShardsWritten and ShardBytesWritten of the store are published until it is
+     * closed.
+     *
+     * @param dir the directory of the manifest and the shards, created by the first save
+     */
+    public ShardedProjectStore(File dir) {
+        this.dir = dir;
+        this.manifest = new File(dir, MANIFEST_NAME);
+        this.gauges = Metrics.gauges("ShardedProjectStore")
+                .add("ShardsWritten", () -> lastShardsWritten)
+                .add("ShardBytesWritten", () -> lastBytesWritten);
+    }
+
+    /**
+     * Takes the gauges of the store away. Projects loaded from the store can still read
+     * their tasks from the shards.
+     */
+    @Override
+    public void close() {
+        gauges.close();
+    }
+
+    /**
+     * Tells whether the directory holds a saved manifest.
+     *
+     * @return true if there is something to load
+     */
+    public boolean exists() {
+        return manifest.isFile();
+    }
+
+    /**
+     * Replaces the projects of the manager with the projects of the store, reading the
+     * shards in parallel on the common fork/join pool.
+     *
+     * @param manager the manager to fill
+     * @return the number of projects read
+     * @throws IOException if the manifest or a shard could not be read; the manager then
+     *         holds the projects read before the failing one
+     */
+    public int loadInto(ProjectsManager manager) throws IOException {
+        return loadInto(manager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replaces the projects of the manager with the projects of the store, reading the
+     * shards in parallel on the given pool.
+     *
+     * @param manager the manager to fill
+     * @param pool the fork/join pool to read the shards on
+     * @return the number of projects read
+     * @throws IOException if the manifest or a shard could not be read; the manager then
+     *         holds the projects read before the failing one
+     */
+    public synchronized int loadInto(ProjectsManager manager, ForkJoinPool pool) throws IOException {
+        long start = LOAD_STATS.start();
+        try {
+            manager.setProjects(new ArrayList<>());
+            saved = new IdentityHashMap<>();
+            if (!exists()) {
+                generation = 0;
+                return 0;
+            }
+
+            Manifest m = readManifest();
+            List<ForkJoinTask<Project>> reads = new ArrayList<>(m.ids.length);
+            for (int i = 0; i < m.ids.length; i++) {
+                File shard = shardFile(m.ids[i], m.generations[i]);
+                reads.add(pool.submit(() -> readShard(shard)));
+            }
+            try {
+                for (int i = 0; i < reads.size(); i++) {
+                    Project p = join(reads.get(i));
+                    manager.restoreProject(p);
+                    saved.put(p, new Saved(p.getChangeCount(), m.generations[i]));
+                }
+            } finally {
+                for (ForkJoinTask<Project> read : reads) {
+                    read.cancel(false); // only the ones not started yet, after a failure
+                }
+            }
+            generation = m.generation;
+            return reads.size();
+        } finally {
+            LOAD_STATS.stop(start);
+        }
+    }
+
+    private static Project join(ForkJoinTask<Project> read) throws IOException {
+        try {
+            return read.get();
+        } catch (ExecutionException e) {
+            throw ioException(e, "Could not read project shard");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading project shards");
+        }
+    }
+
+    /**
+     * Returns the IOException that made a task on the pool fail. The pool wraps checked
+     * exceptions in a RuntimeException, so the causes are searched for it.
+     */
+    private static IOException ioException(ExecutionException e, String message) {
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return (IOException) t;
+            }
+        }
+        return new IOException(message, e.getCause());
+    }
+
+    /**
+     * Maps one shard and reads its header. The tasks stay in the mapped file until the
+     * project is first used.
+     */
+    private static Project readShard(File file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Shards larger than 2 GB are not supported: " + file);
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != SHARD_MAGIC) {
+                throw new IOException("Not a project shard: " + file);
+            }
+            byte version = in.get();
+            if (version != 1 && version != SHARD_VERSION) {
+                throw new IOException("Unsupported shard version: " + version + " in " + file);
+            }
+            int id = in.getInt();
+            LocalDate created = LocalDate.ofEpochDay(in.getInt());
+            int nextTaskId = in.getInt();
+            int taskCount = in.getInt();
+            String title = MappedProjectStore.readString(in);
+            String descr = MappedProjectStore.readString(in);
+            Map<String, Integer> assignees = version > 1 ? MappedProjectStore.readAssignees(in) : null;
+            return new Project(title, descr, id, created, nextTaskId,
+                    new MappedProjectStore.Block(in.slice(), taskCount, assignees));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IOException("Damaged project shard: " + file, e);
+        }
+    }
+
+    /**
+     * Writes the projects that changed since the last load or save, and a manifest
+     * listing all the given projects. Projects that are no longer given are dropped.
+     * <p>
+     * A changed project is copied with Project.copy while it is locked, so the caller only
+     * waits for that copy, and the shards are then written in parallel on the common pool.
+     *
+     * @param projects the projects to save, normally the live projects of the manager
+     * @return the number of shards written, 0 if nothing had changed
+     * @throws IOException if a shard or the manifest could not be written
+     */
+    public synchronized int save(List<Project> projects) throws IOException {
+        long start = SAVE_STATS.start();
+        try {
+            long nextGeneration = generation + 1;
+            Map<Project, Saved> nextSaved = new IdentityHashMap<>();
+            int[] ids = new int[projects.size()];
+            long[] generations = new long[projects.size()];
+            List<Project> changed = new ArrayList<>();
+            for (int i = 0; i < projects.size(); i++) {
+                Project p = projects.get(i);
+                Saved last = saved.get(p);
+                ids[i] = p.getId();
+                synchronized (p) { // the count and the copy must belong together
+                    long count = p.getChangeCount();
+                    if (last != null && last.changeCount == count) {
+                        generations[i] = last.generation;
+                        nextSaved.put(p, last);
+                        continue;
+                    }
+                    changed.add(p.copy());
+                    generations[i] = nextGeneration;
+                    nextSaved.put(p, new Saved(count, nextGeneration));
+                }
+            }
+            if (changed.isEmpty() && nextSaved.size() == saved.size() && exists()) {
+                lastShardsWritten = 0;
+                lastBytesWritten = 0;
+                return 0; // the same projects, none of them changed
+            }
+
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            long bytes = writeShards(changed, nextGeneration);
+            ProjectsFileIO.syncDirectory(manifest);
+            writeManifest(new Manifest(nextGeneration, ids, generations));
+            deleteUnlisted(ids, generations);
+
+            generation = nextGeneration;
+            saved = nextSaved;
+            lastShardsWritten = changed.size();
+            lastBytesWritten = bytes;
+            return changed.size();
+        } finally {
+            SAVE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Writes the shards of the copied projects in parallel and returns the bytes written.
+     */
+    private long writeShards(List<Project> copies, long shardGeneration) throws IOException {
+        if (copies.size() == 1) {
+            return writeShard(copies.get(0), shardGeneration);
+        }
+        List<ForkJoinTask<Long>> writes = new ArrayList<>(copies.size());
+        for (Project copy : copies) {
+            writes.add(ForkJoinPool.commonPool().submit(() -> writeShard(copy, shardGeneration)));
+        }
+        long bytes = 0;
+        IOException failure = null;
+        for (ForkJoinTask<Long> write : writes) {
+            try {
+                bytes += write.get();
+            } catch (ExecutionException e) {
+                failure = ioException(e, "Could not write project shard");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Interrupted while writing project shards");
+            }
+        }
+        if (failure != null) {
+            throw failure; // the old manifest stays, the shards written so far are deleted by the next save
+        }
+        return bytes;
+    }
+
+    private long writeShard(Project p, long shardGeneration) throws IOException {
+        File file = shardFile(p.getId(), shardGeneration);
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+            out.writeInt(SHARD_MAGIC);
+            out.writeByte(SHARD_VERSION);
+            out.writeInt(p.getId());
+            out.writeInt((int) p.getCreated().toEpochDay());
+            out.writeInt(p.getNextTaskId());
+            TaskLoader loader = p.getPendingTaskLoader();
+            if (loader instanceof MappedProjectStore.Block) {
+                // read from a snapshot and never used: copy the stored tasks as they are
+                MappedProjectStore.Block block = (MappedProjectStore.Block) loader;
+                out.writeInt(block.getTaskCount());
+                ProjectsBinaryIO.writeString(out, p.getTitle());
+                ProjectsBinaryIO.writeString(out, p.getDescription());
+                ProjectsBinaryIO.writeAssignees(out, block.getOpenTasksByAssignee());
+                block.copyTo(out);
+            } else {
+                List<Task> tasks = p.getTasks();
+                out.writeInt(tasks.size());
+                ProjectsBinaryIO.writeString(out, p.getTitle());
+                ProjectsBinaryIO.writeString(out, p.getDescription());
+                ProjectsBinaryIO.writeAssignees(out, ProjectsBinaryIO.openTasksByAssignee(tasks));
+                ProjectsBinaryIO.writeBlock(out, tasks);
+            }
+            out.flush();
+            fileOut.getChannel().force(true);
+            return out.size();
+        }
+    }
+
+    private Manifest readManifest() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(manifest)))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Not a projects manifest: " + manifest);
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported manifest version: " + version);
+            }
+            long gen = in.readLong();
+            int count = ProjectsBinaryIO.readVarInt(in);
+            int[] ids = new int[count];
+            long[] generations = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+                generations[i] = in.readLong();
+            }
+            return new Manifest(gen, ids, generations);
+        } catch (EOFException e) {
+            throw new IOException("Damaged projects manifest: " + manifest, e);
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file, forces it to disk and renames it over the old one.
+     */
+    private void writeManifest(Manifest m) throws IOException {
+        File tempFile = new File(dir, MANIFEST_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(m.generation);
+            ProjectsBinaryIO.writeVarInt(out, m.ids.length);
+            for (int i = 0; i < m.ids.length; i++) {
+                out.writeInt(m.ids[i]);
+                out.writeLong(m.generations[i]);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile.toPath(), manifest.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ProjectsFileIO.syncDirectory(manifest);
+    }
+
+    /**
+     * Deletes the shards that the manifest does not list: old versions of changed projects,
+     * removed projects, and shards left by a save that failed.
+     */
+    private void deleteUnlisted(int[] ids, long[] generations) {
+        Set<String> listed = new HashSet<>();
+        for (int i = 0; i < ids.length; i++) {
+            listed.add(shardName(ids[i], generations[i]));
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SHARD_SUFFIX) && !listed.contains(name));
+        if (files != null) {
+            for (File f : files) {
+                f.delete(); // a shard left behind is deleted by a later save
+            }
+        }
+    }
+
+    private File shardFile(int id, long shardGeneration) {
+        return new File(dir, shardName(id, shardGeneration));
+    }
+
+    private static String shardName(int id, long shardGeneration) {
+        return "p" + id + "-" + shardGeneration + SHARD_SUFFIX;
+    }
+
+    /**
+     * Returns the number of shards written by the last save.
+     *
+     * @return the number of changed projects written, 0 if nothing was saved yet
+     */
+    public int getLastShardsWritten() {
+        return lastShardsWritten;
+    }
+
+    /**
+     * Returns the number of bytes of shards written by the last save, without the manifest.
+     *
+     * @return the size of the written shards, 0 if nothing was saved yet
+     */
+    public long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    /**
+     * The change count of a project when it was read or written, and the generation of its shard.
+     */
+    private static final class Saved {
+        final long changeCount;
+        final long generation;
+
+        Saved(long changeCount, long generation) {
+            this.changeCount = changeCount;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Manifest {
+        final long generation;
+        final int[] ids;
+        final long[] generations;
+
+        Manifest(long generation, int[] ids, long[] generations) {
+            this.generation = generation;
+            this.ids = ids;
+            this.generations = generations;
+        }
+    }
+}
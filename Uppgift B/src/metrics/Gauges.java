@@ -0,0 +1,128 @@
+package metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The gauges of one object, such as one ProjectsManager or one store, published together as
+ * the attributes of one MBean, see Metrics.gauges.
+ * <p>
+ * Every object gets its own MBean, so two objects of the same class never replace each
+ * other's gauges. Closing the gauges takes the MBean away again, and with it the only
+ * reference the metrics hold to the object.
+ */
+public final class Gauges implements Closeable {
+    private final ObjectName name;
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    Gauges(ObjectName name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds a gauge, replacing an earlier gauge of this object with the same name.
+     *
+     * @param gauge the attribute name of the gauge
+     * @param value reads the current value, must be quick and thread-safe
+     * @return these gauges, so that several can be added in one statement
+     */
+    public Gauges add(String gauge, LongSupplier value) {
+        if (Metrics.ENABLED) {
+            gauges.put(gauge, value);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the name the gauges are published under.
+     *
+     * @return the object name of the MBean
+     */
+    public ObjectName getObjectName() {
+        return name;
+    }
+
+    /**
+     * Takes the MBean away and drops the gauges. Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        gauges.clear();
+        if (Metrics.ENABLED) {
+            Metrics.unregister(name);
+        }
+    }
+
+    /**
+     * Returns the MBean that publishes the gauges.
+     */
+    DynamicMBean bean() {
+        return new Bean();
+    }
+
+    /**
+     * Publishes the gauges as read-only attributes of type long.
+     */
+    private class Bean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return gauge.getAsLong();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                LongSupplier gauge = gauges.get(attribute);
+                if (gauge != null) {
+                    list.add(new Attribute(attribute, gauge.getAsLong()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Gauges are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<String> names = new ArrayList<>(gauges.keySet());
+            Collections.sort(names);
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.size()];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = new MBeanAttributeInfo(names.get(i), "long", names.get(i), true, false, false);
+            }
+            return new MBeanInfo(Gauges.class.getName(), "Gauges of " + name.getKeyProperty("group"),
+                    attributes, null, null, null);
+        }
+    }
+}
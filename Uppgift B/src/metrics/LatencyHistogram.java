@@ -0,0 +1,80 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision, in the style of HdrHistogram.
+ * <p>
+ * Values are sorted into buckets whose width grows with the value: each power of two is split
+ * into {@value #SUB_BUCKETS} equal parts, so a bucket is never wider than about 3% of the values
+ * it holds. The number of buckets is fixed, so recording never allocates, and a percentile
+ * is found by walking the buckets. Values above about 18 minutes are counted in the last bucket.
+ * <p>
+ * Recording is one atomic increment. Different durations land in different buckets,
+ * so threads seldom compete for the same counter.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketOf(MAX_VALUE) + 1);
+
+    void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(0, Math.min(nanos, MAX_VALUE))));
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values lie,
+     * rounded up to the top of its bucket, or 0 if nothing was recorded.
+     *
+     * @param fraction a number from 0 to 1, for example 0.99 for the 99th percentile
+     * @return the percentile in nanoseconds
+     */
+    long percentile(double fraction) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(snapshot.length - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
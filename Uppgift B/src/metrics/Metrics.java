@@ -0,0 +1,135 @@
+package metrics;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The registry of all operation metrics and gauges, published as MBeans.
+ * <p>
+ * Each measured operation has an OperationStats, published under
+ * {@code projects:type=Operation,class=...,name=...}. Gauges are values read when they
+ * are asked for, such as the number of projects. The gauges of one object are published
+ * together as the attributes of {@code projects:type=Gauges,group=...,instance=...}, with
+ * a new instance number for every object, and are taken away when they are closed.
+ * Any JMX client, for example JConsole, can read them.
+ * <p>
+ * Metrics are on by default. Starting the JVM with {@code -Dprojects.metrics=false} turns
+ * them off: nothing is registered, and since ENABLED is a constant the JIT compiler
+ * removes the measuring code altogether.
+ */
+public class Metrics {
+
+    /** Whether metrics are collected, read once from the system property "projects.metrics". */
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("projects.metrics"));
+
+    /** How often quick operations, such as lookups by ID, are timed. */
+    public static final int QUICK_SAMPLE_EVERY = 16;
+
+    private static final String DOMAIN = "projects";
+
+    private static final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private static final AtomicInteger gaugeInstances = new AtomicInteger();
+
+    /**
+     * Returns the metrics of an operation, creating and publishing them the first time.
+     *
+     * @param className the simple name of the class the operation belongs to
+     * @param operation the name of the operation, usually the method name
+     * @return the metrics of the operation
+     */
+    public static OperationStats operation(String className, String operation) {
+        return operation(className, operation, 1);
+    }
+
+    /**
+     * Returns the metrics of a very quick operation, of which only some calls are timed.
+     *
+     * @param className the simple name of the class the operation belongs to
+     * @param operation the name of the operation, usually the method name
+     * @param sampleEvery on average one call in this many is timed, must be a power of two
+     * @return the metrics of the operation
+     */
+    public static OperationStats operation(String className, String operation, int sampleEvery) {
+        return operations.computeIfAbsent(className + "." + operation, name -> {
+            OperationStats stats = new OperationStats(name, sampleEvery);
+            if (ENABLED) {
+                register(stats, DOMAIN + ":type=Operation,class=" + className + ",name=" + operation);
+            }
+            return stats;
+        });
+    }
+
+    /**
+     * Publishes a new, empty set of gauges for one object. The caller adds the gauges and
+     * closes the set when the object is no longer used.
+     *
+     * @param group what the gauges belong to, usually the simple name of the class
+     * @return the gauges, published under a name no other set has
+     */
+    public static Gauges gauges(String group) {
+        String name = DOMAIN + ":type=Gauges,group=" + group + ",instance=" + gaugeInstances.incrementAndGet();
+        Gauges gauges;
+        try {
+            gauges = new Gauges(new ObjectName(name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Not a valid gauge group: " + group, e);
+        }
+        if (ENABLED) {
+            register(gauges.bean(), name);
+        }
+        return gauges;
+    }
+
+    /**
+     * Returns the metrics of all operations that have been created.
+     *
+     * @return the operation metrics, sorted by name
+     */
+    public static Collection<OperationStats> operations() {
+        List<OperationStats> list = new ArrayList<>(operations.values());
+        list.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Takes an MBean away, if it is registered.
+     */
+    static void unregister(ObjectName name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (InstanceNotFoundException e) {
+            // taken away by another thread at the same time
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister MBean " + name, e);
+        }
+    }
+
+    private static void register(Object bean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(bean, objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean " + name, e);
+        }
+    }
+
+    private Metrics() {
+    }
+}
@@ -0,0 +1,161 @@
+package metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls of one operation and records how long they took.
+ * <p>
+ * An operation is measured like this:
+ * <pre>
+ * long start = STATS.start();
+ * try {
+ *     ...
+ * } finally {
+ *     STATS.stop(start);
+ * }
+ * </pre>
+ * The call count and total time are LongAdders, which spread updates from many threads
+ * over several cells, so measuring does not make threads wait for each other.
+ * When metrics are turned off both methods do nothing, and the JIT compiler removes them.
+ * <p>
+ * Reading the clock twice costs more than some very quick operations, such as a lookup by ID.
+ * For those only a random sample of the calls is timed; every call is still counted.
+ * The mean and the percentiles are then taken over the timed calls.
+ */
+public class OperationStats implements OperationStatsMBean {
+    /** Returned by start for a call that is counted but not timed. */
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final String name;
+    private final int sampleMask;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder timedCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    OperationStats(String name, int sampleEvery) {
+        if (Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("sampleEvery must be a power of two: " + sampleEvery);
+        }
+        this.name = name;
+        this.sampleMask = sampleEvery - 1;
+    }
+
+    /**
+     * Returns the name of the operation, for example "ProjectsManager.addProject".
+     *
+     * @return the operation name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Marks the start of a call.
+     *
+     * @return the start time, to be passed to stop
+     */
+    public long start() {
+        if (!Metrics.ENABLED) {
+            return 0L;
+        }
+        if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a call that started at the given time.
+     *
+     * @param start the value returned by start
+     */
+    public void stop(long start) {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        count.increment();
+        if (start == NOT_TIMED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        timedCount.increment();
+        totalNanos.add(nanos);
+        histogram.record(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        long timed = timedCount.sum();
+        return timed == 0 ? 0 : totalNanos.sum() / 1e6 * count.sum() / timed; // scaled up when sampled
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = timedCount.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1e3 / n;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentile(0.50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return percentile(0.90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentile(0.999) / 1e3;
+    }
+
+    /**
+     * The histogram rounds up to the top of a bucket, which can be above the largest value seen.
+     */
+    private long percentile(double fraction) {
+        return Math.min(histogram.percentile(fraction), maxNanos.get());
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        timedCount.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        histogram.reset();
+    }
+
+    /**
+     * Returns the name, count and main latencies on one line.
+     *
+     * @return a short summary of the operation
+     */
+    @Override
+    public String toString() {
+        return String.format("%s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+/**
+ * The JMX view of the metrics of one operation.
+ */
+public interface OperationStatsMBean {
+
+    long getCount();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
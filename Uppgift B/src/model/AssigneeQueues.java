@@ -0,0 +1,520 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * For each assignee, a queue of the tasks that person has taken and not done yet, over all
+ * projects of a ProjectsManager, with the task to work on next first. Used by
+ * ProjectsManager.getNextTask, getNextTasks and getWorkloads.
+ * <p>
+ * Each queue is a binary heap ordered by priority, highest first, then by description,
+ * project ID and task ID, so the order does not depend on when tasks were changed. Every
+ * task in a heap knows its place in it, so a task that is reassigned, done, removed or
+ * given another priority is moved or taken out in O(log n) without searching the heap,
+ * and the first task of a queue is read in O(1). Assignees are compared ignoring case,
+ * as TakenByMatcher does.
+ * <p>
+ * The manager keeps the queues up to date from its change callbacks, which come while
+ * the changed project is locked. Projects put in with setProjects or restoreProject are
+ * only read, under their lock, when the queues are asked for, so that loading projects
+ * does not read all their tasks. Until then changes to them are not put in the queues,
+ * since reading the project later sees them anyway.
+ * <p>
+ * A project from a snapshot whose tasks are not loaded yet may know how many open tasks
+ * each person has without reading them, see TaskLoader.getOpenTasksByAssignee. Such a
+ * project is only read when the queue of one of those people is asked for, and the sizes
+ * of the queues add its saved counts without reading it. So asking for the next task of
+ * one person after startup only loads the projects where that person has open tasks.
+ * Once a task of a pending project is changed, its saved counts are no longer trusted
+ * and it is read like a project without saved counts, by the next question of any kind.
+ * Reading a project only looks at its taken tasks that are not done, from its indexes.
+ */
+class AssigneeQueues {
+    private final Map<String, Queue> queues = new HashMap<>();
+    private final Map<Project, Map<Integer, Entry>> entries = new HashMap<>();
+    private final Set<Project> pending = new LinkedHashSet<>();
+    /** Pending projects whose saved counts have not been looked at yet. */
+    private final Set<Project> unsorted = new LinkedHashSet<>();
+    /** Pending projects without saved counts, or with counts that are no longer true. */
+    private final Set<Project> unknown = new LinkedHashSet<>();
+    /** The saved counts of the other pending projects, by name as written. */
+    private final Map<Project, Map<String, Integer>> saved = new HashMap<>();
+    /** The pending projects with saved counts, by case-folded name of the people in them. */
+    private final Map<String, Set<Project>> savedByAssignee = new HashMap<>();
+
+    /**
+     * Marks a project to be read when the queues are asked for.
+     */
+    synchronized void addProject(Project project) {
+        pending.add(project);
+        unsorted.add(project);
+    }
+
+    /**
+     * Takes all tasks of a project out of the queues.
+     */
+    synchronized void removeProject(Project project) {
+        forget(project);
+        Map<Integer, Entry> ofProject = entries.remove(project);
+        if (ofProject != null) {
+            for (Entry e : ofProject.values()) {
+                e.queue.remove(e.index);
+                dropIfEmpty(e.queue);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        queues.clear();
+        entries.clear();
+        pending.clear();
+        unsorted.clear();
+        unknown.clear();
+        saved.clear();
+        savedByAssignee.clear();
+    }
+
+    /**
+     * Puts a task in the queue of its assignee, moves it to another queue or place, or
+     * takes it out, after the task was added or changed. Called while the project is locked.
+     */
+    void update(Project project, Task task, String oldTakenBy) {
+        if (task.getTakenBy() == null && oldTakenBy == null) {
+            return; // was in no queue and is in none now
+        }
+        synchronized (this) {
+            if (pending.contains(project)) {
+                distrust(project);
+            } else {
+                put(project, task);
+            }
+        }
+    }
+
+    /**
+     * Takes a removed task out of the queues. Called while the project is locked.
+     */
+    void remove(Project project, Task task) {
+        if (task.getTakenBy() == null) {
+            return;
+        }
+        synchronized (this) {
+            if (pending.contains(project)) {
+                distrust(project);
+                return;
+            }
+            Entry e = entryOf(project, task.getId());
+            if (e != null) {
+                take(e);
+            }
+        }
+    }
+
+    /**
+     * Makes a pending project be read by the next question, since a task in it changed
+     * after its counts were saved.
+     */
+    private void distrust(Project project) {
+        if (dropSaved(project)) {
+            unknown.add(project);
+        }
+    }
+
+    /**
+     * Drops the saved counts of a pending project.
+     *
+     * @return true if the project had saved counts
+     */
+    private boolean dropSaved(Project project) {
+        Map<String, Integer> counts = saved.remove(project);
+        if (counts == null) {
+            return false;
+        }
+        for (String name : counts.keySet()) {
+            String key = CaseFolding.fold(name);
+            Set<Project> withName = savedByAssignee.get(key);
+            if (withName != null) {
+                withName.remove(project);
+                if (withName.isEmpty()) {
+                    savedByAssignee.remove(key);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes a project out of the pending projects.
+     *
+     * @return true if the project was pending
+     */
+    private boolean forget(Project project) {
+        if (!pending.remove(project)) {
+            return false;
+        }
+        unsorted.remove(project);
+        unknown.remove(project);
+        dropSaved(project);
+        return true;
+    }
+
+    private void put(Project project, Task task) {
+        Entry e = entryOf(project, task.getId());
+        String takenBy = task.getTakenBy();
+        if (takenBy == null || task.getState() == TaskState.DONE) {
+            if (e != null) {
+                take(e);
+            }
+            return;
+        }
+        if (e != null && takenBy.equalsIgnoreCase(e.queue.name)) { // same person, no need to fold
+            e.task = task;
+            if (e.prio != task.getPrio()) {
+                e.prio = task.getPrio();
+                e.queue.fix(e.index);
+            }
+            return;
+        }
+        if (e != null) {
+            take(e);
+        }
+        Queue queue = queues.computeIfAbsent(CaseFolding.fold(takenBy), k -> new Queue(k, takenBy));
+        Entry added = new Entry(project, task, queue);
+        entries.computeIfAbsent(project, p -> new HashMap<>()).put(task.getId(), added);
+        queue.add(added);
+    }
+
+    private Entry entryOf(Project project, int taskId) {
+        Map<Integer, Entry> ofProject = entries.get(project);
+        return ofProject == null ? null : ofProject.get(taskId);
+    }
+
+    private void take(Entry e) {
+        e.queue.remove(e.index);
+        dropIfEmpty(e.queue);
+        Map<Integer, Entry> ofProject = entries.get(e.project);
+        ofProject.remove(e.task.getId());
+        if (ofProject.isEmpty()) {
+            entries.remove(e.project);
+        }
+    }
+
+    private void dropIfEmpty(Queue queue) {
+        if (queue.size == 0) {
+            queues.remove(queue.key);
+        }
+    }
+
+    /**
+     * Looks at the saved counts of the projects put in since the last question, without
+     * reading their tasks. Each project is locked while this is done, before the queues,
+     * in the same order as the callbacks, so a change cannot come between the two.
+     */
+    private void sortPending() {
+        while (true) {
+            Project project;
+            synchronized (this) {
+                if (unsorted.isEmpty()) {
+                    return;
+                }
+                project = unsorted.iterator().next();
+            }
+            synchronized (project) {
+                TaskLoader loader = project.getPendingTaskLoader();
+                Map<String, Integer> counts = loader == null ? null : loader.getOpenTasksByAssignee();
+                synchronized (this) {
+                    if (unsorted.remove(project)) {
+                        if (counts == null) {
+                            unknown.add(project);
+                        } else {
+                            saved.put(project, counts);
+                            for (String name : counts.keySet()) {
+                                savedByAssignee.computeIfAbsent(CaseFolding.fold(name), k -> new HashSet<>()).add(project);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the pending projects that the queue of one person, or all queues, depend on:
+     * every project without saved counts, and those with saved counts where the person
+     * has open tasks.
+     *
+     * @param key the case-folded name of the person, or null for all people
+     * @param readSaved false to leave the projects with saved counts pending
+     * @return the projects with saved counts that were left pending
+     */
+    private List<Project> readPending(String key, boolean readSaved) {
+        sortPending();
+        List<Project> toRead;
+        List<Project> left = new ArrayList<>();
+        synchronized (this) {
+            toRead = new ArrayList<>(unknown);
+            Collection<Project> withSaved = key == null ? saved.keySet() : savedByAssignee.get(key);
+            if (withSaved != null) {
+                if (readSaved) {
+                    toRead.addAll(withSaved);
+                } else {
+                    left.addAll(withSaved);
+                }
+            }
+        }
+        for (Project project : toRead) {
+            read(project);
+        }
+        return left;
+    }
+
+    /**
+     * Puts the open taken tasks of a pending project in the queues. The project is locked
+     * while it is read, before the queues, in the same order as the callbacks.
+     */
+    private void read(Project project) {
+        synchronized (project) {
+            List<Task> tasks = project.openTakenTasks();
+            synchronized (this) {
+                if (forget(project)) {
+                    for (Task t : tasks) {
+                        put(project, t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first task in the queue of an assignee, or null if the queue is empty.
+     */
+    ProjectTask peek(String takenBy) {
+        String key = CaseFolding.fold(takenBy);
+        while (true) {
+            readPending(key, true);
+            synchronized (this) {
+                if (!unknown.isEmpty()) {
+                    continue; // a pending project was changed while the others were read
+                }
+                Queue queue = queues.get(key);
+                return queue == null ? null : queue.heap[0].toProjectTask();
+            }
+        }
+    }
+
+    /**
+     * Returns the first tasks in the queue of an assignee, in order. Only the tasks
+     * returned and the heap nodes next to them are looked at, in O(k log k).
+     */
+    List<ProjectTask> first(String takenBy, int k) {
+        String key = CaseFolding.fold(takenBy);
+        while (true) {
+            readPending(key, true);
+            synchronized (this) {
+                if (!unknown.isEmpty()) {
+                    continue; // a pending project was changed while the others were read
+                }
+                List<ProjectTask> result = new ArrayList<>();
+                Queue queue = queues.get(key);
+                if (queue == null) {
+                    return result;
+                }
+                PriorityQueue<Entry> frontier = new PriorityQueue<>(Entry::compareTo);
+                frontier.add(queue.heap[0]);
+                while (result.size() < k && !frontier.isEmpty()) {
+                    Entry e = frontier.poll();
+                    result.add(e.toProjectTask());
+                    for (int child = 2 * e.index + 1; child <= 2 * e.index + 2 && child < queue.size; child++) {
+                        frontier.add(queue.heap[child]);
+                    }
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks in the queue of an assignee. The saved counts of
+     * pending projects are added without reading them.
+     */
+    int size(String takenBy) {
+        String key = CaseFolding.fold(takenBy);
+        while (true) {
+            List<Project> left = readPending(key, false);
+            synchronized (this) {
+                if (!unknown.isEmpty()) {
+                    continue; // a pending project was changed while the others were read
+                }
+                Queue queue = queues.get(key);
+                int size = queue == null ? 0 : queue.size;
+                for (Project project : left) {
+                    Map<String, Integer> counts = saved.get(project);
+                    if (counts != null) { // null if it was read since, then its tasks are in the queue
+                        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                            if (CaseFolding.fold(e.getKey()).equals(key)) {
+                                size += e.getValue();
+                            }
+                        }
+                    }
+                }
+                return size;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks in every queue, by assignee name in alphabetical order.
+     * The saved counts of pending projects are added without reading them.
+     */
+    Map<String, Integer> sizes() {
+        while (true) {
+            List<Project> left = readPending(null, false);
+            synchronized (this) {
+                if (!unknown.isEmpty()) {
+                    continue; // a pending project was changed while the others were read
+                }
+                Map<String, Integer> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                for (Queue queue : queues.values()) {
+                    result.put(queue.name, queue.size);
+                }
+                for (Project project : left) {
+                    Map<String, Integer> counts = saved.get(project);
+                    if (counts != null) {
+                        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                            result.merge(e.getKey(), e.getValue(), Integer::sum);
+                        }
+                    }
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * A task in a queue, with the values it is ordered by and its place in the heap.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final Project project;
+        private final String description;
+        private final Queue queue;
+        private Task task;
+        private TaskPrio prio;
+        private int index;
+
+        private Entry(Project project, Task task, Queue queue) {
+            this.project = project;
+            this.task = task;
+            this.queue = queue;
+            this.description = task.getDescription();
+            this.prio = task.getPrio();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = other.prio.compareTo(prio); // highest priority first
+            if (result == 0) {
+                result = description.compareTo(other.description);
+            }
+            if (result == 0) {
+                result = Integer.compare(project.getId(), other.project.getId());
+            }
+            return result != 0 ? result : Integer.compare(task.getId(), other.task.getId());
+        }
+
+        private ProjectTask toProjectTask() {
+            return new ProjectTask(project, task);
+        }
+    }
+
+    /**
+     * The heap of one assignee, with the name as written on the first task put in it.
+     */
+    private static final class Queue {
+        private final String key;
+        private final String name;
+        private Entry[] heap = new Entry[8];
+        private int size;
+
+        private Queue(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        private void add(Entry e) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            e.index = size;
+            heap[size++] = e;
+            siftUp(e.index);
+        }
+
+        private void remove(int index) {
+            size--;
+            Entry last = heap[size];
+            heap[size] = null;
+            if (index < size) {
+                place(last, index);
+                fix(index);
+            }
+        }
+
+        /**
+         * Moves the entry at an index up or down to its place after its priority changed.
+         */
+        private void fix(int index) {
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+        }
+
+        private boolean siftUp(int index) {
+            Entry e = heap[index];
+            int start = index;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent].compareTo(e) <= 0) {
+                    break;
+                }
+                place(heap[parent], index);
+                index = parent;
+            }
+            place(e, index);
+            return index != start;
+        }
+
+        private void siftDown(int index) {
+            Entry e = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].compareTo(heap[child]) < 0) {
+                    child++;
+                }
+                if (e.compareTo(heap[child]) <= 0) {
+                    break;
+                }
+                place(heap[child], index);
+                index = child;
+            }
+            place(e, index);
+        }
+
+        private void place(Entry e, int index) {
+            heap[index] = e;
+            e.index = index;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package model;
+
+/**
+ * Folds uppercase and lowercase letters together, for indexes that must
+ * ignore case the same way String.equalsIgnoreCase does.
+ */
+final class CaseFolding {
+
+    /**
+     * Folds the case of a string so that two strings are equal ignoring case
+     * exactly when their folded forms are equal.
+     *
+     * @param s the string to fold
+     * @return the folded string
+     */
+    static String fold(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private CaseFolding() {
+    }
+}
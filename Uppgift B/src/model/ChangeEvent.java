@@ -0,0 +1,145 @@
+package model;
+
+import java.util.Objects;
+
+/**
+ * One change to the project model, delivered to a ChangeListener by a ChangeEventBus.
+ * <p>
+ * The event holds the values from the moment of the change, not the Task object, so it
+ * stays correct when the task is changed again before the event is delivered. For the
+ * three kinds of task changes it holds the value before and after the change:
+ * a TaskState for STATE_CHANGED, a TaskPrio for PRIO_CHANGED and the assignee String
+ * (null for nobody) for TAKEN_BY_CHANGED. The other kinds have no values.
+ */
+public final class ChangeEvent {
+
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        /** A project was added to the manager. */
+        PROJECT_ADDED,
+        /** A project was removed from the manager. */
+        PROJECT_REMOVED,
+        /** A task was added to a project. */
+        TASK_ADDED,
+        /** A task was removed from a project. */
+        TASK_REMOVED,
+        /** The state of a task changed. */
+        STATE_CHANGED,
+        /** The priority of a task changed. */
+        PRIO_CHANGED,
+        /** The assignee of a task changed. */
+        TAKEN_BY_CHANGED,
+        /**
+         * Changes were lost because the buffer of the ChangeEventBus was full. A listener that
+         * keeps its own copy of the model has to read it again. The event has no project.
+         */
+        OVERFLOW
+    }
+
+    static final ChangeEvent OVERFLOW = new ChangeEvent(Type.OVERFLOW, null, 0, null, null);
+
+    private final Type type;
+    private final Project project;
+    private final int taskId;
+    private final Object oldValue;
+    private final Object newValue;
+
+    ChangeEvent(Type type, Project project, int taskId, Object oldValue, Object newValue) {
+        this.type = type;
+        this.project = project;
+        this.taskId = taskId;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the project that was changed, or that the changed task belongs to.
+     *
+     * @return the project, or null for OVERFLOW
+     */
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * Returns the ID of the task that was added, removed or changed.
+     *
+     * @return the task ID, or 0 if the event is not about a task
+     */
+    public int getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Returns the value before a task change, see the class description for its type.
+     *
+     * @return the old value, or null
+     */
+    public Object getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * Returns the value after a task change, see the class description for its type.
+     *
+     * @return the new value, or null
+     */
+    public Object getNewValue() {
+        return newValue;
+    }
+
+    /**
+     * Tells whether this event is a change to the state, priority or assignee of a task.
+     *
+     * @return true for STATE_CHANGED, PRIO_CHANGED and TAKEN_BY_CHANGED
+     */
+    public boolean isTaskChange() {
+        return type == Type.STATE_CHANGED || type == Type.PRIO_CHANGED || type == Type.TAKEN_BY_CHANGED;
+    }
+
+    /**
+     * Returns one event for this task change followed by a later change of the same value,
+     * going from the old value of this event to the new value of the later one.
+     */
+    ChangeEvent followedBy(ChangeEvent later) {
+        return new ChangeEvent(type, project, taskId, oldValue, later.newValue);
+    }
+
+    /**
+     * Tells whether this is a task change that ends on the value it started from.
+     */
+    boolean changesNothing() {
+        return isTaskChange() && Objects.equals(oldValue, newValue);
+    }
+
+    /**
+     * Returns a text version of the event.
+     *
+     * @return the type, project ID, task ID and values that apply
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type.name());
+        if (project != null) {
+            sb.append(" project ").append(project.getId());
+        }
+        if (taskId != 0) {
+            sb.append(" task ").append(taskId);
+        }
+        if (isTaskChange()) {
+            sb.append(": ").append(oldValue).append(" -> ").append(newValue);
+        }
+        return sb.toString();
+    }
+}
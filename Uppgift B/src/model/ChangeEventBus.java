@@ -0,0 +1,317 @@
+package model;
+
+import metrics.Gauges;
+import metrics.Metrics;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the changes made to the projects of a manager to ChangeListeners on a thread of its own.
+ * <p>
+ * A thread that changes the model only puts an event into a ring buffer of fixed size. A slot
+ * is claimed with one compare-and-set on a counter, so no thread ever waits for a lock here.
+ * The delivery thread takes the events out in batches and calls every listener once per batch.
+ * Before that, changes of the same value of the same task in a batch are merged into one event
+ * from the first old value to the last new value, and dropped if they end where they started.
+ * <p>
+ * The buffer never makes a changing thread wait. If it is full, because the listeners are slower
+ * than the changes, the event is dropped and counted, and the listeners get an OVERFLOW event
+ * so they know to read the model again. The number of waiting and dropped events are published
+ * as the metrics ChangeEventsQueued and ChangeEventsDropped.
+ * <p>
+ * Like ModelListener, the events cover changes made through the manager, its projects and their
+ * tasks, but not projects and tasks put back with setProjects, restoreProject or restoreTask.
+ */
+public class ChangeEventBus implements Closeable {
+
+    /** Default number of events the buffer can hold. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Default largest number of events handed to the listeners in one call. */
+    public static final int DEFAULT_MAX_BATCH = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ProjectsManager manager;
+    private final AtomicReferenceArray<ChangeEvent> slots;
+    private final int mask;
+    private final int maxBatch;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final AtomicLong dropped = new AtomicLong();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object deliveredLock = new Object();
+    private volatile long delivered;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+    private final Thread thread;
+    private Gauges gauges;
+
+    private ChangeEventBus(ProjectsManager manager, int capacity, int maxBatch) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.manager = manager;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::deliverLoop, "projects-change-events");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts delivering the changes to the projects of the manager, with the default sizes.
+     *
+     * @param manager the manager whose changes to deliver
+     * @return the started bus, with no listeners yet
+     * @throws IllegalStateException if the manager already has a bus
+     */
+    public static ChangeEventBus start(ProjectsManager manager) {
+        return start(manager, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Starts delivering the changes to the projects of the manager.
+     *
+     * @param manager the manager whose changes to deliver
+     * @param capacity the number of events the buffer can hold, a power of two
+     * @param maxBatch the largest number of events handed to the listeners in one call
+     * @return the started bus, with no listeners yet
+     * @throws IllegalArgumentException if capacity is not a power of two or maxBatch is not positive
+     * @throws IllegalStateException if the manager already has a bus
+     */
+    public static ChangeEventBus start(ProjectsManager manager, int capacity, int maxBatch) {
+        ChangeEventBus bus = new ChangeEventBus(manager, capacity, maxBatch);
+        manager.setChangeEventBus(bus);
+        bus.gauges = Metrics.gauges("ChangeEventBus")
+                .add("ChangeEventsQueued", bus::getQueuedCount)
+                .add("ChangeEventsDropped", bus::getDroppedCount);
+        bus.thread.start();
+        return bus;
+    }
+
+    /**
+     * Registers a listener for the changes made from now on.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addListener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Puts an event into the buffer. Called by the manager on the thread that made the change.
+     *
+     * @return true if the event was put in, false if the buffer was full and it was dropped
+     */
+    boolean publish(ChangeEvent event) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head >= slots.length()) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        slots.set((int) seq & mask, event);
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    private void deliverLoop() {
+        List<ChangeEvent> batch = new ArrayList<>(maxBatch + 1);
+        long seenDropped = 0;
+        while (true) {
+            long h = head;
+            while (batch.size() < maxBatch) {
+                int slot = (int) h & mask;
+                ChangeEvent event = slots.get(slot);
+                if (event == null) {
+                    break; // nothing more, or the slot is claimed but not filled in yet
+                }
+                slots.set(slot, null);
+                batch.add(event);
+                h++;
+            }
+            head = h; // frees the slots before the listeners run
+            long d = dropped.get();
+            if (d != seenDropped) {
+                seenDropped = d;
+                batch.add(ChangeEvent.OVERFLOW);
+            }
+            if (!batch.isEmpty()) {
+                deliver(coalesce(batch));
+                batch.clear();
+                synchronized (deliveredLock) {
+                    delivered = h;
+                    deliveredLock.notifyAll();
+                }
+                continue;
+            }
+            if (closed && tail.get() == h) {
+                return;
+            }
+            sleeping = true;
+            if (slots.get((int) h & mask) == null && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private void deliver(List<ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<ChangeEvent> readOnly = Collections.unmodifiableList(events);
+        for (ChangeListener l : listeners) {
+            try {
+                l.changed(readOnly);
+            } catch (RuntimeException e) {
+                failure = e; // see getFailure, the other listeners still get the events
+            }
+        }
+    }
+
+    /**
+     * Merges the changes of the same value of the same task into the place of the first one.
+     * Adding or removing a task or project ends the merging, so no change is moved past it.
+     */
+    static List<ChangeEvent> coalesce(List<ChangeEvent> batch) {
+        List<ChangeEvent> result = new ArrayList<>(batch.size());
+        Map<ChangeKey, Integer> firstChange = new HashMap<>();
+        for (ChangeEvent e : batch) {
+            if (e.isTaskChange()) {
+                ChangeKey key = new ChangeKey(e);
+                Integer at = firstChange.get(key);
+                if (at != null) {
+                    result.set(at, result.get(at).followedBy(e));
+                    continue;
+                }
+                firstChange.put(key, result.size());
+            } else if (!firstChange.isEmpty()) {
+                firstChange.clear();
+            }
+            result.add(e);
+        }
+        result.removeIf(ChangeEvent::changesNothing);
+        return result;
+    }
+
+    /**
+     * Waits until the listeners have been given every event published before this call.
+     *
+     * @param timeoutMillis the longest time to wait
+     * @return true if all those events were delivered, false if the time ran out
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (deliveredLock) {
+            while (delivered < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                LockSupport.unpark(thread);
+                TimeUnit.NANOSECONDS.timedWait(deliveredLock, left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events waiting in the buffer.
+     *
+     * @return the number of events not yet taken by the delivery thread
+     */
+    public long getQueuedCount() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     *
+     * @return the number of dropped events since the bus was started
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the last exception thrown by a listener, or null.
+     *
+     * @return the exception, or null if no listener has failed
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops taking new events, delivers the events already in the buffer and stops the
+     * delivery thread. Also takes the gauges of the bus away.
+     */
+    @Override
+    public void close() {
+        manager.clearChangeEventBus(this);
+        gauges.close();
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Identifies one value of one task, for merging changes to it.
+     */
+    private static final class ChangeKey {
+        private final Project project;
+        private final int taskId;
+        private final ChangeEvent.Type type;
+
+        ChangeKey(ChangeEvent event) {
+            this.project = event.getProject();
+            this.taskId = event.getTaskId();
+            this.type = event.getType();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ChangeKey k && k.project == project && k.taskId == taskId && k.type == type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(project) * 31 + taskId) * 31 + type.ordinal();
+        }
+    }
+}
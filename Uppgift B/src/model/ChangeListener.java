@@ -0,0 +1,23 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Receives the changes to the project model in batches, on the thread of a ChangeEventBus.
+ * <p>
+ * Unlike a ModelListener, it is not called on the thread that changed the model, so it
+ * may take its time without slowing the change down. By the time it is called the model
+ * may have changed further; each event holds the values from the moment it happened.
+ */
+public interface ChangeListener {
+
+    /**
+     * Called with the next batch of changes, in the order they were made.
+     * <p>
+     * Several changes of the same value of a task in one batch arrive as one event,
+     * see ChangeEventBus.
+     *
+     * @param events the changes, a read-only list that is never empty
+     */
+    void changed(List<ChangeEvent> events);
+}
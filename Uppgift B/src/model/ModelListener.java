@@ -0,0 +1,84 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Receives a callback every time the project model is changed.
+ * <p>
+ * Listeners are registered on a ProjectsManager and are told about
+ * projects that are added or removed, tasks that are added or removed,
+ * and tasks whose state, priority or assignee is changed.
+ * The callbacks are made on the thread that changed the model.
+ * <p>
+ * Changes made in one step to many tasks of a project, with Project.addTasks or
+ * Project.updateWhere, are reported with one call of tasksAdded or tasksUpdated.
+ * By default these call taskAdded or taskUpdated for each task; a listener that can
+ * handle the whole batch at once, for example with one write, overrides them.
+ * <p>
+ * A listener that does slow work, or needs the values from before a change,
+ * should be a ChangeListener on a ChangeEventBus instead.
+ */
+public interface ModelListener {
+
+    /**
+     * Called after a project has been added to the manager.
+     *
+     * @param project the project that was added
+     */
+    void projectAdded(Project project);
+
+    /**
+     * Called after a project has been removed from the manager.
+     *
+     * @param project the project that was removed
+     */
+    void projectRemoved(Project project);
+
+    /**
+     * Called after a task has been added to a project.
+     *
+     * @param project the project the task belongs to
+     * @param task the task that was added
+     */
+    void taskAdded(Project project, Task task);
+
+    /**
+     * Called after a task has been removed from a project.
+     *
+     * @param project the project the task belonged to
+     * @param task the task that was removed
+     */
+    void taskRemoved(Project project, Task task);
+
+    /**
+     * Called after the state, priority or assignee of a task has changed.
+     *
+     * @param project the project the task belongs to
+     * @param task the task that was changed
+     */
+    void taskUpdated(Project project, Task task);
+
+    /**
+     * Called after several tasks have been added to a project in one step.
+     *
+     * @param project the project the tasks belong to
+     * @param tasks the tasks that were added, in the order they were added
+     */
+    default void tasksAdded(Project project, List<Task> tasks) {
+        for (Task task : tasks) {
+            taskAdded(project, task);
+        }
+    }
+
+    /**
+     * Called after several tasks of a project have been changed in one step.
+     *
+     * @param project the project the tasks belong to
+     * @param tasks the tasks that were changed
+     */
+    default void tasksUpdated(Project project, List<Task> tasks) {
+        for (Task task : tasks) {
+            taskUpdated(project, task);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshots of all projects of a manager, see ProjectsManager.snapshot.
+ * <p>
+ * Each project in it is read at one moment and is complete and consistent on its own,
+ * but the projects are not all read at the same moment: a change to one project made
+ * while the snapshot is taken may be in it while an earlier change to another is not.
+ * Project searches with ProjectsManager.findTasks have always worked the same way.
+ */
+public final class ModelSnapshot {
+
+    private final List<ProjectSnapshot> projects;
+    private volatile Map<Integer, ProjectSnapshot> byId;
+
+    ModelSnapshot(List<ProjectSnapshot> projects) {
+        this.projects = Collections.unmodifiableList(projects);
+    }
+
+    /**
+     * Returns the project snapshots, in the order of ProjectsManager.getProjects.
+     *
+     * @return a list that cannot be changed
+     */
+    public List<ProjectSnapshot> getProjects() {
+        return projects;
+    }
+
+    /**
+     * Finds a project snapshot by project ID.
+     *
+     * @param id the ID of the project
+     * @return the snapshot of the project, or null if the manager had no such project
+     */
+    public ProjectSnapshot getProjectById(int id) {
+        Map<Integer, ProjectSnapshot> map = byId;
+        if (map == null) {
+            map = new HashMap<>();
+            for (ProjectSnapshot p : projects) {
+                map.put(p.getId(), p);
+            }
+            byId = map; // two threads may both build it, with the same result
+        }
+        return map.get(id);
+    }
+
+    /**
+     * Returns the number of tasks in all projects.
+     *
+     * @return the total number of tasks in the snapshot
+     */
+    public int getTaskCount() {
+        int count = 0;
+        for (ProjectSnapshot p : projects) {
+            count += p.getTaskCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+/**
+ * The values of a task that is about to be added with Project.addTasks.
+ * <p>
+ * The project gives the task its ID and sets the date it was last updated.
+ */
+public class NewTask {
+    private final String description;
+    private final TaskPrio prio;
+    private final TaskState state;
+    private final String takenBy;
+
+    /**
+     * Creates the values of a new task in the TO_DO state that nobody has taken.
+     *
+     * @param descr a short description of what the task is about
+     * @param prio the priority level of the task
+     */
+    public NewTask(String descr, TaskPrio prio) {
+        this(descr, prio, TaskState.TO_DO, null);
+    }
+
+    /**
+     * Creates the values of a new task.
+     *
+     * @param descr a short description of what the task is about
+     * @param prio the priority level of the task
+     * @param state the state the task starts in
+     * @param takenBy the person responsible for the task, or null if none
+     */
+    public NewTask(String descr, TaskPrio prio, TaskState state, String takenBy) {
+        this.description = descr;
+        this.prio = prio;
+        this.state = state;
+        this.takenBy = takenBy;
+    }
+
+    /**
+     * Returns the text description of the new task.
+     *
+     * @return the task description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the priority level of the new task.
+     *
+     * @return the task priority
+     */
+    public TaskPrio getPrio() {
+        return prio;
+    }
+
+    /**
+     * Returns the state of the new task.
+     *
+     * @return the state the task starts in
+     */
+    public TaskState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the person responsible of the new task.
+     *
+     * @return the person responsible for the task, or null if none
+     */
+    public String getTakenBy() {
+        return takenBy;
+    }
+}
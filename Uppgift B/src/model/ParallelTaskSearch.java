@@ -0,0 +1,60 @@
+package model;
+
+import model.matcher.ITaskMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches the tasks of many projects on a fork/join pool.
+ * <p>
+ * The array of projects is split in halves until a part holds at most
+ * SEQUENTIAL_CUTOFF projects, which is then searched on one thread. The results of
+ * the two halves are joined left before right, so the order is always the order
+ * of the projects, and within a project the order of its tasks.
+ */
+class ParallelTaskSearch extends RecursiveTask<List<ProjectTask>> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Parts with at most this many projects are searched without splitting further. */
+    static final int SEQUENTIAL_CUTOFF = 32;
+
+    // a search is only run on a pool, never serialized
+    private final transient Project[] projects;
+    private final transient int from;
+    private final transient int to;
+    private final transient ITaskMatcher matcher;
+
+    ParallelTaskSearch(Project[] projects, int from, int to, ITaskMatcher matcher) {
+        this.projects = projects;
+        this.from = from;
+        this.to = to;
+        this.matcher = matcher;
+    }
+
+    @Override
+    protected List<ProjectTask> compute() {
+        if (to - from <= SEQUENTIAL_CUTOFF) {
+            return searchSequentially(projects, from, to, matcher);
+        }
+        int middle = (from + to) >>> 1;
+        ParallelTaskSearch left = new ParallelTaskSearch(projects, from, middle, matcher);
+        left.fork();
+        List<ProjectTask> right = new ParallelTaskSearch(projects, middle, to, matcher).compute();
+        List<ProjectTask> result = left.join();
+        result.addAll(right);
+        return result;
+    }
+
+    static List<ProjectTask> searchSequentially(Project[] projects, int from, int to, ITaskMatcher matcher) {
+        List<ProjectTask> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            for (Task t : projects[i].findTasksReadOnly(matcher)) {
+                result.add(new ProjectTask(projects[i], t));
+            }
+        }
+        return result;
+    }
+}
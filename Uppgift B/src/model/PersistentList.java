@@ -0,0 +1,259 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A list that is never changed. Changing methods return a new list that shares most of
+ * its memory with the old one, so keeping many versions of a long list is cheap.
+ * <p>
+ * The elements are kept in a tree where every node has up to 32 children, with the last
+ * (at most 32) elements in a separate tail. Reading an element follows at most four nodes
+ * for a million elements. Adding at the end usually copies only the tail; replacing an
+ * element copies the nodes on the path to it, about 150 bytes for each level of the tree.
+ * Removing an element copies the elements after it and builds the tree again, which takes
+ * time in proportion to the size of the list, as removing from an ArrayList does.
+ * <p>
+ * Because no list is ever changed, any number of threads can read one without locks.
+ *
+ * @param <E> the type of the elements
+ */
+final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] NO_ELEMENTS = new Object[0];
+
+    private static final PersistentList<Object> EMPTY = new PersistentList<>(0, BITS, NO_ELEMENTS, NO_ELEMENTS);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentList(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the empty list.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    /**
+     * Returns a list with the elements of another list, building the tree bottom up.
+     */
+    static <E> PersistentList<E> of(List<? extends E> items) {
+        int n = items.size();
+        if (n == 0) {
+            return empty();
+        }
+        int tailStart = tailOffset(n);
+        Object[][] leaves = new Object[tailStart >>> BITS][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = items.subList(i << BITS, (i + 1) << BITS).toArray();
+        }
+        return fromLeaves(n, leaves, items.subList(tailStart, n).toArray());
+    }
+
+    /**
+     * Builds the tree over full leaves, adding levels until the top fits in one node.
+     */
+    private static <E> PersistentList<E> fromLeaves(int size, Object[][] leaves, Object[] tail) {
+        Object[][] nodes = leaves;
+        int shift = BITS;
+        while (nodes.length > WIDTH) {
+            Object[][] parents = new Object[(nodes.length + MASK) >>> BITS][];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = Arrays.copyOfRange(nodes, i << BITS, Math.min(nodes.length, (i + 1) << BITS), Object[].class);
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        Object[] root = nodes.length == 0 ? NO_ELEMENTS : Arrays.copyOf(nodes, nodes.length, Object[].class);
+        return new PersistentList<>(size, shift, root, tail);
+    }
+
+    private static int tailOffset(int size) {
+        return size == 0 ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * Returns the leaf array that holds the element at an index.
+     */
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset(size)) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a list with the element added at the end.
+     */
+    PersistentList<E> plus(E element) {
+        if (size - tailOffset(size) < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentList<>(size + 1, shift, root, newTail);
+        }
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[]{root, newPath(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentList<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int child = ((size - 1) >>> level) & MASK;
+        Object[] copy = Arrays.copyOf(parent, Math.max(parent.length, child + 1));
+        if (level == BITS) {
+            copy[child] = tailNode;
+        } else if (child < parent.length) {
+            copy[child] = pushTail(level - BITS, (Object[]) parent[child], tailNode);
+        } else {
+            copy[child] = newPath(level - BITS, tailNode);
+        }
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        return level == 0 ? node : new Object[]{newPath(level - BITS, node)};
+    }
+
+    /**
+     * Returns a list with the element at an index replaced.
+     */
+    PersistentList<E> with(int index, E element) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index >= tailOffset(size)) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentList<>(size, shift, root, newTail);
+        }
+        return new PersistentList<>(size, shift, replace(shift, root, index, element), tail);
+    }
+
+    private static Object[] replace(int level, Object[] node, int index, Object element) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = element;
+        } else {
+            int child = (index >>> level) & MASK;
+            copy[child] = replace(level - BITS, (Object[]) node[child], index, element);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a list without the element at an index. The leaves before the one that held
+     * the element are shared, the elements after it are copied and the tree is built again.
+     */
+    PersistentList<E> without(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int tailStart = tailOffset(size);
+        if (index >= tailStart && tail.length > 1) {
+            Object[] newTail = new Object[tail.length - 1];
+            int at = index - tailStart;
+            System.arraycopy(tail, 0, newTail, 0, at);
+            System.arraycopy(tail, at + 1, newTail, at, newTail.length - at);
+            return new PersistentList<>(size - 1, shift, root, newTail);
+        }
+        if (size == 1) {
+            return empty();
+        }
+        int newSize = size - 1;
+        int newTailStart = tailOffset(newSize);
+        Object[][] leaves = new Object[newTailStart >>> BITS][];
+        int kept = Math.min(index >>> BITS, leaves.length); // leaves before the element, shared as they are
+        for (int i = 0; i < kept; i++) {
+            leaves[i] = leafFor(i << BITS);
+        }
+        Object[] rest = new Object[newSize - (kept << BITS)];
+        for (int i = kept << BITS, j = 0; i < size; i++) {
+            if (i != index) {
+                rest[j++] = leafFor(i)[i & MASK];
+            }
+        }
+        for (int i = kept; i < leaves.length; i++) {
+            leaves[i] = Arrays.copyOfRange(rest, (i - kept) << BITS, (i - kept + 1) << BITS);
+        }
+        Object[] newTail = Arrays.copyOfRange(rest, newTailStart - (kept << BITS), rest.length);
+        return fromLeaves(newSize, leaves, newTail);
+    }
+
+    /**
+     * Goes through the elements one leaf at a time, without walking the tree for each one.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private Object[] leaf = size == 0 ? NO_ELEMENTS : leafFor(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (next > 0 && (next & MASK) == 0) {
+                    leaf = leafFor(next);
+                }
+                return (E) leaf[next++ & MASK];
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] result = new Object[size];
+        for (int i = 0; i < size; i += WIDTH) {
+            Object[] leaf = leafFor(i);
+            System.arraycopy(leaf, 0, result, i, Math.min(WIDTH, size - i));
+        }
+        return result;
+    }
+}
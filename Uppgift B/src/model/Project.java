@@ -1,27 +1,88 @@
 package model;
 
+import metrics.Metrics;
+import metrics.OperationStats;
 import model.matcher.ITaskMatcher;
+import model.matcher.TaskQuery;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Represents a project that contains tasks.
  * <p>
  * Each project has a title, description, creation date, and a list of tasks.
  * It also keeps track of its own ID and can be compared to other projects by title.
+ * <p>
+ * A project is safe to use from several threads. Each project locks on itself,
+ * so threads that change tasks in different projects never wait for each other.
+ * Task setters take the lock of the project the task belongs to.
+ * <p>
+ * The main operations are counted and timed, see Metrics. The time is measured
+ * once the project lock is held, so it does not include waiting for other threads.
+ * <p>
+ * The tasks are kept either as a list of Task objects or, to save memory when there
+ * are very many tasks, column by column in TaskColumns. Column storage is used for every
+ * project when the system property {@code projects.taskStorage} is {@code columns}, or for
+ * one project after useColumnStorage. Both behave the same from the outside, but in column
+ * storage every Task handed out is a small view made on the spot, so calling getTasks often
+ * on large projects costs more while holding the tasks and scanning them costs less.
  *
  * @author Naher Islam & Vanessa Rådström
  * @version 1.0
  */
 public class Project implements Comparable<Project>, Serializable {
+    private static final long serialVersionUID = -7446796492693586149L;
+
+    private static final OperationStats LOAD_TASKS_STATS = Metrics.operation("Project", "loadTasks");
+    private static final OperationStats ADD_TASK_STATS = Metrics.operation("Project", "addTask");
+    private static final OperationStats ADD_TASKS_STATS = Metrics.operation("Project", "addTasks");
+    private static final OperationStats UPDATE_WHERE_STATS = Metrics.operation("Project", "updateWhere");
+    private static final OperationStats RESTORE_TASK_STATS = Metrics.operation("Project", "restoreTask");
+    private static final OperationStats REMOVE_TASK_STATS = Metrics.operation("Project", "removeTask");
+    private static final OperationStats GET_TASKS_STATS = Metrics.operation("Project", "getTasks");
+    private static final OperationStats GET_TASK_BY_ID_STATS = Metrics.operation("Project", "getTaskById", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats FIND_TASKS_STATS = Metrics.operation("Project", "findTasks");
+    private static final OperationStats FIND_TASKS_PAGE_STATS = Metrics.operation("Project", "findTasksPage");
+    private static final OperationStats TOP_TASKS_STATS = Metrics.operation("Project", "topTasks");
+    private static final OperationStats GET_STATE_STATS = Metrics.operation("Project", "getState", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats GET_LAST_UPDATED_STATS = Metrics.operation("Project", "getLastUpdated", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats UPDATED_BETWEEN_STATS = Metrics.operation("Project", "findTasksUpdatedBetween");
+    private static final OperationStats RECENTLY_UPDATED_STATS = Metrics.operation("Project", "recentlyUpdated");
+
+    private static final boolean COLUMN_STORAGE =
+            "columns".equalsIgnoreCase(System.getProperty("projects.taskStorage"));
+
     private final String title;
     private final int id;
     private String description;
     private final LocalDate created;
     private int nextTaskId;
-    private final List<Task> tasks;
+    @SuppressWarnings("serial") // always an ArrayList or a TaskColumns, both serializable
+    private List<Task> tasks;
+    private transient volatile ProjectsManager manager;
+    private transient TaskLoader taskLoader;
+    private transient TaskIndex index;
+    private transient TaskStats stats;
+    private transient TaskDateIndex dates;
+    private transient boolean idsAscending;
+    private transient long changeCount;
+    private transient PersistentList<Task> frozenTasks;
+    private transient boolean frozenAscending;
+    private transient volatile ProjectSnapshot snapshot;
 
     /**
      * Creates a new project with a title, descr, and unique ID.
@@ -39,7 +100,250 @@ public class Project implements Comparable<Project>, Serializable {
         this.id = id;
         this.created = LocalDate.now();
         this.nextTaskId = 1;
-        this.tasks = new ArrayList<>();
+        this.tasks = new ArrayList<>(); // see moveToConfiguredStorage
+        this.index = new TaskIndex();
+        this.stats = new TaskStats();
+        this.dates = new TaskDateIndex();
+        this.idsAscending = true;
+    }
+
+    /**
+     * Creates a project with a given creation date.
+     * <p>
+     * This is used when projects are restored from saved data,
+     * where the creation date must be kept as it was.
+     *
+     * @param title the name of the project
+     * @param descr a short descr of what the project is about
+     * @param id the unique ID for this project
+     * @param created the date when the project was created
+     */
+    public Project(String title, String descr, int id, LocalDate created) {
+        this.title = title;
+        this.description = descr;
+        this.id = id;
+        this.created = created;
+        this.nextTaskId = 1;
+        this.tasks = new ArrayList<>(); // see moveToConfiguredStorage
+        this.index = new TaskIndex();
+        this.stats = new TaskStats();
+        this.dates = new TaskDateIndex();
+        this.idsAscending = true;
+    }
+
+    /**
+     * Creates a restored project whose tasks are loaded the first time they are used.
+     * <p>
+     * Until then the project only holds its own details, which keeps startup fast
+     * and memory use low when there are many tasks.
+     *
+     * @param title the name of the project
+     * @param descr a short descr of what the project is about
+     * @param id the unique ID for this project
+     * @param created the date when the project was created
+     * @param nextTaskId the ID that the next added task should get
+     * @param taskLoader reads the tasks of the project when they are first needed
+     */
+    public Project(String title, String descr, int id, LocalDate created, int nextTaskId, TaskLoader taskLoader) {
+        this(title, descr, id, created);
+        this.nextTaskId = nextTaskId;
+        this.taskLoader = taskLoader;
+    }
+
+    /**
+     * Reads the tasks from the task loader, if they have not been read yet.
+     */
+    private void loadTasks() {
+        if (taskLoader != null) {
+            long start = LOAD_TASKS_STATS.start();
+            TaskLoader loader = taskLoader;
+            taskLoader = null;
+            ensureCapacity(loader.getTaskCount());
+            for (Task t : loader.loadTasks()) {
+                append(t);
+            }
+            LOAD_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Adds a task at the end of the task list and to the index and running counts.
+     */
+    private void append(Task task) {
+        moveToConfiguredStorage();
+        task.setOwner(this);
+        task.setPosition(tasks.size());
+        if (idsAscending && !(tasks instanceof TaskColumns) && !tasks.isEmpty()
+                && task.getId() <= tasks.get(tasks.size() - 1).getId()) {
+            idsAscending = false;
+        }
+        tasks.add(task);
+        index.add(task);
+        stats.add(task);
+        dates.add(task);
+        if (frozenTasks != null) {
+            frozenAscending = frozenAscending
+                    && (frozenTasks.isEmpty() || frozenTasks.get(frozenTasks.size() - 1).getId() < task.getId());
+            frozenTasks = frozenTasks.plus(task.frozenCopy());
+        }
+    }
+
+    /**
+     * Counts a change and, if snapshots are in use, publishes a new one.
+     * Called under the project lock after the tasks and all indexes have been changed.
+     */
+    private void changed() {
+        changeCount++;
+        if (frozenTasks != null) {
+            snapshot = new ProjectSnapshot(this, frozenTasks, frozenAscending, changeCount,
+                    stats.count(TaskState.DONE), dates.latestDay());
+        }
+    }
+
+    /**
+     * Puts a new copy of a changed task into the next snapshot, if snapshots are in use.
+     */
+    private void freeze(int position, Task task) {
+        if (frozenTasks != null) {
+            frozenTasks = frozenTasks.with(position, task.frozenCopy());
+        }
+    }
+
+    /**
+     * With the system property projects.taskStorage set to columns, moves the tasks into
+     * column storage before the first one is added. This is done here and not in the
+     * constructors, which must not hand out the project before it is fully made.
+     */
+    private void moveToConfiguredStorage() {
+        if (COLUMN_STORAGE && !(tasks instanceof TaskColumns)) {
+            useColumnStorage();
+        }
+    }
+
+    /**
+     * Makes room for at least the given number of tasks, so the task list grows only once.
+     */
+    private void ensureCapacity(int capacity) {
+        moveToConfiguredStorage();
+        if (tasks instanceof TaskColumns columns) {
+            columns.ensureCapacity(capacity);
+        } else {
+            ((ArrayList<Task>) tasks).ensureCapacity(capacity);
+        }
+    }
+
+    /**
+     * Returns the position of the task with the given ID, or -1 if there is none.
+     * <p>
+     * Tasks are normally in ID order, and then the position is found by binary search.
+     */
+    private int positionOf(int taskId) {
+        if (tasks instanceof TaskColumns columns) {
+            return columns.rowOf(taskId, -1);
+        }
+        if (idsAscending) {
+            return positionOf(taskId, 0, tasks.size() - 1);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).getId() == taskId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the position of a task ID by binary search between two positions, both included,
+     * when the task list is in ID order. Returns -1 if the ID is not there.
+     */
+    private int positionOf(int taskId, int low, int high) {
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = tasks.get(mid).getId();
+            if (midId < taskId) {
+                low = mid + 1;
+            } else if (midId > taskId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the tasks with the given IDs, in task order.
+     * <p>
+     * When the task list is in ID order, the IDs are sorted and each one is searched for
+     * after the position of the one before. A task is at most as many positions further on
+     * as its ID is higher, and exactly that many when no task between them was removed,
+     * so that position is tried first.
+     */
+    private List<Task> tasksWithIds(int[] ids) {
+        int[] positions = new int[ids.length];
+        int n = 0;
+        if (idsAscending && !(tasks instanceof TaskColumns)) {
+            Arrays.sort(ids);
+            int lastPos = -1;
+            int lastId = tasks.isEmpty() ? 0 : tasks.get(0).getId() - 1;
+            for (int id : ids) {
+                int high = (int) Math.min((long) lastPos + id - lastId, tasks.size() - 1);
+                int pos = high > lastPos && tasks.get(high).getId() == id ? high : positionOf(id, lastPos + 1, high);
+                if (pos >= 0) {
+                    positions[n++] = pos;
+                    lastPos = pos;
+                    lastId = id;
+                }
+            }
+        } else {
+            for (int id : ids) {
+                int pos = positionOf(id);
+                if (pos >= 0) {
+                    positions[n++] = pos;
+                }
+            }
+            Arrays.sort(positions, 0, n);
+        }
+        List<Task> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(tasks.get(positions[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tasks with the given IDs, in the order of the IDs.
+     */
+    private List<Task> tasksInIdOrder(int[] ids) {
+        List<Task> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            int pos = positionOf(id);
+            if (pos >= 0) {
+                result.add(tasks.get(pos));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells the manager, if any, that a task of this project was last updated on a day.
+     */
+    private void reportUpdatedOn(int day) {
+        ProjectsManager m = manager;
+        if (m != null) {
+            m.updatedOn(this, day);
+        }
+    }
+
+    /**
+     * Returns the task loader if the tasks of this project have not been loaded yet.
+     * <p>
+     * This lets a project that was never used be saved again without loading its tasks.
+     *
+     * @return the task loader, or null if the tasks are already in memory
+     */
+    public synchronized TaskLoader getPendingTaskLoader() {
+        return taskLoader;
     }
 
     /**
@@ -48,12 +352,99 @@ public class Project implements Comparable<Project>, Serializable {
      * @param descr the descr of the task
      * @param prio the priority level of the task
      * @return the new task that was created
+     * @throws IllegalStateException if the manager refuses changes, see ProjectsManager.refuseChanges
+     */
+    public synchronized Task addTask(String descr, TaskPrio prio) {
+        long start = ADD_TASK_STATS.start();
+        try {
+            checkWritable();
+            loadTasks();
+            Task newTask = new Task(nextTaskId, descr, prio);
+            append(newTask);
+            nextTaskId++;
+            changed();
+            reportUpdatedOn(TaskDateIndex.day(newTask));
+            if (manager != null) {
+                manager.taskAdded(this, newTask);
+            }
+            return newTask;
+        } finally {
+            ADD_TASK_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Adds many new tasks to this project in one step.
+     * <p>
+     * This does the same as calling addTask for each task and then setting its state and
+     * assignee, but the date, the growth of the task list and the report to the manager's
+     * listeners are done once for the whole batch.
+     *
+     * @param newTasks the values of the tasks to add
+     * @return the new tasks, in the same order, with their IDs
+     * @throws IllegalStateException if the manager refuses changes, see ProjectsManager.refuseChanges
+     */
+    public synchronized List<Task> addTasks(Collection<NewTask> newTasks) {
+        long start = ADD_TASKS_STATS.start();
+        try {
+            checkWritable();
+            loadTasks();
+            LocalDate today = LocalDate.now();
+            ensureCapacity(tasks.size() + newTasks.size());
+            List<Task> added = new ArrayList<>(newTasks.size());
+            for (NewTask n : newTasks) {
+                Task task = new Task(nextTaskId, n.getDescription(), n.getPrio(), n.getState(), n.getTakenBy(), today);
+                append(task);
+                nextTaskId++;
+                added.add(task);
+            }
+            if (!added.isEmpty()) {
+                changed();
+                reportUpdatedOn((int) today.toEpochDay());
+            }
+            if (manager != null && !added.isEmpty()) {
+                manager.tasksAdded(this, Collections.unmodifiableList(added));
+            }
+            return Collections.unmodifiableList(added);
+        } finally {
+            ADD_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Puts a restored task back into this project.
+     * <p>
+     * If the project already has a task with the same ID, that task is replaced.
+     * The next task ID is moved past the restored ID so new tasks never reuse it.
+     *
+     * @param task the task to put back
      */
-    public Task addTask(String descr, TaskPrio prio) {
-        Task newTask = new Task(nextTaskId, descr, prio);
-        tasks.add(newTask);
-        nextTaskId++;
-        return newTask;
+    public synchronized void restoreTask(Task task) {
+        long start = RESTORE_TASK_STATS.start();
+        try {
+            loadTasks();
+            task.setOwner(this);
+            // every existing task has an ID below nextTaskId, so only those can be replaced
+            int i = task.getId() < nextTaskId ? positionOf(task.getId()) : -1;
+            if (i >= 0) {
+                task.setPosition(i);
+                freeze(i, task);
+                Task old = tasks.set(i, task);
+                old.setOwner(null);
+                index.replace(old, task);
+                stats.replace(old, task);
+                dates.replace(old, task);
+            } else {
+                append(task);
+            }
+            reportUpdatedOn(TaskDateIndex.day(task));
+            if (task.getId() >= nextTaskId) {
+                nextTaskId = task.getId() + 1;
+            }
+            changed();
+        } finally {
+            RESTORE_TASK_STATS.stop(start);
+        }
     }
 
     /**
@@ -74,14 +465,372 @@ public class Project implements Comparable<Project>, Serializable {
         return id;
     }
 
+    /**
+     * Returns the description of this project.
+     *
+     * @return the project description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the date when this project was created.
+     *
+     * @return the creation date
+     */
+    public LocalDate getCreated() {
+        return created;
+    }
+
     /**
      * Removes a specific task from the project.
      *
      * @param task the task to remove
      * @return true if the task was successfully removed, false otherwise
+     * @throws IllegalStateException if the manager refuses changes, see ProjectsManager.refuseChanges
+     */
+    public synchronized boolean removeTask(Task task) {
+        long start = REMOVE_TASK_STATS.start();
+        try {
+            checkWritable();
+            loadTasks();
+            if (task.getOwner() != this || task.isRemovedView()) {
+                return false;
+            }
+            int pos = task.getPosition();
+            index.remove(task);
+            stats.remove(task);
+            dates.remove(task);
+            task.detach();
+            tasks.remove(pos);
+            if (frozenTasks != null) {
+                frozenTasks = frozenTasks.without(pos);
+            }
+            if (!(tasks instanceof TaskColumns)) {
+                // views in column storage find their row by ID instead
+                for (int i = pos; i < tasks.size(); i++) {
+                    tasks.get(i).setPosition(i);
+                }
+            }
+            task.setOwner(null);
+            changed();
+            if (manager != null) {
+                manager.taskRemoved(this, task);
+            }
+            return true;
+        } finally {
+            REMOVE_TASK_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Moves the next task ID forward when a project is restored from saved data.
+     * <p>
+     * The next task ID is never moved backwards, so IDs of existing tasks are never reused.
+     *
+     * @param nextTaskId the ID that the next added task should get
+     */
+    public synchronized void restoreNextTaskId(int nextTaskId) {
+        if (nextTaskId > this.nextTaskId) {
+            this.nextTaskId = nextTaskId;
+            changed();
+        }
+    }
+
+    /**
+     * Returns a version of this project and its tasks that never changes.
+     * <p>
+     * The first call copies all tasks, and from then on every change to the project
+     * publishes a new snapshot that shares the unchanged tasks with the one before.
+     * Later calls only read the newest snapshot, without taking the project lock, so
+     * readers never wait for a thread that is changing the project and never see a
+     * change half done. Projects that are never asked for a snapshot do not keep one.
+     *
+     * @return the newest snapshot of this project
+     */
+    public ProjectSnapshot snapshot() {
+        ProjectSnapshot s = snapshot;
+        if (s != null) {
+            return s;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                loadTasks();
+                List<Task> copies = new ArrayList<>(tasks.size());
+                frozenAscending = true;
+                for (Task t : tasks) {
+                    if (!copies.isEmpty() && t.getId() <= copies.get(copies.size() - 1).getId()) {
+                        frozenAscending = false;
+                    }
+                    copies.add(t.frozenCopy());
+                }
+                frozenTasks = PersistentList.of(copies);
+                snapshot = new ProjectSnapshot(this, frozenTasks, frozenAscending, changeCount,
+                        stats.count(TaskState.DONE), dates.latestDay());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns the number of changes made to this project since it was created or read.
+     * <p>
+     * Every change to the tasks or the next task ID counts, also restored tasks, whether
+     * or not it is reported to listeners. A store can compare the count with the one
+     * from its last save to find the projects that need to be written again.
+     *
+     * @return the number of changes so far
+     */
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Returns the ID that the next added task will get.
+     *
+     * @return the next task ID
+     */
+    public synchronized int getNextTaskId() {
+        return nextTaskId;
+    }
+
+    /**
+     * Returns all tasks of this project, in the order they were added.
+     * <p>
+     * The list is a copy, so it does not change when tasks are added or removed later.
+     *
+     * @return a read-only list of the tasks
+     */
+    public synchronized List<Task> getTasks() {
+        long start = GET_TASKS_STATS.start();
+        try {
+            loadTasks();
+            return Collections.unmodifiableList(new ArrayList<>(tasks));
+        } finally {
+            GET_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Returns the number of tasks in this project.
+     * <p>
+     * Tasks that have not been loaded yet are counted without loading them.
+     *
+     * @return the number of tasks
+     */
+    public synchronized int getTaskCount() {
+        if (taskLoader != null) {
+            return taskLoader.getTaskCount();
+        }
+        return tasks.size();
+    }
+
+    /**
+     * Returns the positions in getTasks() of the tasks with the given priority.
+     * <p>
+     * The positions come from an index, so no tasks have to be checked.
+     *
+     * @param prio the priority to look for
+     * @return a new bit set with one bit set for each matching task
+     */
+    public synchronized BitSet positionsWithPrio(TaskPrio prio) {
+        loadTasks();
+        return index.withPrio(prio);
+    }
+
+    /**
+     * Returns the positions in getTasks() of the tasks in the given state.
+     *
+     * @param state the state to look for
+     * @return a new bit set with one bit set for each matching task
+     */
+    public synchronized BitSet positionsWithState(TaskState state) {
+        loadTasks();
+        return index.withState(state);
+    }
+
+    /**
+     * Returns the positions in getTasks() of the tasks taken by the given person,
+     * ignoring uppercase and lowercase differences.
+     *
+     * @param takenBy the name or email of the person
+     * @return a new bit set with one bit set for each matching task
+     */
+    public synchronized BitSet positionsTakenBy(String takenBy) {
+        loadTasks();
+        return index.takenBy(takenBy);
+    }
+
+    /**
+     * Returns the tasks that somebody has taken and that are not done, found from the
+     * assignee and state indexes, without copying the task list. Used by AssigneeQueues.
+     */
+    synchronized List<Task> openTakenTasks() {
+        loadTasks();
+        BitSet open = index.taken();
+        open.andNot(index.withState(TaskState.DONE));
+        List<Task> result = new ArrayList<>(open.cardinality());
+        for (int i = open.nextSetBit(0); i >= 0; i = open.nextSetBit(i + 1)) {
+            result.add(tasks.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Clears the positions of the tasks that do not match a condition, checking only the
+     * positions that are set. The tasks are read by position, without copying the task
+     * list, and in column storage by matchRow, without making a Task view of each row.
+     *
+     * @param positions positions in getTasks(), changed in place
+     * @param matcher the condition the tasks left must match
+     */
+    public synchronized void retainMatching(BitSet positions, ITaskMatcher matcher) {
+        loadTasks();
+        TaskColumns columns = tasks instanceof TaskColumns c ? c : null;
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            if (i >= tasks.size()) {
+                positions.clear(i, positions.length());
+                break;
+            }
+            boolean match = columns != null ? matcher.matchRow(columns, i) : matcher.match(tasks.get(i));
+            if (!match) {
+                positions.clear(i);
+            }
+        }
+    }
+
+    /**
+     * Returns how many tasks have the given priority, using the index.
+     *
+     * @param prio the priority to count
+     * @return the number of tasks with that priority
+     */
+    public synchronized int countWithPrio(TaskPrio prio) {
+        loadTasks();
+        return index.countWithPrio(prio);
+    }
+
+    /**
+     * Returns how many tasks are in the given state, using the index.
+     *
+     * @param state the state to count
+     * @return the number of tasks in that state
+     */
+    public synchronized int countWithState(TaskState state) {
+        loadTasks();
+        return index.countWithState(state);
+    }
+
+    /**
+     * Returns how many tasks are taken by the given person, ignoring case, using the index.
+     *
+     * @param takenBy the name or email of the person
+     * @return the number of tasks taken by that person
+     */
+    public synchronized int countTakenBy(String takenBy) {
+        loadTasks();
+        return index.countTakenBy(takenBy);
+    }
+
+    /**
+     * Changes the priority, state or assignee of every task that matches a given condition.
+     * <p>
+     * All matching tasks are changed in one step under the project lock, get the same
+     * last updated date, and are reported to the manager's listeners with one call.
+     * As with Task.setTakenBy, an assignee can only be set on tasks nobody has taken;
+     * if any matching task is taken, no task is changed.
+     *
+     * @param matcher the rule used to match tasks
+     * @param update the values to set on the matching tasks
+     * @return the number of tasks that were changed
+     * @throws IllegalStateException if the update sets takenBy and a matching task is already taken,
+     *         or the manager refuses changes, see ProjectsManager.refuseChanges
+     */
+    public synchronized int updateWhere(ITaskMatcher matcher, TaskUpdate update) {
+        long start = UPDATE_WHERE_STATS.start();
+        try {
+            checkWritable();
+            List<Task> matched = streamTasks(matcher).toList();
+            if (update.getTakenBy() != null) {
+                for (Task t : matched) {
+                    if (t.getTakenBy() != null) {
+                        throw new IllegalStateException("Task " + t.getId() + " is already taken by " + t.getTakenBy());
+                    }
+                }
+            }
+            LocalDate today = LocalDate.now();
+            int[] ids = new int[matched.size()];
+            int[] oldDays = new int[matched.size()];
+            TaskPrio[] oldPrios = new TaskPrio[matched.size()];
+            TaskState[] oldStates = new TaskState[matched.size()];
+            String[] oldTakenBys = new String[matched.size()];
+            for (int i = 0; i < matched.size(); i++) {
+                Task t = matched.get(i);
+                oldPrios[i] = t.getPrio();
+                oldStates[i] = t.getState();
+                oldTakenBys[i] = t.getTakenBy();
+                ids[i] = t.getId();
+                oldDays[i] = TaskDateIndex.day(t);
+                t.apply(update.getPrio(), update.getState(), update.getTakenBy(), today);
+                index.update(t, oldPrios[i], oldStates[i], oldTakenBys[i]);
+                stats.update(t, oldStates[i]);
+                freeze(t.getPosition(), t);
+            }
+            dates.moveAll(ids, oldDays, (int) today.toEpochDay());
+            if (!matched.isEmpty()) {
+                changed();
+                reportUpdatedOn((int) today.toEpochDay());
+            }
+            if (manager != null && !matched.isEmpty()) {
+                manager.tasksUpdated(this, matched, oldPrios, oldStates, oldTakenBys);
+            }
+            return matched.size();
+        } finally {
+            UPDATE_WHERE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Called by a task of this project after its state, priority or assignee changed.
+     *
+     * @param task the task that was changed
+     * @param oldPrio the priority before the change
+     * @param oldState the state before the change
+     * @param oldTakenBy the assignee before the change
+     * @param oldUpdated the last updated date before the change
+     */
+    synchronized void taskUpdated(Task task, TaskPrio oldPrio, TaskState oldState, String oldTakenBy,
+                                  LocalDate oldUpdated) {
+        index.update(task, oldPrio, oldState, oldTakenBy);
+        stats.update(task, oldState);
+        freeze(task.getPosition(), task);
+        int day = TaskDateIndex.day(task);
+        dates.move(task.getId(), (int) oldUpdated.toEpochDay(), day);
+        changed();
+        reportUpdatedOn(day);
+        if (manager != null) {
+            manager.taskUpdated(this, task, oldPrio, oldState, oldTakenBy);
+        }
+    }
+
+    /**
+     * Throws if the manager holding this project refuses changes. Called under the
+     * project lock before anything is changed.
+     */
+    void checkWritable() {
+        if (manager != null) {
+            manager.checkWritable();
+        }
+    }
+
+    /**
+     * Sets the manager that holds this project, so that it can be told about changes.
+     *
+     * @param manager the manager that holds this project, or null
      */
-    public boolean removeTask(Task task) {
-        return tasks.remove(task);
+    void setManager(ProjectsManager manager) {
+        this.manager = manager;
     }
 
     /**
@@ -90,26 +839,98 @@ public class Project implements Comparable<Project>, Serializable {
      * @param id the ID of the task to find
      * @return the task with the given ID, or null if not found
      */
-    public Task getTaskById(int id) {
-        for (Task t : tasks) {
-            if (t.getId() == id) {
-                return t;
-            }
+    public synchronized Task getTaskById(int id) {
+        long start = GET_TASK_BY_ID_STATS.start();
+        try {
+            loadTasks();
+            int pos = positionOf(id);
+            return pos < 0 ? null : tasks.get(pos);
+        } finally {
+            GET_TASK_BY_ID_STATS.stop(start);
         }
-        return null;
     }
 
     /**
      * Finds all tasks that match a given condition.
      * <p>
      * Uses the ITaskMatcher interface to check which tasks should be included.
+     * Matchers that can answer from the project's priority, state and assignee
+     * indexes do so, and then no tasks have to be checked one by one.
+     * <p>
+     * When the project belongs to a ProjectsManager and the matcher compares by value,
+     * the result is kept in the manager's query cache until the project changes, so
+     * repeating the same search in between checks no tasks at all.
      *
      * @param matcher the rule used to match tasks
      * @return a list of tasks that match the condition
      */
-    public List<Task> findTasks(ITaskMatcher matcher) {
+    public synchronized List<Task> findTasks(ITaskMatcher matcher) {
+        long start = FIND_TASKS_STATS.start();
+        try {
+            loadTasks();
+            ProjectsManager m = manager;
+            if (m == null || !matcher.isCacheable()) {
+                return search(matcher);
+            }
+            return new ArrayList<>(cachedSearch(m, matcher));
+        } finally {
+            FIND_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Finds all tasks that match a given condition, as findTasks does, but returns a
+     * read-only list that may be the one kept in the query cache, so that nothing is
+     * copied. Used by ParallelTaskSearch, which only reads the result.
+     */
+    synchronized List<Task> findTasksReadOnly(ITaskMatcher matcher) {
+        long start = FIND_TASKS_STATS.start();
+        try {
+            loadTasks();
+            ProjectsManager m = manager;
+            if (m == null || !matcher.isCacheable()) {
+                return Collections.unmodifiableList(search(matcher));
+            }
+            return cachedSearch(m, matcher);
+        } finally {
+            FIND_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Returns the result kept in the query cache for a search, or runs the search and keeps
+     * its result there. The result is read-only, since the cache hands it to every caller.
+     */
+    private List<Task> cachedSearch(ProjectsManager m, ITaskMatcher matcher) {
+        SearchKey key = new SearchKey(this, matcher);
+        List<Task> cached = m.getQueryCache().get(key, changeCount);
+        if (cached != null) {
+            return cached;
+        }
+        List<Task> result = Collections.unmodifiableList(search(matcher));
+        m.getQueryCache().put(key, changeCount, result);
+        return result;
+    }
+
+    private List<Task> search(ITaskMatcher matcher) {
         List<Task> result = new ArrayList<>();
 
+        BitSet positions = matcher.matchPositions(this);
+        if (positions != null) {
+            for (int i = positions.nextSetBit(0); i >= 0 && i < tasks.size(); i = positions.nextSetBit(i + 1)) {
+                result.add(tasks.get(i));
+            }
+            return result;
+        }
+
+        if (tasks instanceof TaskColumns columns) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (matcher.matchRow(columns, i)) {
+                    result.add(columns.get(i));
+                }
+            }
+            return result;
+        }
         for (Task t : tasks) {
             if (matcher.match(t)) {
                 result.add(t);
@@ -118,49 +939,389 @@ public class Project implements Comparable<Project>, Serializable {
         return result;
     }
 
+    /**
+     * Returns a lazy stream of the tasks that match a given condition, in task order.
+     * <p>
+     * Tasks are only checked as the stream is consumed, so operations like
+     * limit or findFirst stop the search early. The stream reads the tasks and the
+     * index without taking the lock, so it must be called and used up while the
+     * caller holds the project's lock, as findTasks, topTasks and updateWhere do.
+     *
+     * @param matcher the rule used to match tasks
+     * @return a stream of matching tasks
+     */
+    private Stream<Task> streamTasks(ITaskMatcher matcher) {
+        loadTasks();
+        BitSet positions = matcher.matchPositions(this);
+        if (positions != null) {
+            return positions.stream().filter(i -> i < tasks.size()).mapToObj(tasks::get);
+        }
+        if (tasks instanceof TaskColumns columns) {
+            return IntStream.range(0, columns.size()).filter(i -> matcher.matchRow(columns, i)).mapToObj(columns::get);
+        }
+        return tasks.stream().filter(matcher::match);
+    }
+
+    /**
+     * Finds one page of the tasks that match a given condition.
+     * <p>
+     * The search stops as soon as the page is full, so the cost depends on
+     * offset + limit and not on the number of tasks in the project.
+     *
+     * @param matcher the rule used to match tasks
+     * @param offset how many matching tasks to skip
+     * @param limit the largest number of tasks to return
+     * @return at most limit matching tasks, starting after the first offset matches
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public synchronized List<Task> findTasks(ITaskMatcher matcher, int offset, int limit) {
+        long start = FIND_TASKS_PAGE_STATS.start();
+        try {
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("offset and limit must not be negative");
+            }
+            List<Task> result = new ArrayList<>(Math.min(limit, 1024));
+            streamTasks(matcher).skip(offset).limit(limit).forEach(result::add);
+            return result;
+        } finally {
+            FIND_TASKS_PAGE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Counts the tasks that match a given condition without making a list of them.
+     * Matchers that can answer from the indexes are counted from their bit set.
+     *
+     * @param matcher the rule used to match tasks
+     * @return the number of matching tasks
+     */
+    public synchronized int countTasks(ITaskMatcher matcher) {
+        loadTasks();
+        BitSet positions = matcher.matchPositions(this);
+        if (positions != null) {
+            return positions.get(0, tasks.size()).cardinality();
+        }
+        return (int) streamTasks(matcher).count();
+    }
+
+    /**
+     * Returns the k most important matching tasks, in the order given by Task.compareTo
+     * (highest priority first, then by description).
+     *
+     * @param matcher the rule used to match tasks
+     * @param k the largest number of tasks to return
+     * @return at most k matching tasks, sorted
+     */
+    public List<Task> topTasks(ITaskMatcher matcher, int k) {
+        return topTasks(matcher, k, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the first k matching tasks in the given order.
+     * <p>
+     * Only the k best tasks seen so far are kept, in a heap, instead of sorting
+     * all matching tasks. Memory use therefore depends on k and not on project size.
+     * Tasks that compare equal keep their task order, as they would after a stable sort.
+     *
+     * @param matcher the rule used to match tasks
+     * @param k the largest number of tasks to return
+     * @param order the order to sort the tasks in
+     * @return at most k matching tasks, sorted
+     * @throws IllegalArgumentException if k is negative
+     */
+    public synchronized List<Task> topTasks(ITaskMatcher matcher, int k, Comparator<? super Task> order) {
+        long start = TOP_TASKS_STATS.start();
+        try {
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative");
+            }
+            Comparator<Task> stable = ((Comparator<Task>) order::compare).thenComparingInt(Task::getPosition);
+            PriorityQueue<Task> heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), stable.reversed());
+            if (k > 0) {
+                streamTasks(matcher).forEach(t -> {
+                    if (heap.size() < k) {
+                        heap.add(t);
+                    } else if (stable.compare(t, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(t);
+                    }
+                });
+            }
+            List<Task> result = new ArrayList<>(heap);
+            result.sort(stable);
+            return result;
+        } finally {
+            TOP_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Finds all tasks that match a query such as {@code prio=HIGH and state!=DONE and takenBy=alice}.
+     * <p>
+     * See TaskQuery for the query syntax.
+     *
+     * @param query the query text
+     * @return a list of tasks that match the query
+     * @throws IllegalArgumentException if the query text is not valid
+     */
+    public List<Task> findTasks(String query) {
+        return findTasks(TaskQuery.parse(query));
+    }
+
     /**
      * Determines the current state of the project.
      * <p>
      * A project can be EMPTY (no tasks), ONGOING (some tasks not done), or COMPLETED (all tasks done).
+     * The answer comes from running counts of tasks per state, so no tasks are checked.
      *
      * @return the current state of the project
      */
-    public ProjectState getState() {
-        if (tasks.isEmpty()) {
-            return ProjectState.EMPTY;
+    public synchronized ProjectState getState() {
+        long start = GET_STATE_STATS.start();
+        try {
+            loadTasks();
+            assert verifyAggregates();
+            if (stats.size() == 0) {
+                return ProjectState.EMPTY;
+            }
+            if (stats.count(TaskState.DONE) == stats.size()) {
+                return ProjectState.COMPLETED;
+            }
+            return ProjectState.ONGOING;
+        } finally {
+            GET_STATE_STATS.stop(start);
         }
+    }
 
-        boolean allDone = true;
-        for (Task t : tasks) {
-            if (t.getState() != TaskState.DONE) {
-                allDone = false;
-                break;
+    /**
+     * Returns the most recent update date among all tasks in the project.
+     * <p>
+     * The date is the last day in the date index, so no tasks are checked.
+     *
+     * @return the latest update date, or the creation date if there are no tasks
+     */
+    public synchronized LocalDate getLastUpdated() {
+        long start = GET_LAST_UPDATED_STATS.start();
+        try {
+            loadTasks();
+            assert verifyAggregates();
+            Integer latest = dates.latestDay();
+            if (latest == null || latest <= created.toEpochDay()) {
+                return created;
             }
+            return LocalDate.ofEpochDay(latest);
+        } finally {
+            GET_LAST_UPDATED_STATS.stop(start);
         }
-        if (allDone) {
-            return ProjectState.COMPLETED;
+    }
+
+    /**
+     * Finds the tasks that were last updated between two dates.
+     * <p>
+     * The tasks are looked up in an index ordered by date, so only the tasks in the
+     * range are read, however many tasks the project has.
+     *
+     * @param from the first date to include
+     * @param to the last date to include
+     * @return the tasks last updated from {@code from} to {@code to}, in task order
+     */
+    public synchronized List<Task> findTasksUpdatedBetween(LocalDate from, LocalDate to) {
+        long start = UPDATED_BETWEEN_STATS.start();
+        try {
+            loadTasks();
+            return tasksWithIds(dates.idsBetween((int) from.toEpochDay(), (int) to.toEpochDay()));
+        } finally {
+            UPDATED_BETWEEN_STATS.stop(start);
         }
-        return ProjectState.ONGOING;
     }
 
     /**
-     * Returns the most recent update date among all tasks in the project.
+     * Returns the n most recently updated tasks, using the same index as findTasksUpdatedBetween.
+     * <p>
+     * Only the date of the last update is stored, so tasks updated on the same day
+     * are ordered by ID, the newest task first.
      *
-     * @return the latest update date, or the creation date if there are no tasks
+     * @param n the largest number of tasks to return
+     * @return at most n tasks, the most recently updated first
+     * @throws IllegalArgumentException if n is negative
+     */
+    public synchronized List<Task> recentlyUpdated(int n) {
+        long start = RECENTLY_UPDATED_STATS.start();
+        try {
+            if (n < 0) {
+                throw new IllegalArgumentException("n must not be negative");
+            }
+            loadTasks();
+            return tasksInIdOrder(dates.latestIds(n));
+        } finally {
+            RECENTLY_UPDATED_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Returns at most limit tasks last updated on the given day, the newest task first.
+     * Used by ProjectsManager.recentlyUpdatedTasks.
      */
-    public LocalDate getLastUpdated() {
-        if (tasks.isEmpty()) {
-            return created;
+    synchronized List<Task> tasksUpdatedOn(int day, int limit) {
+        loadTasks();
+        return tasksInIdOrder(dates.latestIdsOn(day, limit));
+    }
+
+    /**
+     * Returns the days that some task of this project was last updated on, in ascending order.
+     * Used by ProjectsManager to index the project.
+     */
+    synchronized int[] updatedDays() {
+        loadTasks();
+        return dates.days();
+    }
+
+    /**
+     * Moves the tasks of this project into column storage, see TaskColumns.
+     * <p>
+     * Task objects that other code already holds become views of their rows, so they
+     * keep working. Nothing happens if the project already uses column storage.
+     */
+    public synchronized void useColumnStorage() {
+        if (tasks instanceof TaskColumns) {
+            return;
+        }
+        TaskColumns columns = new TaskColumns(this, tasks.size());
+        for (Task t : tasks) {
+            columns.add(t);
         }
+        tasks = columns;
+    }
+
+    /**
+     * Tells whether the tasks of this project are kept in column storage.
+     *
+     * @return true for column storage, false for a list of Task objects
+     */
+    public synchronized boolean isColumnStorage() {
+        return tasks instanceof TaskColumns;
+    }
 
-        LocalDate latest = created;
+    /**
+     * Returns a copy of this project and its tasks as they are right now, for saving.
+     * <p>
+     * The copy belongs to no manager, so changing it is not recorded anywhere, and later
+     * changes to this project do not show in the copy. The project is locked only while
+     * the tasks are copied. Tasks that were never loaded are not copied; the copy loads
+     * them from the same place.
+     *
+     * @return a detached copy of this project
+     */
+    public synchronized Project copy() {
+        if (taskLoader != null) {
+            return new Project(title, description, id, created, nextTaskId, taskLoader);
+        }
+        Project copy = new Project(title, description, id, created);
+        for (Task t : tasks) {
+            copy.append(new Task(t.getId(), t.getDescription(), t.getPrio(), t.getState(),
+                    t.getTakenBy(), t.getLastUpdated()));
+        }
+        copy.nextTaskId = nextTaskId;
+        return copy;
+    }
 
+    /**
+     * Checks that the running counts used by getState and the date index used by
+     * getLastUpdated agree with a full pass over the tasks.
+     * <p>
+     * This is called from assert statements, so it only runs when assertions
+     * are enabled (java -ea).
+     *
+     * @return true if the counts agree
+     * @throws IllegalStateException if the counts do not agree
+     */
+    public synchronized boolean verifyAggregates() {
+        loadTasks();
+        int[] counts = new int[TaskState.values().length];
+        Integer latest = null;
         for (Task t : tasks) {
-            if (t.getLastUpdated().isAfter(latest)) {
-                latest = t.getLastUpdated();
+            counts[t.getState().ordinal()]++;
+            int day = TaskDateIndex.day(t);
+            if (latest == null || day > latest) {
+                latest = day;
+            }
+            if (!dates.contains(day, t.getId())) {
+                throw new IllegalStateException("Task " + t.getId() + " is not in the date index under "
+                        + t.getLastUpdated());
+            }
+        }
+        if (stats.size() != tasks.size()) {
+            throw new IllegalStateException("Task count is " + stats.size() + ", expected " + tasks.size());
+        }
+        for (TaskState state : TaskState.values()) {
+            if (stats.count(state) != counts[state.ordinal()]) {
+                throw new IllegalStateException("Count of " + state + " tasks is " + stats.count(state)
+                        + ", expected " + counts[state.ordinal()]);
+            }
+        }
+        if (dates.size() != tasks.size()) {
+            throw new IllegalStateException("Date index holds " + dates.size() + " tasks, expected " + tasks.size());
+        }
+        Integer kept = dates.latestDay();
+        if (latest == null ? kept != null : !latest.equals(kept)) {
+            throw new IllegalStateException("Latest update day is " + kept + ", expected " + latest);
+        }
+        if (frozenTasks != null) {
+            verifySnapshot();
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the newest snapshot holds the same tasks with the same values as the project.
+     */
+    private void verifySnapshot() {
+        List<Task> frozen = snapshot.getTasks();
+        if (frozen.size() != tasks.size() || snapshot.getVersion() != changeCount) {
+            throw new IllegalStateException("Snapshot version " + snapshot.getVersion() + " holds " + frozen.size()
+                    + " tasks, expected version " + changeCount + " with " + tasks.size());
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            Task t = tasks.get(i);
+            Task f = frozen.get(i);
+            if (f.getId() != t.getId() || f.getPrio() != t.getPrio() || f.getState() != t.getState()
+                    || !Objects.equals(f.getTakenBy(), t.getTakenBy()) || !f.getLastUpdated().equals(t.getLastUpdated())
+                    || !f.getDescription().equals(t.getDescription())) {
+                throw new IllegalStateException("Snapshot holds " + f + " at position " + i + ", expected " + t);
+            }
+        }
+    }
+
+    /**
+     * Makes sure the tasks are in memory before the project is written to a file.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        loadTasks();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Links the tasks back to this project after it has been read from a file.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).setOwner(this);
+            tasks.get(i).setPosition(i);
+        }
+        index = TaskIndex.build(tasks);
+        stats = new TaskStats();
+        idsAscending = true;
+        for (int i = 0; i < tasks.size(); i++) {
+            stats.add(tasks.get(i));
+            if (i > 0 && tasks.get(i).getId() <= tasks.get(i - 1).getId()) {
+                idsAscending = false;
             }
         }
-        return latest;
+        dates = TaskDateIndex.build(tasks);
+        if (COLUMN_STORAGE) {
+            useColumnStorage();
+        }
     }
 
     /**
@@ -187,6 +1348,27 @@ public class Project implements Comparable<Project>, Serializable {
                 "Description: " + description + "\n" +
                 "Created: " + created;
     }
-}
 
+    /**
+     * The key of a task search in the query cache: this project, by identity, and the matcher, by value.
+     */
+    private static final class SearchKey {
+        private final Project project;
+        private final ITaskMatcher matcher;
 
+        private SearchKey(Project project, ITaskMatcher matcher) {
+            this.project = project;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SearchKey other && other.project == project && other.matcher.equals(matcher);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(project) + matcher.hashCode();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package model;
+
+import model.matcher.ITaskMatcher;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A version of a project and its tasks that never changes, see Project.snapshot.
+ * <p>
+ * The tasks are copies that cannot be changed; their setters throw
+ * UnsupportedOperationException. Any number of threads can read a snapshot without
+ * locks while the project goes on changing, and a snapshot stays valid as long as it is
+ * used. To change a task, look it up by ID in the live project from getProject.
+ * <p>
+ * A new snapshot shares all unchanged tasks and most of its task list with the one
+ * before it, so each change costs one task copy and a few hundred bytes.
+ */
+public final class ProjectSnapshot {
+
+    private final Project project;
+    private final List<Task> tasks;
+    private final boolean idsAscending;
+    private final long version;
+    private final int doneCount;
+    private final Integer latestDay;
+
+    ProjectSnapshot(Project project, PersistentList<Task> tasks, boolean idsAscending, long version,
+                    int doneCount, Integer latestDay) {
+        this.project = project;
+        this.tasks = tasks;
+        this.idsAscending = idsAscending;
+        this.version = version;
+        this.doneCount = doneCount;
+        this.latestDay = latestDay;
+    }
+
+    /**
+     * Returns the live project this is a snapshot of.
+     *
+     * @return the project, which may have changed since the snapshot was taken
+     */
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * Returns the ID of the project.
+     *
+     * @return the project ID
+     */
+    public int getId() {
+        return project.getId();
+    }
+
+    /**
+     * Returns the title of the project.
+     *
+     * @return the project title
+     */
+    public String getTitle() {
+        return project.getTitle();
+    }
+
+    /**
+     * Returns the description of the project.
+     *
+     * @return the project description
+     */
+    public String getDescription() {
+        return project.getDescription();
+    }
+
+    /**
+     * Returns the date when the project was created.
+     *
+     * @return the creation date
+     */
+    public LocalDate getCreated() {
+        return project.getCreated();
+    }
+
+    /**
+     * Returns the change count of the project when this snapshot was taken, see
+     * Project.getChangeCount. A later snapshot of the same project has a higher version.
+     *
+     * @return the version of this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the tasks of the project as they were, in project order.
+     *
+     * @return a list that cannot be changed, of tasks that cannot be changed
+     */
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return the number of tasks in the snapshot
+     */
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Finds a task by its ID.
+     *
+     * @param id the ID of the task to find
+     * @return the task as it was, or null if the project had no such task
+     */
+    public Task getTaskById(int id) {
+        if (idsAscending) {
+            int low = 0;
+            int high = tasks.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midId = tasks.get(mid).getId();
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return tasks.get(mid);
+                }
+            }
+            return null;
+        }
+        for (Task t : tasks) {
+            if (t.getId() == id) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all tasks that match a given condition, checking every task.
+     *
+     * @param matcher the rule used to match tasks
+     * @return the matching tasks, in project order
+     */
+    public List<Task> findTasks(ITaskMatcher matcher) {
+        List<Task> result = new ArrayList<>();
+        for (Task t : tasks) {
+            if (matcher.match(t)) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the state the project had, as Project.getState.
+     *
+     * @return EMPTY, ONGOING or COMPLETED
+     */
+    public ProjectState getState() {
+        if (tasks.isEmpty()) {
+            return ProjectState.EMPTY;
+        }
+        return doneCount == tasks.size() ? ProjectState.COMPLETED : ProjectState.ONGOING;
+    }
+
+    /**
+     * Returns the most recent update date among the tasks, as Project.getLastUpdated.
+     *
+     * @return the latest update date, or the creation date if there were no tasks
+     */
+    public LocalDate getLastUpdated() {
+        LocalDate created = project.getCreated();
+        if (latestDay == null || latestDay <= created.toEpochDay()) {
+            return created;
+        }
+        return LocalDate.ofEpochDay(latestDay);
+    }
+
+    /**
+     * Returns the project ID, version and number of tasks.
+     *
+     * @return a short description of the snapshot
+     */
+    @Override
+    public String toString() {
+        return "Project " + getId() + " version " + version + " with " + tasks.size() + " tasks";
+    }
+}
@@ -0,0 +1,48 @@
+package model;
+
+/**
+ * A task found by a search over many projects, together with the project it belongs to.
+ */
+public class ProjectTask {
+    private final Project project;
+    private final Task task;
+
+    /**
+     * Creates a search result.
+     *
+     * @param project the project the task belongs to
+     * @param task the task that was found
+     */
+    public ProjectTask(Project project, Task task) {
+        this.project = project;
+        this.task = task;
+    }
+
+    /**
+     * Returns the project the task belongs to.
+     *
+     * @return the project
+     */
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * Returns the task that was found.
+     *
+     * @return the task
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the project ID and title followed by the task details.
+     *
+     * @return a formatted string with the project and the task
+     */
+    @Override
+    public String toString() {
+        return "Project " + project.getId() + " (" + project.getTitle() + ")" + task;
+    }
+}
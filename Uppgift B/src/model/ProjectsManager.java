@@ -1,21 +1,92 @@
 package model;
 
+import metrics.Metrics;
+import metrics.OperationStats;
+import model.matcher.ITaskMatcher;
+
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class is used to handle a list of all projects.
  * <p>
  * It can add, remove, find and get projects by title or ID.
  * It also makes sure that every project gets a unique title and ID number.
+ * Projects are indexed by ID and by case-folded title, so looking up a project
+ * and checking that a title is unique take the same time however many projects there are.
+ * </p>
+ * <p>
+ * A ProjectsManager can be used from many threads at once. Lookups by ID and title go
+ * to concurrent maps and never wait. A new title is reserved in the title map in one
+ * atomic step, so two threads can never both add a project with the same title, and
+ * project IDs are handed out by an atomic counter. The ordered list of projects and the
+ * trigram index are guarded by a read-write lock, so searches can run side by side
+ * and only adding or removing a project makes them wait.
+ * Each project guards its own tasks, see Project.
+ * </p>
+ * <p>
+ * For questions about when tasks were updated, the manager keeps for each day the projects
+ * that have a task last updated on that day, and each project keeps its own date index.
+ * A project's days are added when its tasks change, or for projects put in with
+ * setProjects or restoreProject, by the first such question.
+ * </p>
+ * <p>
+ * Changes are reported right away to ModelListeners on the changing thread and, when a
+ * ChangeEventBus has been started for the manager, as ChangeEvents on the bus's own thread.
+ * </p>
+ * <p>
+ * The main operations are counted and timed, see Metrics.
  * </p>
  *
  * @author Naher Islam & Vanessa Rådström
  * @version 1.0
  */
 public class ProjectsManager {
-    private int nextProjectId;
-    private final List<Project> projects;
+    private static final OperationStats IS_TITLE_UNIQUE_STATS = Metrics.operation("ProjectsManager", "isTitleUnique", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats GET_PROJECTS_STATS = Metrics.operation("ProjectsManager", "getProjects");
+    private static final OperationStats SET_PROJECTS_STATS = Metrics.operation("ProjectsManager", "setProjects");
+    private static final OperationStats REMOVE_PROJECT_STATS = Metrics.operation("ProjectsManager", "removeProject");
+    private static final OperationStats RESTORE_PROJECT_STATS = Metrics.operation("ProjectsManager", "restoreProject");
+    private static final OperationStats GET_PROJECT_BY_ID_STATS = Metrics.operation("ProjectsManager", "getProjectById", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats ADD_PROJECT_STATS = Metrics.operation("ProjectsManager", "addProject");
+    private static final OperationStats FIND_PROJECTS_STATS = Metrics.operation("ProjectsManager", "findProjects");
+    private static final OperationStats FIND_TASKS_STATS = Metrics.operation("ProjectsManager", "findTasks");
+    private static final OperationStats FIND_TASKS_PAGE_STATS = Metrics.operation("ProjectsManager", "findTasksPage");
+    private static final OperationStats UPDATED_BETWEEN_STATS = Metrics.operation("ProjectsManager", "findTasksUpdatedBetween");
+    private static final OperationStats RECENTLY_UPDATED_STATS = Metrics.operation("ProjectsManager", "recentlyUpdatedTasks");
+    private static final OperationStats NEXT_TASK_STATS = Metrics.operation("ProjectsManager", "getNextTask", Metrics.QUICK_SAMPLE_EVERY);
+    private static final OperationStats NEXT_TASKS_STATS = Metrics.operation("ProjectsManager", "getNextTasks");
+
+    private final AtomicInteger nextProjectId;
+    private final ReadWriteLock lock;
+    private int highestId;
+    private PersistentList<Project> projects;
+    private final Map<Integer, Project> projectsById;
+    private final Map<String, Project> projectsByTitle;
+    private final TitleIndex titleIndex;
+    private final List<ModelListener> listeners;
+    private final ConcurrentSkipListMap<Integer, Set<Project>> projectsByDay;
+    private final Set<Project> undatedProjects;
+    private volatile ChangeEventBus changeEvents;
+    private volatile List<Project> publishedProjects = PersistentList.empty();
+    private long projectListVersion;
+    private final QueryCache queryCache = new QueryCache(QueryCache.DEFAULT_CAPACITY);
+    private final AssigneeQueues assigneeQueues = new AssigneeQueues();
+    private volatile IllegalStateException refusal;
 
     /**
      * Creates a new ProjectsManager object.
@@ -26,17 +97,105 @@ public class ProjectsManager {
      */
     public ProjectsManager()
     {
-        this.projects = new ArrayList<>();
-        this.nextProjectId = 1;
+        this.projects = PersistentList.empty();
+        this.projectsById = new ConcurrentHashMap<>();
+        this.projectsByTitle = new ConcurrentHashMap<>();
+        this.titleIndex = new TitleIndex();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.projectsByDay = new ConcurrentSkipListMap<>();
+        this.undatedProjects = ConcurrentHashMap.newKeySet();
+        this.lock = new ReentrantReadWriteLock();
+        this.nextProjectId = new AtomicInteger(1);
+    }
+
+    /**
+     * Registers a listener that is told about every change to the projects and their tasks.
+     *
+     * @param listener the listener to add
+     */
+    public void addModelListener(ModelListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addModelListener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeModelListener(ModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Refuses every later change to the projects and their tasks, for example because the
+     * journal that records them could not be written. Changes are then refused before
+     * anything is changed, with an IllegalStateException that has the given reason and
+     * cause, so no change is kept in memory that would not be saved. Reading still works.
+     *
+     * @param reason why changes are refused
+     * @param cause the error behind it, or null
+     */
+    public void refuseChanges(String reason, Throwable cause) {
+        refusal = new IllegalStateException(reason, cause);
+    }
+
+    /**
+     * Tells whether changes are refused, see refuseChanges.
+     *
+     * @return true if the projects can no longer be changed
+     */
+    public boolean isReadOnly() {
+        return refusal != null;
+    }
+
+    /**
+     * Throws if changes are refused. Called before anything is changed.
+     */
+    void checkWritable() {
+        IllegalStateException r = refusal;
+        if (r != null) {
+            throw new IllegalStateException(r.getMessage(), r.getCause());
+        }
+    }
+
+    /**
+     * Returns the cache of search results used by findProjects and by Project.findTasks
+     * for the projects of this manager, to read its counts or change its size.
+     *
+     * @return the query cache of this manager
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Returns the bus that delivers the changes of this manager to ChangeListeners.
+     *
+     * @return the bus, or null if none has been started with ChangeEventBus.start
+     */
+    public ChangeEventBus getChangeEventBus() {
+        return changeEvents;
+    }
+
+    synchronized void setChangeEventBus(ChangeEventBus bus) {
+        if (changeEvents != null) {
+            throw new IllegalStateException("The manager already has a change event bus");
+        }
+        changeEvents = bus;
+    }
+
+    synchronized void clearChangeEventBus(ChangeEventBus bus) {
+        if (changeEvents == bus) {
+            changeEvents = null;
+        }
     }
 
 
     /**
      * Checks if a given project title is unique.
      * <p>
-     * Goes through all existing projects and compares their titles
-     * with the one given by the user, ignoring uppercase and lowercase
-     * differences.
+     * Looks up the title in the title index, ignoring uppercase and
+     * lowercase differences in the same way as String.equalsIgnoreCase.
      * </p>
      *
      * @param title the title to check
@@ -45,24 +204,117 @@ public class ProjectsManager {
 
     public boolean isTitleUnique(String title)
     {
-        for(Project p : projects)
-        {
-            if(p.getTitle().equalsIgnoreCase(title))
-            {
-                return false;
-            }
+        long start = IS_TITLE_UNIQUE_STATS.start();
+        try {
+            return !projectsByTitle.containsKey(CaseFolding.fold(title));
+        } finally {
+            IS_TITLE_UNIQUE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Adds a project to the list, the ID map and the trigram index.
+     * The caller holds the write lock and has already put the project in the title map.
+     */
+    private void index(Project project) {
+        projects = projects.plus(project);
+        projectsById.put(project.getId(), project);
+        titleIndex.add(project);
+        assigneeQueues.addProject(project);
+        project.setManager(this);
+        if (highestId >= 0 && project.getId() > highestId) {
+            highestId = project.getId();
         }
-        return true;
+    }
 
+    /**
+     * Takes a project out of all indexes. The caller holds the write lock.
+     */
+    private void unindex(Project project) {
+        int position = projects.indexOf(project);
+        if (position >= 0) {
+            projects = projects.without(position);
+        }
+        projectsById.remove(project.getId(), project);
+        projectsByTitle.remove(CaseFolding.fold(project.getTitle()), project);
+        titleIndex.remove(project);
+        assigneeQueues.removeProject(project);
+        project.setManager(null);
+        undatedProjects.remove(project);
+        if (project.getId() == highestId) {
+            highestId = -1; // found again by getHighestId when needed
+        }
     }
 
     /**
      * Returns the list of all projects currently managed by this ProjectsManager.
+     * <p>
+     * The list cannot be changed directly, use addProject and removeProject instead.
+     * It does not change when other threads add or remove projects afterwards.
+     * Every change to the list of projects publishes a new version of it, which shares
+     * all but a few nodes with the one before (see PersistentList), so this only reads
+     * the newest version and never waits, and adding a project costs the same however
+     * many projects there are.
      *
-     * @return a list containing all existing Project objects
+     * @return a read-only list containing all existing Project objects
      */
     public List<Project> getProjects() {
-        return projects;
+        long start = GET_PROJECTS_STATS.start();
+        try {
+            return publishedProjects;
+        } finally {
+            GET_PROJECTS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Publishes the list of projects for getProjects. The list is never changed, so it
+     * is published as it is. The caller holds the write lock and has finished changing it.
+     */
+    private void publishProjectList() {
+        publishedProjects = projects;
+        projectListVersion++; // title search results found before are no longer used
+    }
+
+    /**
+     * Returns snapshots of all projects that never change, see Project.snapshot and ModelSnapshot.
+     * <p>
+     * No lock is taken, so reports can read a snapshot for as long as they like while
+     * other threads go on changing the projects.
+     *
+     * @return the newest snapshot of every project
+     */
+    public ModelSnapshot snapshot() {
+        List<Project> current = publishedProjects;
+        List<ProjectSnapshot> snapshots = new ArrayList<>(current.size());
+        for (Project p : current) {
+            snapshots.add(p.snapshot());
+        }
+        return new ModelSnapshot(snapshots);
+    }
+
+    /**
+     * Returns the number of projects, without copying the list.
+     *
+     * @return the number of projects
+     */
+    public int getProjectCount() {
+        return projectsById.size();
+    }
+
+    /**
+     * Returns the number of tasks in all projects.
+     * <p>
+     * Projects whose tasks have not been loaded from a snapshot are counted without loading them.
+     *
+     * @return the number of tasks
+     */
+    public long getTaskCount() {
+        long count = 0;
+        for (Project p : projectsById.values()) {
+            count += p.getTaskCount();
+        }
+        return count;
     }
 
     /**
@@ -71,40 +323,96 @@ public class ProjectsManager {
      * This method is usually used when loading saved projects from a file.
      * It clears the current list and adds all projects from the given list.
      * It also updates the next project ID to continue numbering correctly.
+     * <p>
+     * Titles and IDs must be unique in the list, as addProject makes sure they are.
+     * A list where two projects share one is rejected before anything is changed.
      *
      * @param incomingProjects the list of projects to replace the current list with
      * @return true if the list was replaced successfully, false if the provided list was null
+     * @throws TitleNotUniqueException if two projects have the same title, ignoring case
+     * @throws IllegalArgumentException if two projects have the same ID
      */
     public boolean setProjects(List<Project> incomingProjects) {
-        if (incomingProjects == null) {
-            return false;
-        }
+        long start = SET_PROJECTS_STATS.start();
+        try {
+            if (incomingProjects == null) {
+                return false;
+            }
 
-        projects.clear();
-        projects.addAll(incomingProjects);
+            List<Project> incoming = new ArrayList<>(incomingProjects);
+            checkUnique(incoming);
+            lock.writeLock().lock();
+            try {
+                for (Project p : projects) {
+                    p.setManager(null);
+                }
+                projects = PersistentList.empty();
+                projectsById.clear();
+                projectsByTitle.clear();
+                titleIndex.clear();
+                projectsByDay.clear();
+                undatedProjects.clear();
+                assigneeQueues.clear();
+                highestId = 0;
+                for (Project p : incoming) {
+                    projectsByTitle.put(CaseFolding.fold(p.getTitle()), p);
+                    index(p);
+                    undatedProjects.add(p);
+                }
+                publishProjectList();
 
-        nextProjectId = getHighestId() + 1;
+                nextProjectId.set(highestId + 1);
+            } finally {
+                lock.writeLock().unlock();
+            }
 
-        return true;
+            return true;
+        } finally {
+            SET_PROJECTS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Checks that no two projects in a list share a title or an ID.
+     */
+    private static void checkUnique(List<Project> projects) {
+        Set<String> titles = new HashSet<>();
+        Set<Integer> ids = new HashSet<>();
+        for (Project p : projects) {
+            if (!titles.add(CaseFolding.fold(p.getTitle()))) {
+                throw new TitleNotUniqueException("Two projects have the same title: " + p.getTitle());
+            }
+            if (!ids.add(p.getId())) {
+                throw new IllegalArgumentException("Two projects have the same ID: " + p.getId());
+            }
+        }
     }
 
     /**
      * Finds the highest project ID among all projects in the list.
      * <p>
      * This helps ensure that new projects get unique IDs when added.
+     * The highest ID is kept up to date as projects are added, and is
+     * only searched for again after the project holding it was removed.
      *
      * @return the highest project ID found in the list
      */
     public int getHighestId() {
-        int highest = 0;
-
-        for (Project p : projects) {
-            if (p.getId() > highest) {
-                highest = p.getId();
+        lock.writeLock().lock();
+        try {
+            if (highestId < 0) {
+                int highest = 0;
+                for (Project p : projects) {
+                    if (p.getId() > highest) {
+                        highest = p.getId();
+                    }
+                }
+                highestId = highest;
             }
+            return highestId;
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        return highest;
     }
 
     /**
@@ -112,9 +420,64 @@ public class ProjectsManager {
      *
      * @param project the project to remove
      * @return true if the project was successfully removed, false otherwise
+     * @throws IllegalStateException if changes are refused, see refuseChanges
      */
     public boolean removeProject(Project project) {
-        return projects.remove(project);
+        long start = REMOVE_PROJECT_STATS.start();
+        try {
+            checkWritable();
+            synchronized (project) {
+                lock.writeLock().lock();
+                try {
+                    if (projectsById.get(project.getId()) != project) {
+                        return false;
+                    }
+                    unindex(project);
+                    publishProjectList();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                // still holding the project, so no change to its tasks can be reported after this
+                for (ModelListener l : listeners) {
+                    l.projectRemoved(project);
+                }
+                publish(ChangeEvent.Type.PROJECT_REMOVED, project, 0);
+            }
+            return true;
+        } finally {
+            REMOVE_PROJECT_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Puts a restored project back into the list of projects.
+     * <p>
+     * This is used when saved changes are replayed at startup. If a project with
+     * the same ID already exists it is replaced. The title is not checked here,
+     * since the saved changes were already checked when they were first made.
+     *
+     * @param project the project to put back
+     */
+    public void restoreProject(Project project) {
+        long start = RESTORE_PROJECT_STATS.start();
+        try {
+            lock.writeLock().lock();
+            try {
+                Project old = getProjectById(project.getId());
+                if (old != null) {
+                    unindex(old);
+                }
+                projectsByTitle.put(CaseFolding.fold(project.getTitle()), project);
+                index(project);
+                undatedProjects.add(project);
+                publishProjectList();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            nextProjectId.accumulateAndGet(project.getId() + 1, Math::max);
+        } finally {
+            RESTORE_PROJECT_STATS.stop(start);
+        }
     }
 
     /**
@@ -124,54 +487,502 @@ public class ProjectsManager {
      * @return the project with the matching ID, or null if not found
      */
     public Project getProjectById(int id) {
-        for (Project p : projects) {
-            if (p.getId() == id) {
-                return p;
-            }
+        long start = GET_PROJECT_BY_ID_STATS.start();
+        try {
+            return projectsById.get(id);
+        } finally {
+            GET_PROJECT_BY_ID_STATS.stop(start);
         }
-        return null;
+    }
+
+    /**
+     * Finds and returns a project by its unique title.
+     * <p>
+     * Uppercase and lowercase differences are ignored, in the same way as in isTitleUnique.
+     *
+     * @param title the title of the project to find
+     * @return the project with the matching title, or null if not found
+     */
+    public Project getProjectByTitle(String title) {
+        return projectsByTitle.get(CaseFolding.fold(title));
     }
 
     /**
      * Adds a new project with a title and descr.
      * <p>
      * If the title already exists, a TitleNotUniqueException is thrown.
+     * The title is reserved before the project is put in the list, so when two
+     * threads add the same title at the same time exactly one of them succeeds.
      *
      * @param title the title of the new project
      * @param descr a short descr of the project
      * @return the new project that was created
      * @throws TitleNotUniqueException if the title already exists
+     * @throws IllegalStateException if changes are refused, see refuseChanges
      */
     public Project addProject(String title, String descr)
     {
-        if(!isTitleUnique(title))
-        {
-            throw new TitleNotUniqueException("A project with this title already exists: " + title);
+        long start = ADD_PROJECT_STATS.start();
+        try {
+            checkWritable();
+            if(!isTitleUnique(title))
+            {
+                throw new TitleNotUniqueException("A project with this title already exists: " + title);
+            }
+            Project newProject = new Project(title, descr, nextProjectId.getAndIncrement());
+            synchronized (newProject) {
+                if (projectsByTitle.putIfAbsent(CaseFolding.fold(title), newProject) != null) {
+                    throw new TitleNotUniqueException("A project with this title already exists: " + title);
+                }
+                lock.writeLock().lock();
+                try {
+                    index(newProject);
+                    publishProjectList();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                // still holding the project, so the project is reported before any of its tasks
+                for (ModelListener l : listeners) {
+                    l.projectAdded(newProject);
+                }
+                publish(ChangeEvent.Type.PROJECT_ADDED, newProject, 0);
+            }
+            return newProject;
+        } finally {
+            ADD_PROJECT_STATS.stop(start);
         }
-        Project newProject = new Project(title, descr, nextProjectId);
-        projects.add(newProject);
-        nextProjectId++;
-        return newProject;
-
     }
 
     /**
      * Finds all projects whose titles contain the given search text.
+     * <p>
+     * Uppercase and lowercase differences are ignored. The search uses a trigram
+     * index over the titles, so only projects that share the rarest three-letter
+     * part of the search text are checked.
+     * <p>
+     * The results are kept in the query cache until a project is added or removed,
+     * so repeating a search in between does not check any titles.
      *
      * @param title the search text to look for in project titles
      * @return a list of matching projects, or an empty list if none are found
      */
     public List<Project> findProjects(String title) {
-        List<Project> result = new ArrayList<>();
+        long start = FIND_PROJECTS_STATS.start();
+        try {
+            lock.readLock().lock();
+            try {
+                String key = title.toLowerCase(); // the index ignores case the same way
+                List<Project> cached = queryCache.get(key, projectListVersion);
+                if (cached != null) {
+                    return new ArrayList<>(cached);
+                }
+                List<Project> result = titleIndex.find(title, projects);
+                queryCache.put(key, projectListVersion, List.copyOf(result));
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            FIND_PROJECTS_STATS.stop(start);
+        }
+    }
 
-        for (Project p : projects) {
-            if (p.getTitle().toLowerCase().contains(title.toLowerCase())) {
-                result.add(p);
+    /**
+     * Finds the tasks in all projects that match a given condition.
+     * <p>
+     * The projects are searched in parallel on the common fork/join pool.
+     * The results are in project order, and in task order within each project.
+     *
+     * @param matcher the rule used to match tasks
+     * @return the matching tasks, each together with its project
+     */
+    public List<ProjectTask> findTasks(ITaskMatcher matcher) {
+        return findTasks(matcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the tasks in all projects that match a given condition,
+     * searching the projects in parallel on the given pool.
+     * <p>
+     * With only a few projects the search runs on the calling thread,
+     * since splitting the work would cost more than it saves.
+     *
+     * @param matcher the rule used to match tasks
+     * @param pool the fork/join pool to run the search on
+     * @return the matching tasks, each together with its project, in project order
+     */
+    public List<ProjectTask> findTasks(ITaskMatcher matcher, ForkJoinPool pool) {
+        long start = FIND_TASKS_STATS.start();
+        try {
+            Project[] snapshot = getProjects().toArray(new Project[0]);
+            if (snapshot.length <= ParallelTaskSearch.SEQUENTIAL_CUTOFF) {
+                return ParallelTaskSearch.searchSequentially(snapshot, 0, snapshot.length, matcher);
+            }
+            return pool.invoke(new ParallelTaskSearch(snapshot, 0, snapshot.length, matcher));
+        } finally {
+            FIND_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Finds one page of the tasks in all projects that match a given condition,
+     * in project order and in task order within each project.
+     * <p>
+     * The projects are searched one after the other and the search stops as soon as
+     * the page is full. Projects whose matches all lie before the offset are only
+     * counted with Project.countTasks, so no list is made of the skipped tasks.
+     *
+     * @param matcher the rule used to match tasks
+     * @param offset how many matching tasks to skip
+     * @param limit the largest number of tasks to return
+     * @return at most limit matching tasks, each together with its project
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public List<ProjectTask> findTasks(ITaskMatcher matcher, int offset, int limit) {
+        long start = FIND_TASKS_PAGE_STATS.start();
+        try {
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("offset and limit must not be negative");
+            }
+            List<ProjectTask> result = new ArrayList<>(Math.min(limit, 1024));
+            int skip = offset;
+            for (Project p : getProjects()) {
+                if (result.size() == limit) {
+                    break;
+                }
+                if (skip > 0) {
+                    int count = p.countTasks(matcher);
+                    if (count <= skip) {
+                        skip -= count;
+                        continue;
+                    }
+                }
+                for (Task t : p.findTasks(matcher, skip, limit - result.size())) {
+                    result.add(new ProjectTask(p, t));
+                }
+                skip = 0;
+            }
+            return result;
+        } finally {
+            FIND_TASKS_PAGE_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Changes every task in all projects that matches a given condition.
+     * <p>
+     * Each project is changed in one step with Project.updateWhere, so other threads
+     * see either none or all of the changes in a project.
+     *
+     * @param matcher the rule used to match tasks
+     * @param update the values to set on the matching tasks
+     * @return the number of tasks that were changed
+     * @throws IllegalStateException if the update sets takenBy and a matching task is already
+     *         taken; the projects before that one have then already been changed
+     */
+    public int updateWhere(ITaskMatcher matcher, TaskUpdate update) {
+        int changed = 0;
+        for (Project p : getProjects()) {
+            changed += p.updateWhere(matcher, update);
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the tasks in all projects that were last updated between two dates.
+     * <p>
+     * Only the projects with a task updated on one of the days are asked, and each answers
+     * from its own date index, so the cost depends on the number of matching tasks and not
+     * on the total number of tasks. The first call loads the tasks of projects that were
+     * not loaded yet, to learn their dates.
+     *
+     * @param from the first date to include
+     * @param to the last date to include
+     * @return the matching tasks, each together with its project, ordered by project ID
+     *         and in task order within each project
+     */
+    public List<ProjectTask> findTasksUpdatedBetween(LocalDate from, LocalDate to) {
+        long start = UPDATED_BETWEEN_STATS.start();
+        try {
+            indexUndatedProjects();
+            List<ProjectTask> result = new ArrayList<>();
+            if (from.isAfter(to)) {
+                return result;
+            }
+            Set<Project> candidates = new HashSet<>();
+            for (Set<Project> onDay : projectsByDay.subMap((int) from.toEpochDay(), true, (int) to.toEpochDay(), true).values()) {
+                addLive(onDay, candidates);
             }
+            for (Project p : inIdOrder(candidates)) {
+                for (Task t : p.findTasksUpdatedBetween(from, to)) {
+                    result.add(new ProjectTask(p, t));
+                }
+            }
+            return result;
+        } finally {
+            UPDATED_BETWEEN_STATS.stop(start);
         }
+    }
 
-        return result;
+    /**
+     * Returns the n most recently updated tasks in all projects.
+     * <p>
+     * The days are walked from the latest, and only until n tasks are found. Only the date
+     * of the last update is stored, so tasks updated on the same day are ordered by project
+     * ID and then by task ID, the newest task first.
+     *
+     * @param n the largest number of tasks to return
+     * @return at most n tasks, each together with its project, the most recently updated first
+     * @throws IllegalArgumentException if n is negative
+     */
+    public List<ProjectTask> recentlyUpdatedTasks(int n) {
+        long start = RECENTLY_UPDATED_STATS.start();
+        try {
+            if (n < 0) {
+                throw new IllegalArgumentException("n must not be negative");
+            }
+            indexUndatedProjects();
+            List<ProjectTask> result = new ArrayList<>(Math.min(n, 1024));
+            for (Map.Entry<Integer, Set<Project>> e : projectsByDay.descendingMap().entrySet()) {
+                if (result.size() >= n) {
+                    break;
+                }
+                int day = e.getKey();
+                Set<Project> live = new HashSet<>();
+                addLive(e.getValue(), live);
+                for (Project p : inIdOrder(live)) {
+                    if (result.size() >= n) {
+                        break;
+                    }
+                    List<Task> tasks = p.tasksUpdatedOn(day, n - result.size());
+                    if (tasks.isEmpty()) {
+                        forgetDay(p, day, e.getValue());
+                    }
+                    for (Task t : tasks) {
+                        result.add(new ProjectTask(p, t));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            RECENTLY_UPDATED_STATS.stop(start);
+        }
     }
 
+    /**
+     * Returns the task a person should work on next: of the tasks in all projects taken by
+     * the person and not done, the one with the highest priority, then the first by
+     * description, project ID and task ID.
+     * <p>
+     * The tasks of each person are kept in a heap that is updated as tasks are added,
+     * removed, taken, done or given another priority, so this does not search any project.
+     * Of the projects put in with setProjects or restoreProject whose tasks are not loaded
+     * yet, only those where the saved snapshot says the person has open tasks are loaded.
+     * The name is compared ignoring case.
+     * <p>
+     * There is no poll that takes the task out of the queue, and this is on purpose. The
+     * queues only show the tasks as they are, so a task stays the person's next task until
+     * it is done, taken by someone else or removed. A task that was taken out of the queue
+     * while still open would be lost from getWorkload and never come back. To move on to
+     * the next task, set the state of this one to DONE.
+     *
+     * @param takenBy the name of the person
+     * @return the next task together with its project, or null if the person has no open tasks
+     */
+    public ProjectTask getNextTask(String takenBy) {
+        long start = NEXT_TASK_STATS.start();
+        try {
+            return assigneeQueues.peek(takenBy);
+        } finally {
+            NEXT_TASK_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Returns the first k tasks a person should work on, in the order of getNextTask.
+     * Only the tasks returned are looked at, not all tasks of the person.
+     *
+     * @param takenBy the name of the person
+     * @param k the largest number of tasks to return
+     * @return at most k tasks, each together with its project, the next one first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<ProjectTask> getNextTasks(String takenBy, int k) {
+        long start = NEXT_TASKS_STATS.start();
+        try {
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative");
+            }
+            return assigneeQueues.first(takenBy, k);
+        } finally {
+            NEXT_TASKS_STATS.stop(start);
+        }
+    }
+
+    /**
+     * Returns how many tasks in all projects a person has taken and not done.
+     *
+     * @param takenBy the name of the person, compared ignoring case
+     * @return the number of open tasks of the person
+     */
+    public int getWorkload(String takenBy) {
+        return assigneeQueues.size(takenBy);
+    }
 
+    /**
+     * Returns how many tasks every person has taken and not done, for example to give
+     * new tasks to the people with the fewest.
+     *
+     * @return the number of open tasks by name, in alphabetical order, for everyone with at least one
+     */
+    public Map<String, Integer> getWorkloads() {
+        return assigneeQueues.sizes();
+    }
+
+    /**
+     * Adds the projects of a day that are still managed here to a set. Projects that
+     * were removed are dropped from the day on the way.
+     */
+    private void addLive(Set<Project> onDay, Set<Project> live) {
+        for (Project p : onDay) {
+            if (projectsById.get(p.getId()) == p) {
+                live.add(p);
+            } else {
+                onDay.remove(p);
+            }
+        }
+    }
+
+    private static List<Project> inIdOrder(Set<Project> projectSet) {
+        List<Project> sorted = new ArrayList<>(projectSet);
+        sorted.sort(Comparator.comparingInt(Project::getId));
+        return sorted;
+    }
+
+    /**
+     * Takes a project out of a day whose tasks have all been updated since. The project is
+     * locked, so a task updated on that day at the same time cannot be lost.
+     */
+    private void forgetDay(Project project, int day, Set<Project> onDay) {
+        synchronized (project) {
+            if (project.tasksUpdatedOn(day, 1).isEmpty()) {
+                onDay.remove(project);
+            }
+        }
+    }
+
+    /**
+     * Adds the days of the projects that were put in with setProjects or restoreProject
+     * and have not been asked for their days yet.
+     */
+    private void indexUndatedProjects() {
+        for (Project p : undatedProjects) {
+            for (int day : p.updatedDays()) {
+                updatedOn(p, day);
+            }
+            undatedProjects.remove(p);
+        }
+    }
+
+    /**
+     * Called by a project, while it is locked, when one of its tasks is last updated on a day.
+     */
+    void updatedOn(Project project, int day) {
+        Set<Project> onDay = projectsByDay.get(day);
+        if (onDay == null) {
+            onDay = projectsByDay.computeIfAbsent(day, d -> ConcurrentHashMap.newKeySet());
+        }
+        onDay.add(project);
+    }
+
+    void taskAdded(Project project, Task task) {
+        assigneeQueues.update(project, task, null);
+        for (ModelListener l : listeners) {
+            l.taskAdded(project, task);
+        }
+        publish(ChangeEvent.Type.TASK_ADDED, project, task.getId());
+    }
+
+    void tasksAdded(Project project, List<Task> tasks) {
+        for (Task t : tasks) {
+            assigneeQueues.update(project, t, null);
+        }
+        for (ModelListener l : listeners) {
+            l.tasksAdded(project, tasks);
+        }
+        ChangeEventBus bus = changeEvents;
+        if (bus != null) {
+            for (Task t : tasks) {
+                bus.publish(new ChangeEvent(ChangeEvent.Type.TASK_ADDED, project, t.getId(), null, null));
+            }
+        }
+    }
+
+    /**
+     * Reports tasks changed in one step by Project.updateWhere. The old values are given
+     * in the same order as the tasks.
+     */
+    void tasksUpdated(Project project, List<Task> tasks, TaskPrio[] oldPrios, TaskState[] oldStates,
+                      String[] oldTakenBys) {
+        for (int i = 0; i < tasks.size(); i++) {
+            assigneeQueues.update(project, tasks.get(i), oldTakenBys[i]);
+        }
+        for (ModelListener l : listeners) {
+            l.tasksUpdated(project, tasks);
+        }
+        ChangeEventBus bus = changeEvents;
+        if (bus != null) {
+            for (int i = 0; i < tasks.size(); i++) {
+                publishChanges(bus, project, tasks.get(i), oldPrios[i], oldStates[i], oldTakenBys[i]);
+            }
+        }
+    }
+
+    void taskRemoved(Project project, Task task) {
+        assigneeQueues.remove(project, task);
+        for (ModelListener l : listeners) {
+            l.taskRemoved(project, task);
+        }
+        publish(ChangeEvent.Type.TASK_REMOVED, project, task.getId());
+    }
+
+    /**
+     * Reports a task changed by one of its setters, called by the project while it is locked.
+     */
+    void taskUpdated(Project project, Task task, TaskPrio oldPrio, TaskState oldState, String oldTakenBy) {
+        assigneeQueues.update(project, task, oldTakenBy);
+        for (ModelListener l : listeners) {
+            l.taskUpdated(project, task);
+        }
+        ChangeEventBus bus = changeEvents;
+        if (bus != null) {
+            publishChanges(bus, project, task, oldPrio, oldState, oldTakenBy);
+        }
+    }
+
+    private void publish(ChangeEvent.Type type, Project project, int taskId) {
+        ChangeEventBus bus = changeEvents;
+        if (bus != null) {
+            bus.publish(new ChangeEvent(type, project, taskId, null, null));
+        }
+    }
+
+    /**
+     * Publishes one event for each value of the task that differs from its old value.
+     */
+    private static void publishChanges(ChangeEventBus bus, Project project, Task task,
+                                       TaskPrio oldPrio, TaskState oldState, String oldTakenBy) {
+        TaskState state = task.getState();
+        if (state != oldState) {
+            bus.publish(new ChangeEvent(ChangeEvent.Type.STATE_CHANGED, project, task.getId(), oldState, state));
+        }
+        TaskPrio prio = task.getPrio();
+        if (prio != oldPrio) {
+            bus.publish(new ChangeEvent(ChangeEvent.Type.PRIO_CHANGED, project, task.getId(), oldPrio, prio));
+        }
+        String takenBy = task.getTakenBy();
+        if (!Objects.equals(takenBy, oldTakenBy)) {
+            bus.publish(new ChangeEvent(ChangeEvent.Type.TAKEN_BY_CHANGED, project, task.getId(), oldTakenBy, takenBy));
+        }
+    }
 }
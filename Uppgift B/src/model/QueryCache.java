@@ -0,0 +1,374 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of search results that a ProjectsManager keeps for Project.findTasks and
+ * ProjectsManager.findProjects, see ProjectsManager.getQueryCache.
+ * <p>
+ * Task searches are cached by project and matcher, so only matchers that compare by value
+ * are cached, see ITaskMatcher.isCacheable. Title searches are cached by the search text.
+ * <p>
+ * Each result is kept together with the version of what it was found in: the change count
+ * of the project for a task search, and the version of the project list for a title search.
+ * A result is only used while that version is the same. So any change to a task makes the
+ * results of its own project invalid at once, adding or removing a project makes the title
+ * results invalid, and all other results stay. An invalid result is dropped the next time
+ * it is asked for.
+ * <p>
+ * The size of the cache is counted as the number of tasks and projects in the kept results,
+ * plus one for each result, so a few large results can take the place of many small ones.
+ * When it is full, a new result is only kept if its search has been run more often lately
+ * than those of the least recently used results it would push out, which are then evicted.
+ * Otherwise the new result is dropped, so a dashboard that cycles through more searches than
+ * fit still gets hits for most of them, where plain LRU would evict every result before it
+ * is used again. How often each search is run is estimated in a small table of counters
+ * that are halved now and then, so searches that are no longer run are forgotten (TinyLFU).
+ * <p>
+ * The cache is split into segments, one per core rounded up to a power of two, and each
+ * search is kept in the segment picked by the hash of its key. Every segment has its own
+ * lock, LRU order and counters, so threads that search different projects at the same
+ * time, such as the workers of a parallel search, seldom wait for each other. Each segment
+ * gets an equal part of the size, and a result larger than one part is not kept.
+ * <p>
+ * The size is read from the system property "projects.queryCache", default 100000;
+ * 0 turns the cache off.
+ */
+public final class QueryCache {
+
+    static final int DEFAULT_CAPACITY = Integer.getInteger("projects.queryCache", 100_000);
+
+    static final int SEGMENTS = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final int SKETCH_SIZE = 1 << 14;
+    private static final int SKETCH_MASK = SKETCH_SIZE - 1;
+    private static final int MAX_FREQUENCY = 15;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile int capacity;
+
+    QueryCache(int capacity) {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        setCapacity(capacity);
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * Returns a kept result if it was found in the given version.
+     *
+     * @return the result, which must not be changed, or null if there is none
+     */
+    <T> List<T> get(Object key, long version) {
+        if (capacity == 0) {
+            return null;
+        }
+        return segmentFor(key).get(key, version);
+    }
+
+    /**
+     * Keeps a result found in the given version. If the cache would get too full, the result
+     * is only kept if its search is run more often than those of the least recently used
+     * results that would make room, and these are then evicted. A result that is not kept
+     * counts as evicted. A result larger than a segment is not kept at all.
+     * <p>
+     * The list itself is kept, so the caller must not change it afterwards.
+     */
+    void put(Object key, long version, List<?> result) {
+        if (capacity == 0) {
+            return;
+        }
+        segmentFor(key).put(key, version, result);
+    }
+
+    /**
+     * Changes the size of the cache, evicting the least recently used results if
+     * it is now too full.
+     *
+     * @param capacity the largest number of tasks and projects to keep, 0 to turn the cache off
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        int share = (int) (((long) capacity + segments.length - 1) / segments.length);
+        for (Segment segment : segments) {
+            segment.setCapacity(share);
+        }
+    }
+
+    /**
+     * Returns the size of the cache.
+     *
+     * @return the largest number of tasks and projects kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Drops all kept results. The counts are not reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of kept results.
+     *
+     * @return the number of results in the cache
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns how full the cache is.
+     *
+     * @return the number of tasks and projects in the kept results, plus one per result
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns how many searches were answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns how many searches had to be run, including those whose result was invalid.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Returns how many results were evicted to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Returns how many results were dropped because what they were found in had changed.
+     *
+     * @return the number of invalidated results
+     */
+    public long getInvalidationCount() {
+        long invalidations = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                invalidations += segment.invalidations;
+            }
+        }
+        return invalidations;
+    }
+
+    /**
+     * Returns the counts and size of the cache.
+     *
+     * @return a short summary of the cache
+     */
+    @Override
+    public String toString() {
+        return "QueryCache " + getHitCount() + " hits, " + getMissCount() + " misses, "
+                + getEvictionCount() + " evictions, " + getInvalidationCount() + " invalidations, "
+                + getSize() + " results, weight " + getWeight() + " of " + capacity
+                + " in " + segments.length + " segments";
+    }
+
+    /**
+     * One part of the cache, with its own lock, LRU order and frequency counters.
+     */
+    private static final class Segment {
+        private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final byte[] frequencies = new byte[SKETCH_SIZE];
+        private int accesses;
+        private int capacity;
+        private long weight;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long invalidations;
+
+        @SuppressWarnings("unchecked")
+        private synchronized <T> List<T> get(Object key, long version) {
+            recordAccess(key);
+            Entry e = entries.get(key);
+            if (e == null) {
+                misses++;
+                return null;
+            }
+            if (e.version != version) {
+                entries.remove(key);
+                weight -= e.weight;
+                invalidations++;
+                misses++;
+                return null;
+            }
+            hits++;
+            return (List<T>) e.result;
+        }
+
+        private synchronized void put(Object key, long version, List<?> result) {
+            int size = result.size() + 1;
+            if (size > capacity) {
+                return;
+            }
+            Entry old = entries.remove(key);
+            if (old != null) {
+                weight -= old.weight;
+            }
+            if (weight + size > capacity) {
+                if (!admit(key, weight + size - capacity)) {
+                    evictions++;
+                    return;
+                }
+                evictOver(capacity - size);
+            }
+            entries.put(key, new Entry(version, result, size));
+            weight += size;
+        }
+
+        /**
+         * Tells whether a search is run more often than all the least recently used ones
+         * whose results would have to be evicted to free the given weight.
+         */
+        private boolean admit(Object key, long needed) {
+            int candidate = frequency(key);
+            long freed = 0;
+            Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+            while (freed < needed && it.hasNext()) {
+                Map.Entry<Object, Entry> victim = it.next();
+                if (frequency(victim.getKey()) >= candidate) {
+                    return false;
+                }
+                freed += victim.getValue().weight;
+            }
+            return true;
+        }
+
+        /**
+         * Counts one run of a search in the four counters of its key, and halves all counters
+         * after every ten runs per counter, so the counts follow what is run lately.
+         */
+        private void recordAccess(Object key) {
+            int hash = key.hashCode();
+            for (int i = 0; i < 4; i++) {
+                int index = counterIndex(hash, i);
+                if (frequencies[index] < MAX_FREQUENCY) {
+                    frequencies[index]++;
+                }
+            }
+            if (++accesses == 10 * SKETCH_SIZE) {
+                for (int i = 0; i < SKETCH_SIZE; i++) {
+                    frequencies[i] >>= 1;
+                }
+                accesses = 0;
+            }
+        }
+
+        /**
+         * Returns how often a search was run lately, the lowest of its counters. Other keys
+         * sharing a counter can only make the estimate too high, never too low.
+         */
+        private int frequency(Object key) {
+            int hash = key.hashCode();
+            int lowest = MAX_FREQUENCY;
+            for (int i = 0; i < 4; i++) {
+                lowest = Math.min(lowest, frequencies[counterIndex(hash, i)]);
+            }
+            return lowest;
+        }
+
+        private void evictOver(int limit) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (weight > limit && it.hasNext()) {
+                weight -= it.next().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+
+        private synchronized void setCapacity(int capacity) {
+            this.capacity = capacity;
+            evictOver(capacity);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private static int counterIndex(int hash, int i) {
+        int h = (hash + i) * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & SKETCH_MASK;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final List<?> result;
+        private final int weight;
+
+        private Entry(long version, List<?> result, int weight) {
+            this.version = version;
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+}
@@ -8,17 +8,35 @@ import java.time.LocalDate;
  * <p>
  * A task has an ID, description, priority, state, who is responsible for it,
  * and the date when it was last updated.
+ * <p>
+ * When its project uses column storage, a task is a view of one row of the project's
+ * TaskColumns: it only keeps its ID and reads and writes its other values in the columns,
+ * under the project lock. Such a view becomes an ordinary task again when it is removed.
+ * <p>
+ * The values and the columns of a task are volatile. Setters change them under the project
+ * lock, and a getter of an ordinary task reads its value without the lock, yet always sees
+ * the last value set by any thread. A view keeps no values of its own: they are cleared when
+ * a task becomes a view and read back from the row when it stops being one. So a getter reads
+ * the value first and only trusts it if it is set and the task is still not a view; otherwise
+ * it takes the lock and reads the row.
  *
  * @author Naher Islam & Vanessa Rådström
  * @version 1.0
  */
 public class Task implements Comparable<Task>, Serializable  {
+    private static final long serialVersionUID = -7565730188676053088L;
+
     private final int id;
-    private String description;
-    private TaskPrio prio;
-    private TaskState state;
-    private String takenBy;
-    private LocalDate lastUpdated;
+    private volatile String description;
+    private volatile TaskPrio prio;
+    private volatile TaskState state;
+    private volatile String takenBy;
+    private volatile LocalDate lastUpdated;
+    private transient volatile Project owner;
+    private transient volatile int position;
+    private transient volatile TaskColumns columns;
+    private transient volatile Project home;
+    private transient boolean frozen;
 
     /**
      * Creates a new task with a specific ID, description, and priority.
@@ -39,6 +57,155 @@ public class Task implements Comparable<Task>, Serializable  {
 
     }
 
+    /**
+     * Creates a task with all of its values given.
+     * <p>
+     * This is used when tasks are restored from saved data,
+     * where the state and the last updated date must be kept as they were.
+     *
+     * @param id the unique ID of the task
+     * @param descr a short description of what the task is about
+     * @param prio the priority level of the task
+     * @param state the current state of the task
+     * @param takenBy the person responsible for the task, or null if none
+     * @param lastUpdated the date when the task was last updated
+     */
+    public Task(int id, String descr, TaskPrio prio, TaskState state, String takenBy, LocalDate lastUpdated)
+    {
+        this.id = id;
+        this.description = descr;
+        this.prio = prio;
+        this.state = state;
+        this.takenBy = takenBy;
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * Creates a view of a row of a project's task columns.
+     */
+    static Task view(Project owner, TaskColumns columns, int id, int row)
+    {
+        Task task = new Task(id, null, null, null, null, null);
+        task.owner = owner;
+        task.attach(columns, row);
+        return task;
+    }
+
+    /**
+     * Returns a copy of this task that belongs to no project and cannot be changed,
+     * for a ProjectSnapshot. Called under the project lock.
+     */
+    Task frozenCopy()
+    {
+        Task copy = new Task(id, getDescription(), getPrio(), getState(), getTakenBy(), getLastUpdated());
+        copy.frozen = true;
+        return copy;
+    }
+
+    private void checkNotFrozen()
+    {
+        if (frozen) {
+            throw new UnsupportedOperationException("Task " + id + " is part of a read-only snapshot");
+        }
+    }
+
+    /**
+     * Turns this task into a view of a row, after its values were written to the row.
+     * Called under the project lock. The values are cleared after columns is set, so that
+     * a getter that still finds them set may return them, see the class comment.
+     */
+    void attach(TaskColumns columns, int row)
+    {
+        if (home == null) {
+            home = columns.getOwner();
+        }
+        this.position = row;
+        this.columns = columns;
+        description = null;
+        prio = null;
+        state = null;
+        takenBy = null;
+        lastUpdated = null;
+    }
+
+    /**
+     * Makes a view an ordinary task again, holding the values of its row.
+     * Called under the project lock before the row is removed. The values are set before
+     * columns is cleared, so no getter sees an ordinary task without them.
+     */
+    void detach()
+    {
+        TaskColumns c = columns;
+        if (c != null) {
+            int row = row();
+            description = c.descriptionAt(row);
+            prio = c.prioAt(row);
+            state = c.stateAt(row);
+            takenBy = c.takenByAt(row);
+            lastUpdated = LocalDate.ofEpochDay(c.lastUpdatedDayAt(row));
+            columns = null;
+        }
+    }
+
+    /**
+     * Tells whether this is a view of a row that another view has removed since.
+     * Called under the project lock.
+     */
+    boolean isRemovedView()
+    {
+        return columns != null && columns.rowOf(id, position) < 0;
+    }
+
+    /**
+     * Finds the row of a view, which moves when tasks before it are removed.
+     * Called under the project lock.
+     */
+    private int row()
+    {
+        int row = columns.rowOf(id, position);
+        if (row < 0) {
+            throw new IllegalStateException("Task " + id + " is no longer in its project");
+        }
+        position = row;
+        return row;
+    }
+
+    /**
+     * Sets the project this task belongs to, so that the project
+     * can be told when the task changes.
+     *
+     * @param owner the project that holds this task, or null
+     */
+    void setOwner(Project owner)
+    {
+        this.owner = owner;
+    }
+
+    Project getOwner()
+    {
+        return owner;
+    }
+
+    /**
+     * Returns the position of this task in its project's task list.
+     *
+     * @return the position, starting at 0
+     */
+    int getPosition()
+    {
+        if (columns == null) {
+            return position;
+        }
+        synchronized (lock()) {
+            return columns == null ? position : row();
+        }
+    }
+
+    void setPosition(int position)
+    {
+        this.position = position;
+    }
+
     /**
      * Returns the ID number of this task.
      *
@@ -56,7 +223,13 @@ public class Task implements Comparable<Task>, Serializable  {
      */
     public String getDescription()
     {
-        return description;
+        String value = description;
+        if (value != null && columns == null) {
+            return value;
+        }
+        synchronized (lock()) {
+            return columns == null ? description : columns.descriptionAt(row());
+        }
     }
 
     /**
@@ -66,7 +239,13 @@ public class Task implements Comparable<Task>, Serializable  {
      */
     public TaskPrio getPrio()
     {
-        return prio;
+        TaskPrio value = prio;
+        if (value != null && columns == null) {
+            return value;
+        }
+        synchronized (lock()) {
+            return columns == null ? prio : columns.prioAt(row());
+        }
     }
 
     /**
@@ -78,7 +257,13 @@ public class Task implements Comparable<Task>, Serializable  {
      */
     public TaskState getState()
     {
-        return state;
+        TaskState value = state;
+        if (value != null && columns == null) {
+            return value;
+        }
+        synchronized (lock()) {
+            return columns == null ? state : columns.stateAt(row());
+        }
     }
 
     /**
@@ -87,7 +272,13 @@ public class Task implements Comparable<Task>, Serializable  {
      * @return the last updated date
      */
     public LocalDate getLastUpdated() {
-        return lastUpdated;
+        LocalDate value = lastUpdated;
+        if (value != null && columns == null) {
+            return value;
+        }
+        synchronized (lock()) {
+            return columns == null ? lastUpdated : LocalDate.ofEpochDay(columns.lastUpdatedDayAt(row()));
+        }
     }
 
     /**
@@ -97,7 +288,13 @@ public class Task implements Comparable<Task>, Serializable  {
      */
     public String getTakenBy()
     {
-        return takenBy;
+        String value = takenBy;
+        if (value != null && columns == null) {
+            return value;
+        }
+        synchronized (lock()) {
+            return columns == null ? takenBy : columns.takenByAt(row());
+        }
     }
 
     /**
@@ -106,18 +303,24 @@ public class Task implements Comparable<Task>, Serializable  {
      * Can only be done once — if already assigned, an exception is thrown.
      *
      * @param takenBy the name or email of the person taking the task
-     * @throws IllegalStateException if the task is already taken
+     * @throws IllegalStateException if the task is already taken, or the manager refuses changes,
+     *         see ProjectsManager.refuseChanges
+     * @throws UnsupportedOperationException if the task is part of a ProjectSnapshot
      */
     public void setTakenBy(String takenBy)
     {
-        if(this.takenBy != null)
-        {
-            throw new IllegalStateException("Not possible");
-        }
+        checkNotFrozen();
+        synchronized (lock()) {
+            checkWritable();
+            if(getTakenBy() != null)
+            {
+                throw new IllegalStateException("Not possible");
+            }
 
-        this.takenBy = takenBy;
-
-        lastUpdated = LocalDate.now();
+            LocalDate oldUpdated = getLastUpdated();
+            apply(null, null, takenBy, LocalDate.now());
+            notifyOwner(getPrio(), getState(), null, oldUpdated);
+        }
 
     }
 
@@ -127,11 +330,19 @@ public class Task implements Comparable<Task>, Serializable  {
      * Also updates the last updated date.
      *
      * @param state the new state of the task
+     * @throws UnsupportedOperationException if the task is part of a ProjectSnapshot
+     * @throws IllegalStateException if the manager refuses changes, see ProjectsManager.refuseChanges
      */
     public void setState(TaskState state)
     {
-        this.state = state;
-        lastUpdated = LocalDate.now();
+        checkNotFrozen();
+        synchronized (lock()) {
+            checkWritable();
+            TaskState oldState = getState();
+            LocalDate oldUpdated = getLastUpdated();
+            apply(null, state, null, LocalDate.now());
+            notifyOwner(getPrio(), oldState, getTakenBy(), oldUpdated);
+        }
     }
 
     /**
@@ -140,11 +351,71 @@ public class Task implements Comparable<Task>, Serializable  {
      * Also updates the last updated date.
      *
      * @param prio the new priority level
+     * @throws UnsupportedOperationException if the task is part of a ProjectSnapshot
+     * @throws IllegalStateException if the manager refuses changes, see ProjectsManager.refuseChanges
      */
     public void setPrio(TaskPrio prio)
     {
-        this.prio = prio;
-        lastUpdated = LocalDate.now();
+        checkNotFrozen();
+        synchronized (lock()) {
+            checkWritable();
+            TaskPrio oldPrio = getPrio();
+            LocalDate oldUpdated = getLastUpdated();
+            apply(prio, null, null, LocalDate.now());
+            notifyOwner(oldPrio, getState(), getTakenBy(), oldUpdated);
+        }
+    }
+
+    /**
+     * Changes the values that are not null and sets the last updated date, without
+     * telling the project. Used by Project.updateWhere, which holds the project lock
+     * and updates its indexes and listeners once for all changed tasks.
+     */
+    void apply(TaskPrio prio, TaskState state, String takenBy, LocalDate today)
+    {
+        if (columns != null) {
+            columns.update(row(), prio, state, takenBy, today);
+            return;
+        }
+        if (prio != null) {
+            this.prio = prio;
+        }
+        if (state != null) {
+            this.state = state;
+        }
+        if (takenBy != null) {
+            this.takenBy = takenBy;
+        }
+        lastUpdated = today;
+    }
+
+    /**
+     * Returns the lock that guards changes to this task: its project if it has one,
+     * so that the project's indexes are updated together with the task.
+     */
+    private Object lock()
+    {
+        Project p = owner;
+        return p != null ? p : this;
+    }
+
+    /**
+     * Throws if the manager of this task's project refuses changes.
+     * Called under the project lock before the task is changed.
+     */
+    private void checkWritable()
+    {
+        Project p = owner;
+        if (p != null) {
+            p.checkWritable();
+        }
+    }
+
+    private void notifyOwner(TaskPrio oldPrio, TaskState oldState, String oldTakenBy, LocalDate oldUpdated)
+    {
+        if (owner != null) {
+            owner.taskUpdated(this, oldPrio, oldState, oldTakenBy, oldUpdated);
+        }
     }
 
     /**
@@ -158,12 +429,45 @@ public class Task implements Comparable<Task>, Serializable  {
     @Override
     public int compareTo(Task other)
     {
-        int result = this.prio.compareTo(other.prio);
+        int result = other.getPrio().compareTo(getPrio()); // highest priority first
         if(result !=0)
         {
             return result;
         }
-        return this.description.compareTo(other.description);
+        return getDescription().compareTo(other.getDescription());
+    }
+
+    /**
+     * Tells whether another object is the same task. In column storage a new view is made
+     * each time a task is looked up, so all views of the same task of the same project are
+     * equal, also after the task is removed and its views stop being views. A task that has
+     * never been in column storage is only equal to itself.
+     * <p>
+     * The project a task was first a view in is kept for this and never changes, so two
+     * tasks that are equal stay equal. Task IDs are not reused within a project.
+     *
+     * @param o the object to compare with
+     * @return true if o is this task
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        Project h = home;
+        return h != null && o instanceof Task other && other.home == h && other.id == id;
+    }
+
+    /**
+     * Returns a hash code that agrees with equals.
+     *
+     * @return the hash code, based on the task ID
+     */
+    @Override
+    public int hashCode()
+    {
+        return Integer.hashCode(id);
     }
 
     /**
@@ -175,7 +479,18 @@ public class Task implements Comparable<Task>, Serializable  {
     public String toString() {
         return String.format(
                 "  [Task ID: %d | Description: %s | Prio: %s | State: %s | Taken by: %s | Last updated: %s]",
-                id, description, prio, state, takenBy == null ? "-" : takenBy, lastUpdated
+                id, getDescription(), getPrio(), getState(), getTakenBy() == null ? "-" : getTakenBy(), getLastUpdated()
         );
     }
+
+    /**
+     * Writes a view as an ordinary task, with the values of its row.
+     */
+    private Object writeReplace()
+    {
+        if (columns == null) {
+            return this;
+        }
+        return new Task(id, getDescription(), getPrio(), getState(), getTakenBy(), getLastUpdated());
+    }
 }
@@ -0,0 +1,298 @@
+package model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The tasks of one project stored column by column, used when the project is in column storage.
+ * <p>
+ * Instead of one Task object per task, each value has its own array: the IDs in an int array,
+ * priority and state as bytes, the last updated date as an int day number, and the assignee
+ * as an int code into a dictionary of the names used in the project. Only the descriptions
+ * stay as String references. This takes far less memory per task than separate Task objects
+ * with their dates, and matchers can read the arrays directly with the row methods, see
+ * ITaskMatcher.matchRow.
+ * <p>
+ * Row i is the i:th task of the project, the same position that TaskIndex uses. The list
+ * methods give out Task objects that are views of a row. A view finds its row again by its ID,
+ * so it stays valid when tasks before it are removed. Adding a task turns the added Task object
+ * into such a view. The project holds its lock for every change, and views read under it.
+ */
+public class TaskColumns extends AbstractList<Task> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final TaskPrio[] PRIOS = TaskPrio.values();
+    private static final TaskState[] STATES = TaskState.values();
+
+    private final transient Project owner;
+    private int size;
+    private int[] ids;
+    private String[] descriptions;
+    private byte[] prios;
+    private byte[] states;
+    private int[] takenByCodes;
+    private int[] lastUpdatedDays;
+    private final ArrayList<String> names;
+    private final HashMap<String, Integer> codes;
+    private boolean idsAscending = true;
+
+    TaskColumns(Project owner, int capacity) {
+        this.owner = owner;
+        capacity = Math.max(capacity, 8);
+        this.ids = new int[capacity];
+        this.descriptions = new String[capacity];
+        this.prios = new byte[capacity];
+        this.states = new byte[capacity];
+        this.takenByCodes = new int[capacity];
+        this.lastUpdatedDays = new int[capacity];
+        this.names = new ArrayList<>();
+        this.names.add(null); // code 0 means nobody
+        this.codes = new HashMap<>();
+    }
+
+    /**
+     * Returns the project whose tasks these are.
+     */
+    Project getOwner() {
+        return owner;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view of the task in a row.
+     */
+    @Override
+    public Task get(int row) {
+        checkRow(row);
+        return Task.view(owner, this, ids[row], row);
+    }
+
+    /**
+     * Adds the values of a task as a new last row, and turns the task into a view of that row.
+     */
+    @Override
+    public boolean add(Task task) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        if (row > 0 && task.getId() <= ids[row - 1]) {
+            idsAscending = false;
+        }
+        ids[row] = task.getId();
+        write(row, task);
+        task.attach(this, row);
+        return true;
+    }
+
+    /**
+     * Replaces the values in a row with those of the task, and turns the task into a view of that row.
+     *
+     * @return a task that is not a view, holding the values the row had before
+     */
+    @Override
+    public Task set(int row, Task task) {
+        Task old = copyOf(row);
+        if (ids[row] != task.getId()) {
+            ids[row] = task.getId();
+            idsAscending = false;
+        }
+        write(row, task);
+        task.attach(this, row);
+        return old;
+    }
+
+    /**
+     * Removes a row. The rows after it move down by one.
+     *
+     * @return a task that is not a view, holding the values the row had
+     */
+    @Override
+    public Task remove(int row) {
+        Task old = copyOf(row);
+        int moved = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, moved);
+        System.arraycopy(descriptions, row + 1, descriptions, row, moved);
+        System.arraycopy(prios, row + 1, prios, row, moved);
+        System.arraycopy(states, row + 1, states, row, moved);
+        System.arraycopy(takenByCodes, row + 1, takenByCodes, row, moved);
+        System.arraycopy(lastUpdatedDays, row + 1, lastUpdatedDays, row, moved);
+        size--;
+        descriptions[size] = null;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Makes room for at least the given number of rows.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, grown);
+        descriptions = Arrays.copyOf(descriptions, grown);
+        prios = Arrays.copyOf(prios, grown);
+        states = Arrays.copyOf(states, grown);
+        takenByCodes = Arrays.copyOf(takenByCodes, grown);
+        lastUpdatedDays = Arrays.copyOf(lastUpdatedDays, grown);
+    }
+
+    private void write(int row, Task task) {
+        descriptions[row] = task.getDescription();
+        prios[row] = (byte) task.getPrio().ordinal();
+        states[row] = (byte) task.getState().ordinal();
+        takenByCodes[row] = code(task.getTakenBy());
+        lastUpdatedDays[row] = (int) task.getLastUpdated().toEpochDay();
+    }
+
+    /**
+     * Changes the values given as non-null in a row. Used by views.
+     */
+    void update(int row, TaskPrio prio, TaskState state, String takenBy, LocalDate lastUpdated) {
+        if (prio != null) {
+            prios[row] = (byte) prio.ordinal();
+        }
+        if (state != null) {
+            states[row] = (byte) state.ordinal();
+        }
+        if (takenBy != null) {
+            takenByCodes[row] = code(takenBy);
+        }
+        lastUpdatedDays[row] = (int) lastUpdated.toEpochDay();
+    }
+
+    private int code(String takenBy) {
+        if (takenBy == null) {
+            return 0;
+        }
+        Integer code = codes.get(takenBy);
+        if (code == null) {
+            code = names.size();
+            names.add(takenBy);
+            codes.put(takenBy, code);
+        }
+        return code;
+    }
+
+    /**
+     * Returns a task that is not a view, with the values of a row.
+     */
+    Task copyOf(int row) {
+        checkRow(row);
+        Task task = new Task(ids[row], descriptions[row], prioAt(row), stateAt(row), takenByAt(row),
+                LocalDate.ofEpochDay(lastUpdatedDays[row]));
+        task.setPosition(row);
+        return task;
+    }
+
+    /**
+     * Finds the row of the task with the given ID, trying the hint first.
+     *
+     * @return the row, or -1 if no row has the ID
+     */
+    int rowOf(int id, int hint) {
+        if (hint >= 0 && hint < size && ids[hint] == id) {
+            return hint;
+        }
+        if (idsAscending) {
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            return row >= 0 ? row : -1;
+        }
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+    }
+
+    /**
+     * Returns the ID of the task in a row.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the task ID
+     */
+    public int idAt(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Returns the description of the task in a row.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the task description
+     */
+    public String descriptionAt(int row) {
+        return descriptions[row];
+    }
+
+    /**
+     * Returns the priority of the task in a row.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the task priority
+     */
+    public TaskPrio prioAt(int row) {
+        return PRIOS[prios[row]];
+    }
+
+    /**
+     * Returns the state of the task in a row.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the task state
+     */
+    public TaskState stateAt(int row) {
+        return STATES[states[row]];
+    }
+
+    /**
+     * Returns the person who has taken the task in a row.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the assignee, or null if nobody has taken the task
+     */
+    public String takenByAt(int row) {
+        return names.get(takenByCodes[row]);
+    }
+
+    /**
+     * Returns the date the task in a row was last updated, as a day number
+     * (see LocalDate.toEpochDay), without creating a LocalDate.
+     *
+     * @param row the row, from 0 to size() - 1
+     * @return the last updated day
+     */
+    public int lastUpdatedDayAt(int row) {
+        return lastUpdatedDays[row];
+    }
+
+    /**
+     * Saves the tasks as ordinary Task objects, so Java serialization of a project
+     * does not depend on the storage it used.
+     */
+    private Object writeReplace() {
+        List<Task> tasks = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            tasks.add(copyOf(row));
+        }
+        return tasks;
+    }
+}
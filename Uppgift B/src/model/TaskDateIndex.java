@@ -0,0 +1,302 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An index over the last updated dates of the tasks of one project, ordered by date.
+ * <p>
+ * For each day that some task was last updated on, it keeps the IDs of those tasks in a
+ * sorted int array. The days are kept in a tree, so the tasks updated between two dates,
+ * or the most recently updated tasks, are found by walking only the days asked for.
+ * IDs are used instead of positions, since they do not move when a task is removed.
+ * <p>
+ * An ID array costs four bytes per task, but adding or removing one ID shifts the IDs after
+ * it in its day. Changes to many tasks at once should therefore use moveAll, which goes
+ * through each affected day only once.
+ */
+class TaskDateIndex {
+    private final TreeMap<Integer, Ids> byDay;
+    private int size;
+
+    TaskDateIndex() {
+        this.byDay = new TreeMap<>();
+    }
+
+    /**
+     * Creates an index over the given tasks.
+     */
+    static TaskDateIndex build(List<Task> tasks) {
+        TaskDateIndex index = new TaskDateIndex();
+        for (Task t : tasks) {
+            index.add(t);
+        }
+        return index;
+    }
+
+    static int day(Task task) {
+        return (int) task.getLastUpdated().toEpochDay();
+    }
+
+    void add(Task task) {
+        add(day(task), task.getId());
+    }
+
+    void remove(Task task) {
+        remove(day(task), task.getId());
+    }
+
+    void replace(Task oldTask, Task newTask) {
+        remove(oldTask);
+        add(newTask);
+    }
+
+    void add(int day, int id) {
+        if (byDay.computeIfAbsent(day, d -> new Ids()).add(id)) {
+            size++;
+        }
+    }
+
+    void remove(int day, int id) {
+        Ids ids = byDay.get(day);
+        if (ids != null && ids.remove(id)) {
+            size--;
+            if (ids.size == 0) {
+                byDay.remove(day);
+            }
+        }
+    }
+
+    /**
+     * Moves a task to another day after its last updated date changed.
+     */
+    void move(int id, int oldDay, int newDay) {
+        if (oldDay != newDay) {
+            remove(oldDay, id);
+            add(newDay, id);
+        }
+    }
+
+    /**
+     * Moves many tasks to the same new day, going through each old day and the new day once.
+     *
+     * @param ids the IDs of the tasks
+     * @param oldDays the day each task was on, in the same order as ids
+     * @param newDay the day all the tasks are on now
+     */
+    void moveAll(int[] ids, int[] oldDays, int newDay) {
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            keys[i] = (long) oldDays[i] << 32 | ids[i];
+        }
+        Arrays.sort(keys); // by old day, then by ID
+
+        int[] moved = new int[keys.length];
+        int movedCount = 0;
+        int i = 0;
+        while (i < keys.length) {
+            int day = (int) (keys[i] >> 32);
+            int from = movedCount;
+            for (; i < keys.length && (int) (keys[i] >> 32) == day; i++) {
+                moved[movedCount++] = (int) keys[i];
+            }
+            if (day == newDay) {
+                movedCount = from; // these stay where they are
+                continue;
+            }
+            Ids old = byDay.get(day);
+            if (old != null) {
+                size -= old.removeAll(moved, from, movedCount);
+                if (old.size == 0) {
+                    byDay.remove(day);
+                }
+            }
+        }
+        if (movedCount > 0) {
+            int[] sorted = Arrays.copyOf(moved, movedCount);
+            Arrays.sort(sorted);
+            size += byDay.computeIfAbsent(newDay, d -> new Ids()).addAll(sorted);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the latest day any task was updated on, or null if there are no tasks.
+     */
+    Integer latestDay() {
+        return byDay.isEmpty() ? null : byDay.lastKey();
+    }
+
+    /**
+     * Tells whether the task with the given ID is indexed under the given day.
+     */
+    boolean contains(int day, int id) {
+        Ids ids = byDay.get(day);
+        return ids != null && ids.indexOf(id) >= 0;
+    }
+
+    /**
+     * Returns the days that some task was last updated on, in ascending order.
+     */
+    int[] days() {
+        return byDay.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the IDs of the tasks last updated from one day to another, both included.
+     * The IDs are ordered by day, and by ID within a day.
+     */
+    int[] idsBetween(int fromDay, int toDay) {
+        if (fromDay > toDay) {
+            return new int[0];
+        }
+        NavigableMap<Integer, Ids> range = byDay.subMap(fromDay, true, toDay, true);
+        int count = 0;
+        for (Ids ids : range.values()) {
+            count += ids.size;
+        }
+        int[] result = new int[count];
+        int n = 0;
+        for (Ids ids : range.values()) {
+            System.arraycopy(ids.ids, 0, result, n, ids.size);
+            n += ids.size;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of at most limit tasks, latest day first and highest ID first within a day.
+     */
+    int[] latestIds(int limit) {
+        int[] result = new int[Math.min(limit, size)];
+        int n = 0;
+        for (Map.Entry<Integer, Ids> e : byDay.descendingMap().entrySet()) {
+            n = e.getValue().copyDescending(result, n);
+            if (n == result.length) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of at most limit tasks last updated on the given day, highest ID first.
+     */
+    int[] latestIdsOn(int day, int limit) {
+        Ids ids = byDay.get(day);
+        if (ids == null) {
+            return new int[0];
+        }
+        int[] result = new int[Math.min(limit, ids.size)];
+        ids.copyDescending(result, 0);
+        return result;
+    }
+
+    /**
+     * A sorted set of task IDs, kept in an int array.
+     */
+    private static class Ids {
+        private int[] ids = new int[4];
+        private int size;
+
+        int indexOf(int id) {
+            // tasks are mostly added with a higher ID than any before
+            if (size > 0 && ids[size - 1] == id) {
+                return size - 1;
+            }
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        boolean add(int id) {
+            int i = size > 0 && id > ids[size - 1] ? -size - 1 : indexOf(id);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+            return true;
+        }
+
+        boolean remove(int id) {
+            int i = indexOf(id);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Merges sorted IDs into the set in one pass.
+         *
+         * @return how many of the IDs were not in the set before
+         */
+        int addAll(int[] sorted) {
+            int[] merged = new int[size + sorted.length];
+            int a = 0;
+            int b = 0;
+            int n = 0;
+            while (a < size || b < sorted.length) {
+                if (b == sorted.length || (a < size && ids[a] < sorted[b])) {
+                    merged[n++] = ids[a++];
+                } else if (a == size || sorted[b] < ids[a]) {
+                    merged[n++] = sorted[b++];
+                } else {
+                    merged[n++] = ids[a++];
+                    b++;
+                }
+            }
+            int added = n - size;
+            ids = merged;
+            size = n;
+            return added;
+        }
+
+        /**
+         * Removes sorted IDs, taken from part of an array, from the set in one pass.
+         *
+         * @return how many of the IDs were in the set
+         */
+        int removeAll(int[] sorted, int from, int to) {
+            int b = from;
+            int n = 0;
+            for (int a = 0; a < size; a++) {
+                while (b < to && sorted[b] < ids[a]) {
+                    b++;
+                }
+                if (b < to && sorted[b] == ids[a]) {
+                    b++;
+                } else {
+                    ids[n++] = ids[a];
+                }
+            }
+            int removed = size - n;
+            size = n;
+            return removed;
+        }
+
+        /**
+         * Copies IDs, highest first, into result from position n until result is full.
+         *
+         * @return the position after the last copied ID
+         */
+        int copyDescending(int[] result, int n) {
+            for (int i = size - 1; i >= 0 && n < result.length; i--) {
+                result[n++] = ids[i];
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package model;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Secondary indexes over the tasks of one project, by priority, state and assignee.
+ * <p>
+ * Each index entry is a bit set of task positions, where position i is the i:th task
+ * in the project's task list. Reading the set bits in order therefore gives the matching
+ * tasks in list order, the same order a full scan would give.
+ * Assignees are case-folded, so lookups ignore case like TakenByMatcher does.
+ */
+class TaskIndex {
+    private final Map<TaskPrio, BitSet> byPrio;
+    private final Map<TaskState, BitSet> byState;
+    private final Map<String, BitSet> byTakenBy;
+
+    TaskIndex() {
+        this.byPrio = new EnumMap<>(TaskPrio.class);
+        for (TaskPrio p : TaskPrio.values()) {
+            byPrio.put(p, new BitSet());
+        }
+        this.byState = new EnumMap<>(TaskState.class);
+        for (TaskState s : TaskState.values()) {
+            byState.put(s, new BitSet());
+        }
+        this.byTakenBy = new HashMap<>();
+    }
+
+    /**
+     * Creates an index over the given tasks, whose positions must already be set.
+     */
+    static TaskIndex build(List<Task> tasks) {
+        TaskIndex index = new TaskIndex();
+        for (Task t : tasks) {
+            index.add(t);
+        }
+        return index;
+    }
+
+    void add(Task task) {
+        int pos = task.getPosition();
+        byPrio.get(task.getPrio()).set(pos);
+        byState.get(task.getState()).set(pos);
+        if (task.getTakenBy() != null) {
+            byTakenBy.computeIfAbsent(CaseFolding.fold(task.getTakenBy()), k -> new BitSet()).set(pos);
+        }
+    }
+
+    /**
+     * Moves a task between index entries after one of its values changed.
+     */
+    void update(Task task, TaskPrio oldPrio, TaskState oldState, String oldTakenBy) {
+        int pos = task.getPosition();
+        if (oldPrio != task.getPrio()) {
+            byPrio.get(oldPrio).clear(pos);
+            byPrio.get(task.getPrio()).set(pos);
+        }
+        if (oldState != task.getState()) {
+            byState.get(oldState).clear(pos);
+            byState.get(task.getState()).set(pos);
+        }
+        if (oldTakenBy != task.getTakenBy()) {
+            if (oldTakenBy != null) {
+                clearTakenBy(CaseFolding.fold(oldTakenBy), pos);
+            }
+            if (task.getTakenBy() != null) {
+                byTakenBy.computeIfAbsent(CaseFolding.fold(task.getTakenBy()), k -> new BitSet()).set(pos);
+            }
+        }
+    }
+
+    /**
+     * Takes a task out of the index. The positions of all later tasks move down by one,
+     * the same way they do in the task list.
+     */
+    void remove(Task task) {
+        int pos = task.getPosition();
+        for (BitSet b : byPrio.values()) {
+            removePosition(b, pos);
+        }
+        for (BitSet b : byState.values()) {
+            removePosition(b, pos);
+        }
+        for (BitSet b : byTakenBy.values()) {
+            removePosition(b, pos);
+        }
+        byTakenBy.values().removeIf(BitSet::isEmpty);
+    }
+
+    /**
+     * Replaces the task at a position with another task.
+     */
+    void replace(Task oldTask, Task newTask) {
+        if (oldTask.getTakenBy() != null) {
+            clearTakenBy(CaseFolding.fold(oldTask.getTakenBy()), oldTask.getPosition());
+        }
+        update(newTask, oldTask.getPrio(), oldTask.getState(), null);
+    }
+
+    int countWithPrio(TaskPrio prio) {
+        return byPrio.get(prio).cardinality();
+    }
+
+    int countWithState(TaskState state) {
+        return byState.get(state).cardinality();
+    }
+
+    int countTakenBy(String takenBy) {
+        BitSet b = takenBy == null ? null : byTakenBy.get(CaseFolding.fold(takenBy));
+        return b == null ? 0 : b.cardinality();
+    }
+
+    BitSet withPrio(TaskPrio prio) {
+        return (BitSet) byPrio.get(prio).clone();
+    }
+
+    BitSet withState(TaskState state) {
+        return (BitSet) byState.get(state).clone();
+    }
+
+    BitSet takenBy(String takenBy) {
+        BitSet b = takenBy == null ? null : byTakenBy.get(CaseFolding.fold(takenBy));
+        return b == null ? new BitSet() : (BitSet) b.clone();
+    }
+
+    /**
+     * Returns the positions of the tasks that anybody has taken.
+     */
+    BitSet taken() {
+        BitSet result = new BitSet();
+        for (BitSet b : byTakenBy.values()) {
+            result.or(b);
+        }
+        return result;
+    }
+
+    private void clearTakenBy(String key, int pos) {
+        BitSet b = byTakenBy.get(key);
+        if (b != null) {
+            b.clear(pos);
+            if (b.isEmpty()) {
+                byTakenBy.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes a bit and moves all higher bits down by one.
+     */
+    private static void removePosition(BitSet bits, int pos) {
+        int length = bits.length();
+        if (length <= pos) {
+            return;
+        }
+        BitSet higher = bits.get(pos + 1, length);
+        bits.clear(pos, length);
+        for (int i = higher.nextSetBit(0); i >= 0; i = higher.nextSetBit(i + 1)) {
+            bits.set(pos + i);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the tasks of a project the first time they are needed.
+ * <p>
+ * This lets a project be created from saved data without reading all its tasks,
+ * so that only the projects that are actually used have their tasks in memory.
+ */
+public interface TaskLoader {
+
+    /**
+     * Reads the tasks of the project.
+     *
+     * @return the tasks, in the order they were added
+     */
+    List<Task> loadTasks();
+
+    /**
+     * Returns the number of tasks loadTasks will return, without reading them.
+     *
+     * @return the number of tasks
+     */
+    int getTaskCount();
+
+    /**
+     * Returns how many tasks that are not done each person has taken, without reading
+     * the tasks. The names are as written on the tasks, so names that only differ in
+     * case are counted apart.
+     * <p>
+     * This lets ProjectsManager.getNextTask load only the projects where the person has
+     * open tasks.
+     *
+     * @return the number of open tasks by name, or null if this was not saved with the tasks
+     */
+    default Map<String, Integer> getOpenTasksByAssignee() {
+        return null;
+    }
+}
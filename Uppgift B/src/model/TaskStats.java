@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * Running totals over the tasks of one project, used by Project.getState
+ * so it does not have to go through every task.
+ * <p>
+ * It counts the tasks in each state. The latest update date used by
+ * Project.getLastUpdated comes from the project's TaskDateIndex instead.
+ */
+class TaskStats {
+    private final int[] stateCounts;
+    private int size;
+
+    TaskStats() {
+        this.stateCounts = new int[TaskState.values().length];
+    }
+
+    void add(Task task) {
+        size++;
+        stateCounts[task.getState().ordinal()]++;
+    }
+
+    void remove(Task task) {
+        size--;
+        stateCounts[task.getState().ordinal()]--;
+    }
+
+    void update(Task task, TaskState oldState) {
+        stateCounts[oldState.ordinal()]--;
+        stateCounts[task.getState().ordinal()]++;
+    }
+
+    void replace(Task oldTask, Task newTask) {
+        remove(oldTask);
+        add(newTask);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int count(TaskState state) {
+        return stateCounts[state.ordinal()];
+    }
+}
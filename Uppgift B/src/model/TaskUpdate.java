@@ -0,0 +1,74 @@
+package model;
+
+/**
+ * A change to make to many tasks at once with Project.updateWhere.
+ * <p>
+ * Only the values that are set are changed, for example
+ * {@code new TaskUpdate().state(TaskState.DONE)} only changes the state.
+ */
+public class TaskUpdate {
+    private TaskPrio prio;
+    private TaskState state;
+    private String takenBy;
+
+    /**
+     * Sets the priority that the tasks should get.
+     *
+     * @param prio the new priority
+     * @return this update
+     */
+    public TaskUpdate prio(TaskPrio prio) {
+        this.prio = prio;
+        return this;
+    }
+
+    /**
+     * Sets the state that the tasks should get.
+     *
+     * @param state the new state
+     * @return this update
+     */
+    public TaskUpdate state(TaskState state) {
+        this.state = state;
+        return this;
+    }
+
+    /**
+     * Sets the person who takes the tasks. Like Task.setTakenBy, this only works
+     * for tasks that nobody has taken yet.
+     *
+     * @param takenBy the name or email of the person taking the tasks
+     * @return this update
+     */
+    public TaskUpdate takenBy(String takenBy) {
+        this.takenBy = takenBy;
+        return this;
+    }
+
+    /**
+     * Returns the new priority, or null if the priority is not changed.
+     *
+     * @return the new priority or null
+     */
+    public TaskPrio getPrio() {
+        return prio;
+    }
+
+    /**
+     * Returns the new state, or null if the state is not changed.
+     *
+     * @return the new state or null
+     */
+    public TaskState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the new assignee, or null if the assignee is not changed.
+     *
+     * @return the new assignee or null
+     */
+    public String getTakenBy() {
+        return takenBy;
+    }
+}
@@ -0,0 +1,112 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted trigram index over project titles, used by ProjectsManager.findProjects.
+ * <p>
+ * Every title is lowercased once when the project is added, and each run of three
+ * characters in it (a trigram) points to the projects whose titles contain it.
+ * A search for a text of three or more characters only has to check the projects
+ * found under the rarest trigram of the text. Shorter texts are searched by going
+ * through the lowercased titles, which still avoids lowercasing every title again.
+ * <p>
+ * Each list of projects keeps the order in which the projects were added,
+ * so results come out in the same order as the manager's list of projects.
+ */
+class TitleIndex {
+    private final Map<Project, String> lowerTitles;
+    private final Map<Long, Set<Project>> postings;
+
+    TitleIndex() {
+        this.lowerTitles = new HashMap<>();
+        this.postings = new HashMap<>();
+    }
+
+    void add(Project project) {
+        String lower = project.getTitle().toLowerCase();
+        lowerTitles.put(project, lower);
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            postings.computeIfAbsent(trigram(lower, i), k -> new LinkedHashSet<>()).add(project);
+        }
+    }
+
+    void remove(Project project) {
+        String lower = lowerTitles.remove(project);
+        if (lower == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            Long key = trigram(lower, i);
+            Set<Project> list = postings.get(key);
+            if (list != null) {
+                list.remove(project);
+                if (list.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        lowerTitles.clear();
+        postings.clear();
+    }
+
+    /**
+     * Finds the projects whose lowercased title contains the lowercased search text.
+     *
+     * @param title the search text
+     * @param allProjects all projects, in the order results should be returned
+     * @return the matching projects
+     */
+    List<Project> find(String title, List<Project> allProjects) {
+        String query = title.toLowerCase();
+        List<Project> result = new ArrayList<>();
+
+        if (query.length() < 3) {
+            for (Project p : allProjects) {
+                if (lowerTitles.get(p).contains(query)) {
+                    result.add(p);
+                }
+            }
+            return result;
+        }
+
+        List<Set<Project>> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            Set<Project> list = postings.get(trigram(query, i));
+            if (list == null) {
+                return result;
+            }
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<Project> smallest = lists.get(0);
+        for (Project p : smallest) {
+            if (inAll(p, lists) && lowerTitles.get(p).contains(query)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    private static boolean inAll(Project p, List<Set<Project>> lists) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
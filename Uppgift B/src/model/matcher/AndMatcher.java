@@ -0,0 +1,161 @@
+package model.matcher;
+
+import model.Project;
+import model.TaskColumns;
+import model.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches tasks that match all of the given matchers.
+ * <p>
+ * When searching a project, the matchers that can use the project's indexes are
+ * run first, the one expected to match the fewest tasks before the others, and their
+ * bit sets of task positions are intersected. Matchers that cannot use the indexes
+ * are then only checked on the tasks that are left.
+ */
+public class AndMatcher implements ITaskMatcher {
+    private final List<ITaskMatcher> matchers;
+
+    public AndMatcher(ITaskMatcher... matchers) {
+        this(Arrays.asList(matchers));
+    }
+
+    public AndMatcher(List<ITaskMatcher> matchers) {
+        if (matchers.isEmpty()) {
+            throw new IllegalArgumentException("AndMatcher needs at least one matcher");
+        }
+        this.matchers = Collections.unmodifiableList(new ArrayList<>(matchers));
+    }
+
+    public List<ITaskMatcher> getMatchers() {
+        return matchers;
+    }
+
+    @Override
+    public boolean match(Task task) {
+        for (ITaskMatcher m : matchers) {
+            if (!m.match(task)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the matchers in the order they are run for the given project:
+     * indexed matchers from the fewest to the most estimated matches, then the
+     * matchers that must be checked task by task, in their original order.
+     *
+     * @param project the project to search
+     * @return the matchers in execution order
+     */
+    public List<ITaskMatcher> plan(Project project) {
+        List<ITaskMatcher> indexed = new ArrayList<>();
+        List<Integer> estimates = new ArrayList<>();
+        List<ITaskMatcher> residual = new ArrayList<>();
+        for (ITaskMatcher m : matchers) {
+            int estimate = m.estimateMatches(project);
+            if (estimate < 0) {
+                residual.add(m);
+            } else {
+                int i = 0;
+                while (i < estimates.size() && estimates.get(i) <= estimate) {
+                    i++;
+                }
+                indexed.add(i, m);
+                estimates.add(i, estimate);
+            }
+        }
+        indexed.addAll(residual);
+        return indexed;
+    }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        for (ITaskMatcher m : matchers) {
+            if (!m.matchRow(columns, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        List<ITaskMatcher> plan = plan(project);
+        BitSet result = plan.get(0).matchPositions(project);
+        if (result == null) {
+            return null; // nothing indexed, a full scan is cheaper
+        }
+
+        List<ITaskMatcher> residual = new ArrayList<>();
+        for (int i = 1; i < plan.size(); i++) {
+            if (result.isEmpty()) {
+                return result;
+            }
+            BitSet next = plan.get(i).matchPositions(project);
+            if (next == null) {
+                residual = plan.subList(i, plan.size());
+                break;
+            }
+            result.and(next);
+        }
+
+        if (!residual.isEmpty()) {
+            project.retainMatching(result, residual.size() == 1 ? residual.get(0) : new AndMatcher(residual));
+        }
+        return result;
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        int lowest = -1;
+        for (ITaskMatcher m : matchers) {
+            int estimate = m.estimateMatches(project);
+            if (estimate >= 0 && (lowest < 0 || estimate < lowest)) {
+                lowest = estimate;
+            }
+        }
+        return lowest;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        for (ITaskMatcher m : matchers) {
+            if (!m.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether another matcher is an AndMatcher of equal matchers in the same order.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AndMatcher other && other.matchers.equals(matchers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * matchers.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < matchers.size(); i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            sb.append(matchers.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
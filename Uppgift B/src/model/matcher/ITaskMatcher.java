@@ -1,8 +1,62 @@
 package model.matcher;
 
+import model.Project;
 import model.Task;
+import model.TaskColumns;
+
+import java.util.BitSet;
 
 public interface ITaskMatcher {
 
     boolean match(Task task);
+
+    /**
+     * Checks one row of a project that keeps its tasks in column storage, reading the
+     * columns directly instead of going through a Task. The default makes a Task view
+     * of the row and calls match, so a matcher only has to override this to be faster.
+     *
+     * @param columns the task columns of the project
+     * @param row the row to check
+     * @return true if the task in the row matches
+     */
+    default boolean matchRow(TaskColumns columns, int row) {
+        return match(columns.get(row));
+    }
+
+    /**
+     * Returns the positions in project.getTasks() of all matching tasks, using the
+     * project's indexes, or null if this matcher cannot be answered from the indexes.
+     * When this returns null, Project.findTasks calls match for every task instead.
+     * The returned bit set is new and may be changed by the caller.
+     *
+     * @param project the project to search
+     * @return the positions of the matching tasks, or null
+     */
+    default BitSet matchPositions(Project project) {
+        return null;
+    }
+
+    /**
+     * Returns how many tasks of the project would match, counted from the project's
+     * indexes, or -1 if this matcher cannot use the indexes. Query plans use this
+     * to check the most selective condition first.
+     *
+     * @param project the project to search
+     * @return the number of matching tasks, or -1 if unknown
+     */
+    default int estimateMatches(Project project) {
+        return -1;
+    }
+
+    /**
+     * Tells whether equal matchers always match the same tasks, so that a search result
+     * can be cached with the matcher as key, see QueryCache. The matchers in this package
+     * override equals and hashCode to compare by value and return true. The default is
+     * false, for matchers such as lambdas that are only equal to themselves.
+     *
+     * @return true if search results for this matcher may be cached
+     */
+    default boolean isCacheable() {
+        return false;
+    }
 }
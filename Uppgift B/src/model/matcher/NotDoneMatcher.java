@@ -1,12 +1,57 @@
 package model.matcher;
 
+import model.Project;
+import model.TaskColumns;
 import model.Task;
 import model.TaskState;
 
+import java.util.BitSet;
+
 public class NotDoneMatcher implements ITaskMatcher {
 
     @Override
     public boolean match(Task task) {
         return task.getState() != TaskState.DONE;
     }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        return columns.stateAt(row) != TaskState.DONE;
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        BitSet result = new BitSet();
+        for (TaskState state : TaskState.values()) {
+            if (state != TaskState.DONE) {
+                result.or(project.positionsWithState(state));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        return project.getTaskCount() - project.countWithState(TaskState.DONE);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NotDoneMatcher;
+    }
+
+    @Override
+    public int hashCode() {
+        return NotDoneMatcher.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "state!=" + TaskState.DONE.name();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package model.matcher;
+
+import model.Project;
+import model.TaskColumns;
+import model.Task;
+
+import java.util.BitSet;
+
+/**
+ * Matches tasks that the given matcher does not match.
+ */
+public class NotMatcher implements ITaskMatcher {
+    private final ITaskMatcher matcher;
+
+    public NotMatcher(ITaskMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    public ITaskMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public boolean match(Task task) {
+        return !matcher.match(task);
+    }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        return !matcher.matchRow(columns, row);
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        BitSet positions = matcher.matchPositions(project);
+        if (positions == null) {
+            return null;
+        }
+        positions.flip(0, project.getTaskCount());
+        return positions;
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        int estimate = matcher.estimateMatches(project);
+        return estimate < 0 ? -1 : project.getTaskCount() - estimate;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return matcher.isCacheable();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NotMatcher other && other.matcher.equals(matcher);
+    }
+
+    @Override
+    public int hashCode() {
+        return ~matcher.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "not " + matcher;
+    }
+}
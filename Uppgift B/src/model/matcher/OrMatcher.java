@@ -0,0 +1,116 @@
+package model.matcher;
+
+import model.Project;
+import model.TaskColumns;
+import model.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches tasks that match at least one of the given matchers.
+ * <p>
+ * When all the matchers can use the project's indexes, their bit sets of
+ * task positions are joined. Otherwise every task is checked.
+ */
+public class OrMatcher implements ITaskMatcher {
+    private final List<ITaskMatcher> matchers;
+
+    public OrMatcher(ITaskMatcher... matchers) {
+        this(Arrays.asList(matchers));
+    }
+
+    public OrMatcher(List<ITaskMatcher> matchers) {
+        if (matchers.isEmpty()) {
+            throw new IllegalArgumentException("OrMatcher needs at least one matcher");
+        }
+        this.matchers = Collections.unmodifiableList(new ArrayList<>(matchers));
+    }
+
+    public List<ITaskMatcher> getMatchers() {
+        return matchers;
+    }
+
+    @Override
+    public boolean match(Task task) {
+        for (ITaskMatcher m : matchers) {
+            if (m.match(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        for (ITaskMatcher m : matchers) {
+            if (m.matchRow(columns, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        if (estimateMatches(project) < 0) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        for (ITaskMatcher m : matchers) {
+            result.or(m.matchPositions(project));
+        }
+        return result;
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        int total = 0;
+        for (ITaskMatcher m : matchers) {
+            int estimate = m.estimateMatches(project);
+            if (estimate < 0) {
+                return -1;
+            }
+            total += estimate;
+        }
+        return Math.min(total, project.getTaskCount());
+    }
+
+    @Override
+    public boolean isCacheable() {
+        for (ITaskMatcher m : matchers) {
+            if (!m.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether another matcher is an OrMatcher of equal matchers in the same order.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OrMatcher other && other.matchers.equals(matchers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 37 * matchers.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < matchers.size(); i++) {
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append(matchers.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
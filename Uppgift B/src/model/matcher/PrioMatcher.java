@@ -1,8 +1,12 @@
 package model.matcher;
 
+import model.Project;
+import model.TaskColumns;
 import model.Task;
 import model.TaskPrio;
 
+import java.util.BitSet;
+
 public class PrioMatcher implements ITaskMatcher {
     private final TaskPrio prio;
 
@@ -14,4 +18,39 @@ public class PrioMatcher implements ITaskMatcher {
     public boolean match(Task task) {
         return task.getPrio() == prio;
     }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        return columns.prioAt(row) == prio;
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        return project.positionsWithPrio(prio);
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        return project.countWithPrio(prio);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PrioMatcher other && other.prio == prio;
+    }
+
+    @Override
+    public int hashCode() {
+        return prio.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "prio=" + prio.name();
+    }
 }
\ No newline at end of file
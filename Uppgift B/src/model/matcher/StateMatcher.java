@@ -0,0 +1,56 @@
+package model.matcher;
+
+import model.Project;
+import model.TaskColumns;
+import model.Task;
+import model.TaskState;
+
+import java.util.BitSet;
+
+public class StateMatcher implements ITaskMatcher {
+    private final TaskState state;
+
+    public StateMatcher(TaskState state) {
+        this.state = state;
+    }
+
+    @Override
+    public boolean match(Task task) {
+        return task.getState() == state;
+    }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        return columns.stateAt(row) == state;
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        return project.positionsWithState(state);
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        return project.countWithState(state);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StateMatcher other && other.state == state;
+    }
+
+    @Override
+    public int hashCode() {
+        return state.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "state=" + state.name();
+    }
+}
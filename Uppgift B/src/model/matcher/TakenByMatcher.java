@@ -1,7 +1,11 @@
 package model.matcher;
 
+import model.Project;
+import model.TaskColumns;
 import model.Task;
 
+import java.util.BitSet;
+
 public class TakenByMatcher implements ITaskMatcher {
     private final String takenBy;
 
@@ -13,4 +17,56 @@ public class TakenByMatcher implements ITaskMatcher {
     public boolean match(Task task) {
         return task.getTakenBy() != null && task.getTakenBy().equalsIgnoreCase(takenBy);
     }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        String taken = columns.takenByAt(row);
+        return taken != null && taken.equalsIgnoreCase(takenBy);
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        return project.positionsTakenBy(takenBy);
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        return project.countTakenBy(takenBy);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Tells whether another matcher looks for the same person, ignoring case as match does.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TakenByMatcher other)) {
+            return false;
+        }
+        return takenBy == null ? other.takenBy == null : takenBy.equalsIgnoreCase(other.takenBy);
+    }
+
+    /**
+     * Returns a hash code of the name with case folded the way equalsIgnoreCase compares.
+     */
+    @Override
+    public int hashCode() {
+        if (takenBy == null) {
+            return 0;
+        }
+        int h = 0;
+        for (int i = 0; i < takenBy.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(takenBy.charAt(i)));
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "takenBy=" + takenBy;
+    }
 }
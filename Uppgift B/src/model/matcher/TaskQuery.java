@@ -0,0 +1,304 @@
+package model.matcher;
+
+import model.Project;
+import model.TaskColumns;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A task query written as text, for example {@code prio=HIGH and state!=DONE and takenBy=alice}.
+ * <p>
+ * A query compares the fields {@code prio}, {@code state} and {@code takenBy} with a value
+ * using {@code =} or {@code !=}, and combines comparisons with {@code and}, {@code or},
+ * {@code not} and parentheses. {@code and} binds harder than {@code or}. Field names,
+ * keywords and enum values ignore case; a value containing spaces can be put in double quotes.
+ * <p>
+ * The query is compiled into AndMatcher, OrMatcher, NotMatcher and the single-field matchers,
+ * so it can be passed to Project.findTasks like any other matcher. The explain method shows
+ * the order in which the conditions will be checked for a given project.
+ */
+public class TaskQuery implements ITaskMatcher {
+    private final String text;
+    private final ITaskMatcher root;
+
+    private TaskQuery(String text, ITaskMatcher root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a query text into a matcher.
+     *
+     * @param text the query text
+     * @return the compiled query
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static TaskQuery parse(String text) {
+        Parser parser = new Parser(text);
+        ITaskMatcher root = parser.parseOr();
+        if (parser.peek() != null) {
+            throw parser.error("Unexpected '" + parser.peek() + "'");
+        }
+        return new TaskQuery(text, root);
+    }
+
+    /**
+     * Returns the compiled matcher tree of this query.
+     *
+     * @return the root matcher
+     */
+    public ITaskMatcher getMatcher() {
+        return root;
+    }
+
+    @Override
+    public boolean match(Task task) {
+        return root.match(task);
+    }
+
+    @Override
+    public boolean matchRow(TaskColumns columns, int row) {
+        return root.matchRow(columns, row);
+    }
+
+    @Override
+    public BitSet matchPositions(Project project) {
+        return root.matchPositions(project);
+    }
+
+    @Override
+    public int estimateMatches(Project project) {
+        return root.estimateMatches(project);
+    }
+
+    /**
+     * Describes how this query is run for the given project: which conditions are
+     * answered from the indexes, in which order, how many tasks each is expected to
+     * match, and which conditions are checked task by task.
+     *
+     * @param project the project the query would be run on
+     * @return a readable description of the query plan, one step per line
+     */
+    public String explain(Project project) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Query: ").append(text).append('\n');
+        sb.append("Tasks in project: ").append(project.getTaskCount()).append('\n');
+        if (root.estimateMatches(project) < 0) {
+            sb.append("Full scan, checking every task against ").append(root).append('\n');
+        } else {
+            explain(root, project, "", sb);
+        }
+        return sb.toString();
+    }
+
+    private static void explain(ITaskMatcher m, Project project, String indent, StringBuilder sb) {
+        int estimate = m.estimateMatches(project);
+        if (m instanceof AndMatcher) {
+            sb.append("AND, intersect index results (at most ").append(estimate).append(" tasks)\n");
+            int step = 1;
+            for (ITaskMatcher child : ((AndMatcher) m).plan(project)) {
+                if (child.estimateMatches(project) < 0) {
+                    sb.append(indent).append("  ").append(step++).append(". check ").append(child)
+                            .append(" on each remaining task\n");
+                } else {
+                    sb.append(indent).append("  ").append(step++).append(". ");
+                    explain(child, project, indent + "     ", sb);
+                }
+            }
+        } else if (m instanceof OrMatcher) {
+            sb.append("OR, join index results (at most ").append(estimate).append(" tasks)\n");
+            for (ITaskMatcher child : ((OrMatcher) m).getMatchers()) {
+                sb.append(indent).append("  - ");
+                explain(child, project, indent + "    ", sb);
+            }
+        } else if (m instanceof NotMatcher) {
+            sb.append("NOT, complement of index result (").append(estimate).append(" tasks)\n");
+            sb.append(indent).append("  - ");
+            explain(((NotMatcher) m).getMatcher(), project, indent + "    ", sb);
+        } else {
+            sb.append("index ").append(m).append(" (").append(estimate).append(" tasks)\n");
+        }
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return root.isCacheable();
+    }
+
+    /**
+     * Tells whether another query compiles to an equal matcher, even if its text is
+     * written differently, for example with other spacing.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TaskQuery other && other.root.equals(root);
+    }
+
+    @Override
+    public int hashCode() {
+        return root.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * A recursive descent parser for the query text.
+     */
+    private static class Parser {
+        private final String text;
+        private final List<String> tokens;
+        private final List<Integer> offsets;
+        private int next;
+
+        Parser(String text) {
+            this.text = text;
+            this.tokens = new ArrayList<>();
+            this.offsets = new ArrayList<>();
+            tokenize();
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                int start = i;
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if (c == '(' || c == ')' || c == '=') {
+                    i++;
+                } else if (c == '!' && i + 1 < text.length() && text.charAt(i + 1) == '=') {
+                    i += 2;
+                } else if (c == '"') {
+                    int end = text.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Missing closing quote at position " + i + ": " + text);
+                    }
+                    i = end + 1;
+                } else {
+                    while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                            && "()=!\"".indexOf(text.charAt(i)) < 0) {
+                        i++;
+                    }
+                    if (i == start) {
+                        throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i + ": " + text);
+                    }
+                }
+                tokens.add(text.substring(start, i));
+                offsets.add(start);
+            }
+        }
+
+        String peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            String token = peek();
+            if (token != null && token.equalsIgnoreCase(keyword)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        private String expect(String what) {
+            String token = peek();
+            if (token == null) {
+                throw error("Expected " + what + " but the query ended");
+            }
+            next++;
+            return token;
+        }
+
+        IllegalArgumentException error(String message) {
+            int position = next < offsets.size() ? offsets.get(next) : text.length();
+            return new IllegalArgumentException(message + " at position " + position + ": " + text);
+        }
+
+        ITaskMatcher parseOr() {
+            List<ITaskMatcher> terms = new ArrayList<>();
+            terms.add(parseAnd());
+            while (acceptKeyword("or")) {
+                terms.add(parseAnd());
+            }
+            return terms.size() == 1 ? terms.get(0) : new OrMatcher(terms);
+        }
+
+        private ITaskMatcher parseAnd() {
+            List<ITaskMatcher> factors = new ArrayList<>();
+            factors.add(parseFactor());
+            while (acceptKeyword("and")) {
+                factors.add(parseFactor());
+            }
+            return factors.size() == 1 ? factors.get(0) : new AndMatcher(factors);
+        }
+
+        private ITaskMatcher parseFactor() {
+            if (acceptKeyword("not")) {
+                return new NotMatcher(parseFactor());
+            }
+            if ("(".equals(peek())) {
+                next++;
+                ITaskMatcher inner = parseOr();
+                if (!")".equals(peek())) {
+                    throw error("Expected ')'");
+                }
+                next++;
+                return inner;
+            }
+            return parseComparison();
+        }
+
+        private ITaskMatcher parseComparison() {
+            String field = expect("a field name");
+            int fieldIndex = next - 1;
+            String op = expect("'=' or '!='");
+            if (!op.equals("=") && !op.equals("!=")) {
+                next--;
+                throw error("Expected '=' or '!=' after " + field);
+            }
+            String value = expect("a value");
+            if (value.startsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+
+            ITaskMatcher matcher;
+            switch (field.toLowerCase(Locale.ROOT)) {
+                case "prio":
+                    matcher = new PrioMatcher(parseEnum(TaskPrio.class, value));
+                    break;
+                case "state":
+                    matcher = new StateMatcher(parseEnum(TaskState.class, value));
+                    break;
+                case "takenby":
+                    matcher = new TakenByMatcher(value);
+                    break;
+                default:
+                    next = fieldIndex;
+                    throw error("Unknown field '" + field + "', expected prio, state or takenBy");
+            }
+            return op.equals("=") ? matcher : new NotMatcher(matcher);
+        }
+
+        private <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+            for (E e : type.getEnumConstants()) {
+                if (e.name().equalsIgnoreCase(value)) {
+                    return e;
+                }
+            }
+            next--;
+            throw error("Unknown " + type.getSimpleName() + " value '" + value + "'");
+        }
+    }
+}
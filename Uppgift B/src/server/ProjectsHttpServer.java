@@ -0,0 +1,346 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.Json;
+import model.Project;
+import model.ProjectTask;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+import model.TitleNotUniqueException;
+import model.matcher.ITaskMatcher;
+import model.matcher.TaskQuery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A headless JSON over HTTP interface to a ProjectsManager, built on the JDK's own HTTP server.
+ * <p>
+ * Every request runs on its own virtual thread, so many slow clients do not need a
+ * platform thread each. The model locks with synchronized, and on JDK 21 a virtual thread
+ * that waits for such a lock, or runs while holding one, stays on its carrier thread
+ * (it is pinned). So requests that wait for a busy project do hold up a carrier, and
+ * as many of them as there are cores can hold up all requests until the lock is free.
+ * The endpoints are:
+ * <pre>
+ * GET    /projects?title=text                 find projects by title (all projects without title)
+ * POST   /projects                            add a project: {"title": ..., "description": ...}
+ * GET    /projects/{id}                       one project
+ * GET    /projects/{id}/tasks?query=q         tasks of a project, optionally matching a TaskQuery
+ * GET    /projects/{id}/tasks?query=q&amp;top=k   the k most important of those tasks, highest priority first
+ * POST   /projects/{id}/tasks                 add a task: {"description": ..., "prio": "HIGH"}
+ * GET    /projects/{id}/tasks/{taskId}        one task
+ * PATCH  /projects/{id}/tasks/{taskId}        change a task: any of {"prio", "state", "takenBy"}
+ * GET    /tasks?query=q                       tasks in all projects matching a TaskQuery
+ * </pre>
+ * The task lists take {@code offset} and {@code limit} parameters; the default limit is
+ * {@value #DEFAULT_LIMIT}. Errors are answered with a status code and {@code {"error": ...}}.
+ */
+public class ProjectsHttpServer {
+
+    /** The number of tasks returned by a list endpoint when no limit is given. */
+    public static final int DEFAULT_LIMIT = 100;
+
+    /** How many connections may wait to be accepted. */
+    private static final int BACKLOG = 4096;
+
+    /** Request bodies larger than this are refused. */
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private static final Logger LOG = Logger.getLogger(ProjectsHttpServer.class.getName());
+
+    private final ProjectsManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server for the manager listening on the given port. The server is not started.
+     *
+     * @param manager the projects to serve
+     * @param port the TCP port to listen on, or 0 for any free port
+     * @throws IOException if the port could not be opened
+     */
+    public ProjectsHttpServer(ProjectsManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/projects", this::handle);
+        server.createContext("/tasks", this::handle);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting new connections and waits for the requests being handled to finish.
+     * After this returns no request changes the model any more, so it can be saved.
+     *
+     * @param maxWaitSeconds the longest time to wait for running requests
+     */
+    public void stop(int maxWaitSeconds) {
+        server.stop(maxWaitSeconds);
+        executor.close(); // waits for the request threads that are still running
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            // path[0] is the empty string before the first slash
+            if (path.length == 2 && path[1].equals("tasks")) {
+                requireMethod(method, "GET", "GET");
+                findTasks(exchange, params);
+            } else if (path.length == 2 && path[1].equals("projects")) {
+                if (method.equals("POST")) {
+                    addProject(exchange);
+                } else {
+                    requireMethod(method, "GET", "GET, POST");
+                    findProjects(exchange, params);
+                }
+            } else if (path.length >= 3 && path[1].equals("projects")) {
+                Project project = manager.getProjectById(parseId(path[2]));
+                if (project == null) {
+                    throw new NotFoundException("No project with ID " + path[2]);
+                }
+                if (path.length == 3) {
+                    requireMethod(method, "GET", "GET");
+                    send(exchange, 200, Json.project(project));
+                } else if (path.length == 4 && path[3].equals("tasks")) {
+                    if (method.equals("POST")) {
+                        addTask(exchange, project);
+                    } else {
+                        requireMethod(method, "GET", "GET, POST");
+                        listTasks(exchange, project, params);
+                    }
+                } else if (path.length == 5 && path[3].equals("tasks")) {
+                    Task task = project.getTaskById(parseId(path[4]));
+                    if (task == null) {
+                        throw new NotFoundException("No task with ID " + path[4] + " in project " + project.getId());
+                    }
+                    if (method.equals("PATCH")) {
+                        updateTask(exchange, project, task);
+                    } else {
+                        requireMethod(method, "GET", "GET, PATCH");
+                        send(exchange, 200, Json.task(task));
+                    }
+                } else {
+                    throw new NotFoundException("Unknown path " + exchange.getRequestURI().getPath());
+                }
+            } else {
+                throw new NotFoundException("Unknown path " + exchange.getRequestURI().getPath());
+            }
+        } catch (NotFoundException e) {
+            send(exchange, 404, Json.error(e.getMessage()));
+        } catch (MethodNotAllowedException e) {
+            exchange.getResponseHeaders().set("Allow", e.getMessage());
+            send(exchange, 405, Json.error("Method not allowed, use " + e.getMessage()));
+        } catch (TitleNotUniqueException | ConflictException e) {
+            send(exchange, 409, Json.error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, Json.error(e.getMessage()));
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Request failed: " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+            send(exchange, 500, Json.error("Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void findProjects(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String title = params.get("title");
+        List<Project> projects = title == null ? manager.getProjects() : manager.findProjects(title);
+        send(exchange, 200, Json.projects(projects));
+    }
+
+    private void addProject(HttpExchange exchange) throws IOException {
+        Map<String, String> body = readBody(exchange);
+        String title = required(body, "title");
+        String description = body.getOrDefault("description", "");
+        Project project = manager.addProject(title, description == null ? "" : description);
+        send(exchange, 201, Json.project(project));
+    }
+
+    private void listTasks(HttpExchange exchange, Project project, Map<String, String> params) throws IOException {
+        String query = params.get("query");
+        ITaskMatcher matcher = query == null ? t -> true : TaskQuery.parse(query);
+        List<Task> tasks = params.containsKey("top")
+                ? project.topTasks(matcher, intParam(params, "top", DEFAULT_LIMIT))
+                : project.findTasks(matcher, intParam(params, "offset", 0), intParam(params, "limit", DEFAULT_LIMIT));
+        send(exchange, 200, Json.tasks(tasks));
+    }
+
+    private void findTasks(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String query = params.get("query");
+        if (query == null) {
+            throw new IllegalArgumentException("Missing parameter: query");
+        }
+        int offset = intParam(params, "offset", 0);
+        int limit = intParam(params, "limit", DEFAULT_LIMIT);
+        List<ProjectTask> found = manager.findTasks(TaskQuery.parse(query), offset, limit);
+        send(exchange, 200, Json.projectTasks(found));
+    }
+
+    private void addTask(HttpExchange exchange, Project project) throws IOException {
+        Map<String, String> body = readBody(exchange);
+        String description = required(body, "description");
+        String prio = body.get("prio");
+        Task task = project.addTask(description, prio == null ? TaskPrio.MEDIUM : parseEnum(TaskPrio.class, prio));
+        send(exchange, 201, Json.task(task));
+    }
+
+    private void updateTask(HttpExchange exchange, Project project, Task task) throws IOException {
+        Map<String, String> body = readBody(exchange);
+        TaskPrio prio = body.get("prio") == null ? null : parseEnum(TaskPrio.class, body.get("prio"));
+        TaskState state = body.get("state") == null ? null : parseEnum(TaskState.class, body.get("state"));
+        String takenBy = body.get("takenBy");
+        String json;
+        synchronized (project) { // all changes of one request are made together
+            if (takenBy != null && task.getTakenBy() != null) {
+                throw new ConflictException("Task " + task.getId() + " is already taken by " + task.getTakenBy());
+            }
+            if (prio != null && prio != task.getPrio()) {
+                task.setPrio(prio);
+            }
+            if (state != null && state != task.getState()) {
+                task.setState(state);
+            }
+            if (takenBy != null) {
+                task.setTakenBy(takenBy);
+            }
+            json = Json.task(task);
+        }
+        send(exchange, 200, json);
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> queryParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number: " + value);
+        }
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new NotFoundException("Not an ID: " + text);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName() + " value: " + value);
+        }
+    }
+
+    private static void requireMethod(String method, String expected, String allowed) {
+        if (!method.equals(expected)) {
+            throw new MethodNotAllowedException(allowed);
+        }
+    }
+
+    private static class NotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A request that clashes with the current data, such as taking a task that is already taken.
+     */
+    private static class ConflictException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    private static class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String allowed) {
+            super(allowed);
+        }
+    }
+}
@@ -15,6 +15,8 @@ import java.util.Scanner;
  * The user selects actions on current project in the projectLoop method.
  */
 class CurrentProjectUI {
+    private static final int PAGE_SIZE = 20;
+
     private Project currentProject;
     private final Scanner scan;
 
@@ -52,6 +54,10 @@ class CurrentProjectUI {
                 case 'H':
                     viewTasks(new PrioMatcher(TaskPrio.HIGH));
                     break;
+                case 'M':
+                    System.out.println(currentProject.toString());
+                    printTasks(currentProject.topTasks(new NotDoneMatcher(), PAGE_SIZE));
+                    break;
                 case 'A':
                     addTask();
                     break;
@@ -69,8 +75,26 @@ class CurrentProjectUI {
 
     private void viewTasks(ITaskMatcher matcher) {
         System.out.println(currentProject.toString());
-        List<Task> tasks = currentProject.findTasks(matcher);
-        printTasks(tasks);
+        int offset = 0;
+        while (true) {
+            // fetch one extra task to know if there is another page
+            List<Task> tasks = currentProject.findTasks(matcher, offset, PAGE_SIZE + 1);
+            boolean more = tasks.size() > PAGE_SIZE;
+            if (more) {
+                tasks = tasks.subList(0, PAGE_SIZE);
+            }
+            if (offset == 0 || !tasks.isEmpty()) {
+                printTasks(tasks);
+            }
+            if (!more) {
+                return;
+            }
+            System.out.print("Show more tasks (Y)es (N)o? ");
+            if (InputUtils.scanAndReturnFirstChar(scan) != 'Y') {
+                return;
+            }
+            offset += PAGE_SIZE;
+        }
     }
 
     private void addTask() {
@@ -110,6 +134,7 @@ class CurrentProjectUI {
         System.out.println("T - list tasks taken by ...");
         System.out.println("N - list tasks not done");
         System.out.println("H - list high priority tasks");
+        System.out.println("M - list the most important tasks not done");
         System.out.println("A - add task");
         System.out.println("U - update task");
         System.out.println("X - exit project menu");
@@ -0,0 +1,26 @@
+import io.ProjectsJournalTest;
+import model.QueryCacheTest;
+import model.TaskColumnsTest;
+import model.TaskSearchTest;
+
+/**
+ * Runs all tests. The tests need no test framework: each is a class with a main method
+ * that throws an AssertionError if a check fails. Compile src and test together and run
+ * this class, for example:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * java -cp out AllTests
+ * </pre>
+ * Run it once more with {@code -Dprojects.taskStorage=columns} to run every test with all
+ * projects in column storage.
+ */
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        TaskSearchTest.main(args);
+        QueryCacheTest.main(args);
+        TaskColumnsTest.main(args);
+        ProjectsJournalTest.main(args);
+        System.out.println("All tests passed");
+    }
+}
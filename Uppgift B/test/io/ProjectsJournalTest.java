@@ -0,0 +1,188 @@
+package io;
+
+import model.Project;
+import model.ProjectsManager;
+import model.Task;
+import model.TaskPrio;
+import model.TaskState;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * Checks that the journal gives back the changes made through the manager after a restart
+ * or a crash, and that the manager refuses changes once the journal cannot be written.
+ */
+public class ProjectsJournalTest {
+
+    private static final long COMMIT_INTERVAL_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("journaltest").toFile();
+        try {
+            checkReplay(new File(dir, "replay.journal"));
+            checkCrashDuringCheckpoint(new File(dir, "checkpoint.journal"), new File(dir, "projects.bin"));
+            checkTornTail(new File(dir, "torn.journal"));
+            checkBadChecksum(new File(dir, "checksum.journal"));
+            checkRefusedAfterFailure(new File(dir, "failed.journal"));
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("ProjectsJournalTest passed");
+    }
+
+    /**
+     * Makes one of each kind of change, so that every record type is written.
+     */
+    private static void makeChanges(ProjectsManager manager) {
+        Project project = manager.addProject("Alpha", "first");
+        Task done = project.addTask("done", TaskPrio.LOW);
+        done.setState(TaskState.DONE);
+        project.addTask("taken", TaskPrio.HIGH).setTakenBy("ann");
+        project.addTask("long " + "é".repeat(40_000), TaskPrio.MEDIUM).setPrio(TaskPrio.LOW);
+        Project removed = manager.addProject("Beta", "removed again");
+        removed.addTask("gone", TaskPrio.LOW);
+        manager.removeProject(removed);
+        project.removeTask(done);
+    }
+
+    private static void checkReplay(File file) throws IOException {
+        ProjectsManager manager = new ProjectsManager();
+        ProjectsJournal journal = ProjectsJournal.open(file, manager, COMMIT_INTERVAL_MILLIS);
+        makeChanges(manager);
+        journal.close();
+        ProjectsManager restarted = new ProjectsManager();
+        ProjectsJournal.open(file, restarted, COMMIT_INTERVAL_MILLIS).close();
+        check(describe(restarted).equals(describe(manager)), "replay gives back all changes");
+        check(restarted.addProject("Gamma", "").getId() > manager.getProjectById(1).getId() + 1,
+                "IDs of removed projects are not given out again");
+    }
+
+    private static void checkCrashDuringCheckpoint(File file, File snapshot) throws IOException, ClassNotFoundException {
+        ProjectsManager manager = new ProjectsManager();
+        try (ProjectsJournal journal = ProjectsJournal.open(file, manager, COMMIT_INTERVAL_MILLIS)) {
+            makeChanges(manager);
+            journal.flush();
+            // the snapshot is written, then the process dies before the journal is emptied
+            ProjectsFileIO.serializeToFile(snapshot, manager.getProjects());
+        }
+        ProjectsManager restarted = new ProjectsManager();
+        restarted.setProjects(ProjectsFileIO.deSerializeFromFile(snapshot));
+        ProjectsJournal.open(file, restarted, COMMIT_INTERVAL_MILLIS).close();
+        check(describe(restarted).equals(describe(manager)), "replaying on top of a snapshot that has the changes changes nothing");
+    }
+
+    private static void checkTornTail(File file) throws IOException {
+        ProjectsManager manager = new ProjectsManager();
+        ProjectsJournal journal = ProjectsJournal.open(file, manager, COMMIT_INTERVAL_MILLIS);
+        makeChanges(manager);
+        journal.close();
+        long complete = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 0, 0, 9, 1}); // a record cut off in the middle of its header
+        }
+
+        ProjectsManager restarted = new ProjectsManager();
+        ProjectsJournal reopened = ProjectsJournal.open(file, restarted, COMMIT_INTERVAL_MILLIS);
+        check(file.length() == complete, "the torn record is cut off");
+        check(describe(restarted).equals(describe(manager)), "the complete records are kept");
+        restarted.addProject("After", "the crash");
+        reopened.close();
+        ProjectsManager again = new ProjectsManager();
+        ProjectsJournal.open(file, again, COMMIT_INTERVAL_MILLIS).close();
+        check(describe(again).equals(describe(restarted)), "records written after the cut are replayed");
+    }
+
+    private static void checkBadChecksum(File file) throws IOException {
+        ProjectsManager manager = new ProjectsManager();
+        long beforeLast;
+        String expected;
+        try (ProjectsJournal journal = ProjectsJournal.open(file, manager, COMMIT_INTERVAL_MILLIS)) {
+            makeChanges(manager);
+            journal.flush();
+            beforeLast = file.length();
+            expected = describe(manager);
+            manager.getProjectById(1).addTask("last", TaskPrio.HIGH);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        ProjectsManager restarted = new ProjectsManager();
+        ProjectsJournal.open(file, restarted, COMMIT_INTERVAL_MILLIS).close();
+        check(file.length() == beforeLast, "the record with a bad checksum is cut off");
+        check(describe(restarted).equals(expected), "the records before it are kept");
+    }
+
+    private static void checkRefusedAfterFailure(File file) throws Exception {
+        ProjectsManager manager = new ProjectsManager();
+        ProjectsJournal journal = ProjectsJournal.open(file, manager, COMMIT_INTERVAL_MILLIS);
+        Project project = manager.addProject("Alpha", "");
+        project.addTask("kept", TaskPrio.LOW);
+        journal.flush();
+
+        Field channel = ProjectsJournal.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(journal)).close(); // every later write fails
+
+        project.addTask("lost", TaskPrio.LOW);
+        try {
+            journal.flush();
+            throw new AssertionError("flush must report that the batch was not written");
+        } catch (IOException expected) {
+            // the batch with "lost" could not be written
+        }
+        check(manager.isReadOnly(), "the manager refuses changes");
+        int tasks = project.getTaskCount();
+        try {
+            project.addTask("refused", TaskPrio.HIGH);
+            throw new AssertionError("a change must be refused after the journal failed");
+        } catch (IllegalStateException expected) {
+            check(expected.getCause() instanceof IOException, "the refusal tells why: " + expected.getCause());
+        }
+        try {
+            project.getTasks().get(0).setState(TaskState.DONE);
+            throw new AssertionError("a task change must be refused too");
+        } catch (IllegalStateException expected) {
+            // refused before the task was changed
+        }
+        check(project.getTaskCount() == tasks, "the refused task was not added");
+        check(project.getTasks().get(0).getState() == TaskState.TO_DO, "the refused state was not set");
+        try {
+            journal.close();
+            throw new AssertionError("close must report the failure");
+        } catch (IOException expected) {
+            // already failed
+        }
+    }
+
+    /**
+     * Returns all projects and tasks of a manager as text, to compare two managers.
+     */
+    private static String describe(ProjectsManager manager) {
+        StringBuilder text = new StringBuilder();
+        for (Project project : manager.getProjects()) {
+            text.append(project.getId()).append(' ').append(project.getTitle()).append(' ')
+                    .append(project.getDescription()).append(' ').append(project.getCreated())
+                    .append(project.getTasks()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the eviction and admission rules of QueryCache, and that results are only used in
+ * the version they were found in.
+ * <p>
+ * The keys are multiples of 1024, so they all land in the same segment whatever the number
+ * of cores, and the size is chosen so that this segment holds ten: five results of one task.
+ */
+public class QueryCacheTest {
+
+    private static final int SEGMENT_SIZE = 10;
+
+    public static void main(String[] args) {
+        checkLeastRecentlyUsedIsEvicted();
+        checkRareSearchesAreNotAdmitted();
+        checkVersions();
+        checkSizeLimits();
+        checkSegmentsAreSeparate();
+        System.out.println("QueryCacheTest passed");
+    }
+
+    private static Integer key(int i) {
+        return i * 1024;
+    }
+
+    private static QueryCache fullCache() {
+        QueryCache cache = new QueryCache(QueryCache.SEGMENTS * SEGMENT_SIZE);
+        for (int i = 1; i <= 5; i++) {
+            check(cache.get(key(i), 1) == null, "empty cache has no result");
+            cache.put(key(i), 1, List.of(i));
+        }
+        check(cache.getSize() == 5 && cache.getWeight() == SEGMENT_SIZE, "five results fill the segment: " + cache);
+        return cache;
+    }
+
+    private static void checkLeastRecentlyUsedIsEvicted() {
+        QueryCache cache = fullCache();
+        check(cache.get(key(1), 1) != null, "hit");            // 1 is now the most recently used
+        check(cache.get(key(6), 1) == null && cache.get(key(6), 1) == null, "miss");
+        cache.put(key(6), 1, List.of(6));                      // run twice, more often than 2
+        check(cache.getEvictionCount() == 1, "one eviction: " + cache);
+        check(cache.get(key(2), 1) == null, "the least recently used result is evicted");
+        check(cache.get(key(1), 1) != null && cache.get(key(6), 1) != null, "the others stay");
+        check(cache.getHitCount() == 3 && cache.getMissCount() == 8, "counts: " + cache);
+    }
+
+    private static void checkRareSearchesAreNotAdmitted() {
+        QueryCache cache = fullCache();
+        for (int run = 0; run < 3; run++) {
+            for (int i = 1; i <= 5; i++) {
+                cache.get(key(i), 1);
+            }
+        }
+        // a scan of searches run once each must not push out the searches run often
+        for (int i = 100; i < 120; i++) {
+            check(cache.get(key(i), 1) == null, "miss");
+            cache.put(key(i), 1, List.of(i));
+            check(cache.get(key(i), 1) == null, "a search run once is not admitted over frequent ones");
+        }
+        for (int i = 1; i <= 5; i++) {
+            check(cache.get(key(i), 1) != null, "frequent search " + i + " is still kept");
+        }
+        check(cache.getEvictionCount() == 20, "rejected results count as evicted: " + cache);
+    }
+
+    private static void checkVersions() {
+        QueryCache cache = fullCache();
+        check(cache.get(key(1), 1) != null, "same version is used");
+        check(cache.get(key(1), 2) == null, "other version is not used");
+        check(cache.getInvalidationCount() == 1 && cache.getSize() == 4, "invalid result is dropped: " + cache);
+        check(cache.get(key(1), 1) == null, "dropped for good");
+    }
+
+    private static void checkSizeLimits() {
+        QueryCache cache = fullCache();
+        cache.put(key(8), 1, Collections.nCopies(SEGMENT_SIZE, 8));
+        check(cache.get(key(8), 1) == null, "a result larger than a segment is not kept");
+        check(cache.getSize() == 5, "and evicts nothing");
+
+        cache.setCapacity(QueryCache.SEGMENTS * 4);
+        check(cache.getWeight() <= 4 && cache.getSize() == 2, "shrinking evicts down to the new size: " + cache);
+
+        cache.setCapacity(0);
+        long misses = cache.getMissCount();
+        cache.put(key(9), 1, List.of(9));
+        check(cache.get(key(9), 1) == null && cache.getMissCount() == misses, "size 0 turns the cache off");
+    }
+
+    private static void checkSegmentsAreSeparate() {
+        if (QueryCache.SEGMENTS == 1) {
+            return; // a single core, nothing to check
+        }
+        QueryCache cache = fullCache();
+        for (int i = 1; i <= 20; i++) {
+            int other = key(i) + 1; // the next segment
+            cache.get(other, 1);
+            cache.get(other, 1);
+            cache.put(other, 1, List.of(i));
+        }
+        for (int i = 1; i <= 5; i++) {
+            check(cache.get(key(i), 1) != null, "results in other segments do not evict " + i);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
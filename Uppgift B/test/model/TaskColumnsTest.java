@@ -0,0 +1,152 @@
+package model;
+
+import model.matcher.NotDoneMatcher;
+import model.matcher.PrioMatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks that a project in column storage behaves like one with a list of Task objects,
+ * and that the Task views handed out by it keep working when tasks move, change and go away.
+ */
+public class TaskColumnsTest {
+
+    public static void main(String[] args) throws Exception {
+        checkSameAsList();
+        checkTasksHeldAcrossSwitch();
+        checkRemovedViews();
+        checkEquality();
+        checkSerialization();
+        System.out.println("TaskColumnsTest passed");
+    }
+
+    /**
+     * Makes the same random changes to a project in each storage and compares all tasks.
+     */
+    private static void checkSameAsList() {
+        Project list = new Project("list", "d", 1);
+        Project columns = new Project("columns", "d", 2);
+        columns.useColumnStorage();
+        check(!list.isColumnStorage() && columns.isColumnStorage(), "storage");
+        Random random = new Random(7);
+        for (int step = 0; step < 5000; step++) {
+            long seed = random.nextLong();
+            change(list, new Random(seed), step);
+            change(columns, new Random(seed), step);
+            if (step % 101 == 0) {
+                check(list.getTasks().toString().equals(columns.getTasks().toString()), "same tasks after step " + step);
+                check(list.getState() == columns.getState(), "same state after step " + step);
+                check(columns.verifyAggregates(), "aggregates after step " + step);
+            }
+        }
+    }
+
+    private static void change(Project project, Random random, int step) {
+        List<Task> tasks = project.getTasks();
+        int op = random.nextInt(7);
+        if (op > 3 || tasks.isEmpty()) {
+            project.addTask("t" + step, TaskPrio.values()[random.nextInt(3)]);
+            return;
+        }
+        Task task = tasks.get(random.nextInt(tasks.size()));
+        switch (op) {
+            case 0 -> project.removeTask(task);
+            case 1 -> task.setPrio(TaskPrio.values()[random.nextInt(3)]);
+            case 2 -> task.setState(TaskState.values()[random.nextInt(3)]);
+            default -> project.updateWhere(new PrioMatcher(TaskPrio.LOW), new TaskUpdate().state(TaskState.DONE));
+        }
+    }
+
+    private static void checkTasksHeldAcrossSwitch() {
+        Project project = new Project("switch", "d", 1);
+        Task held = project.addTask("one", TaskPrio.LOW);
+        project.addTask("two", TaskPrio.HIGH);
+        project.useColumnStorage();
+
+        Task view = project.getTaskById(held.getId());
+        view.setPrio(TaskPrio.MEDIUM);
+        view.setTakenBy("ann");
+        check(held.getPrio() == TaskPrio.MEDIUM && "ann".equals(held.getTakenBy()), "a task held before the switch reads its row");
+        check("one".equals(held.getDescription()) && held.getState() == TaskState.TO_DO, "unchanged values are read from the row");
+
+        held.setState(TaskState.DONE);
+        check(view.getState() == TaskState.DONE, "a change through the held task is seen by the view");
+        check(project.findTasks(new NotDoneMatcher()).size() == 1, "and by the indexes");
+    }
+
+    private static void checkRemovedViews() {
+        Project project = new Project("remove", "d", 1);
+        project.useColumnStorage();
+        Task first = project.addTask("first", TaskPrio.LOW);
+        Task second = project.addTask("second", TaskPrio.HIGH);
+        second.setTakenBy("bo");
+        Task stale = project.getTaskById(second.getId());
+
+        project.removeTask(first);
+        check(second.getDescription().equals("second") && "bo".equals(second.getTakenBy()), "a view finds its row after a row before it is removed");
+
+        project.removeTask(second);
+        check(project.getTaskCount() == 0, "removed");
+        check(second.getPrio() == TaskPrio.HIGH && "bo".equals(second.getTakenBy()), "the removed view keeps its values");
+        second.setState(TaskState.DONE);
+        check(second.getState() == TaskState.DONE, "and can be changed on its own");
+        try {
+            stale.setPrio(TaskPrio.LOW);
+            throw new AssertionError("another view of a removed task must not be changed");
+        } catch (IllegalStateException expected) {
+            // the task is no longer in its project
+        }
+    }
+
+    private static void checkEquality() {
+        Project project = new Project("equal", "d", 1);
+        project.useColumnStorage();
+        Task added = project.addTask("a", TaskPrio.LOW);
+        Task other = project.addTask("b", TaskPrio.LOW);
+        Task view = project.getTaskById(added.getId());
+        Set<Task> set = new HashSet<>(List.of(view));
+
+        check(added.equals(view) && view.equals(added) && set.contains(added), "views of the same task are equal");
+        check(!added.equals(other), "other tasks are not");
+        project.removeTask(added);
+        check(added.equals(view) && view.equals(added) && set.contains(added), "and stay equal after the task is removed");
+
+        Task plain = new Task(added.getId(), "a", TaskPrio.LOW);
+        check(!plain.equals(added) && plain.equals(plain), "a task never in column storage is only equal to itself");
+        check(!project.getTaskById(other.getId()).equals(new Project("x", "d", 2).addTask("b", TaskPrio.LOW)),
+                "tasks of different projects are not equal");
+    }
+
+    private static void checkSerialization() throws IOException, ClassNotFoundException {
+        Project project = new Project("serial", "d", 1, LocalDate.of(2024, 1, 1));
+        project.useColumnStorage();
+        project.addTask("a", TaskPrio.LOW).setTakenBy("ann");
+        project.addTask("b", TaskPrio.HIGH).setState(TaskState.IN_PROGRESS);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(project);
+        }
+        Project read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (Project) in.readObject();
+        }
+        check(read.getTasks().toString().equals(project.getTasks().toString()), "a column project is written as its values");
+        check(read.getTaskById(2).getState() == TaskState.IN_PROGRESS, "and can be read and searched");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package model;
+
+import model.matcher.ITaskMatcher;
+import model.matcher.NotDoneMatcher;
+import model.matcher.PrioMatcher;
+import model.matcher.StateMatcher;
+import model.matcher.TakenByMatcher;
+import model.matcher.TaskQuery;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the indexed searches give the same results as looking at every task or title.
+ * <p>
+ * Random changes are made to a project, and after every few changes each matcher is run
+ * through Project.findTasks, countTasks, the paged findTasks and topTasks, and compared with
+ * the tasks the matcher accepts one by one. This covers the task indexes and the query planner,
+ * in list storage and in column storage. The title searches of ProjectsManager.findProjects
+ * are compared with checking every title in the same way.
+ */
+public class TaskSearchTest {
+
+    private static final String[] NAMES = {"Al", "al", "AL", "bo", "Bo", "ÄÖ", "äö"};
+
+    public static void main(String[] args) {
+        checkTaskSearches(false);
+        checkTaskSearches(true);
+        checkTitleSearches();
+        System.out.println("TaskSearchTest passed");
+    }
+
+    private static void checkTaskSearches(boolean columns) {
+        Random random = new Random(2);
+        Project project = new Project("search", "d", 1);
+        if (columns) {
+            project.useColumnStorage();
+        }
+        List<ITaskMatcher> matchers = matchers();
+        for (int step = 0; step < 20000; step++) {
+            changeRandomTask(project, random, step);
+            if (step % 97 == 0) {
+                for (ITaskMatcher matcher : matchers) {
+                    compare(project, matcher, random);
+                }
+                check(project.verifyAggregates(), "aggregates after step " + step);
+            }
+        }
+    }
+
+    private static List<ITaskMatcher> matchers() {
+        List<ITaskMatcher> matchers = new ArrayList<>();
+        for (TaskPrio prio : TaskPrio.values()) {
+            matchers.add(new PrioMatcher(prio));
+        }
+        for (TaskState state : TaskState.values()) {
+            matchers.add(new StateMatcher(state));
+        }
+        matchers.add(new NotDoneMatcher());
+        for (String name : NAMES) {
+            matchers.add(new TakenByMatcher(name));
+        }
+        matchers.add(new TakenByMatcher(null));
+        matchers.add(TaskQuery.parse("prio=HIGH and state!=DONE"));
+        matchers.add(TaskQuery.parse("prio=LOW or takenBy=al"));
+        matchers.add(TaskQuery.parse("not (state=DONE or prio=MEDIUM) and takenBy!=bo"));
+        matchers.add(TaskQuery.parse("(prio=HIGH or prio=LOW) and (state=TO_DO or takenBy=\"äö\")"));
+        matchers.add(t -> t.getDescription().endsWith("3"));
+        return matchers;
+    }
+
+    private static void changeRandomTask(Project project, Random random, int step) {
+        int op = random.nextInt(9);
+        List<Task> tasks = project.getTasks();
+        if (op > 5 || tasks.isEmpty()) {
+            project.addTask("t" + step, randomPrio(random));
+            return;
+        }
+        Task task = tasks.get(random.nextInt(tasks.size()));
+        switch (op) {
+            case 1 -> project.removeTask(task);
+            case 2 -> task.setPrio(randomPrio(random));
+            case 3 -> task.setState(TaskState.values()[random.nextInt(3)]);
+            case 4 -> {
+                if (task.getTakenBy() == null) {
+                    task.setTakenBy(NAMES[random.nextInt(NAMES.length)]);
+                }
+            }
+            default -> project.restoreTask(new Task(task.getId(), "r" + step, randomPrio(random),
+                    TaskState.values()[random.nextInt(3)],
+                    random.nextBoolean() ? null : NAMES[random.nextInt(NAMES.length)],
+                    LocalDate.now().minusDays(random.nextInt(5))));
+        }
+    }
+
+    private static TaskPrio randomPrio(Random random) {
+        return TaskPrio.values()[random.nextInt(3)];
+    }
+
+    private static void compare(Project project, ITaskMatcher matcher, Random random) {
+        List<Task> expected = new ArrayList<>();
+        for (Task task : project.getTasks()) {
+            if (matcher.match(task)) {
+                expected.add(task);
+            }
+        }
+        String name = matcher + " in " + (project.isColumnStorage() ? "column" : "list") + " storage";
+        check(project.findTasks(matcher).equals(expected), "findTasks " + name);
+        check(project.countTasks(matcher) == expected.size(), "countTasks " + name);
+
+        int offset = random.nextInt(expected.size() + 2);
+        int limit = random.nextInt(30);
+        List<Task> page = expected.subList(Math.min(offset, expected.size()), Math.min(offset + limit, expected.size()));
+        check(project.findTasks(matcher, offset, limit).equals(page), "page " + offset + "+" + limit + " of " + name);
+
+        int k = 1 + random.nextInt(20);
+        List<Task> sorted = new ArrayList<>(expected);
+        sorted.sort(null); // a stable sort, like topTasks keeps ties in task order
+        List<Task> top = project.topTasks(matcher, k);
+        check(top.equals(sorted.subList(0, Math.min(k, sorted.size()))), "top " + k + " of " + name);
+        for (int i = 1; i < top.size(); i++) {
+            check(top.get(i - 1).getPrio().compareTo(top.get(i).getPrio()) >= 0, "top " + name + " has highest priority first");
+        }
+    }
+
+    private static void checkTitleSearches() {
+        Random random = new Random(5);
+        ProjectsManager manager = new ProjectsManager();
+        String[] words = {"Alpha", "beta", "GAMMA", "Straße", "straße", "Åre", "ÅRE", "x", "xy", "Delta dawn"};
+        List<Project> added = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            if (random.nextInt(4) == 0 && !added.isEmpty()) {
+                manager.removeProject(added.remove(random.nextInt(added.size())));
+            } else {
+                String title = words[random.nextInt(words.length)] + " " + step + " " + words[random.nextInt(words.length)];
+                added.add(manager.addProject(title, "d"));
+            }
+            if (step % 41 == 0) {
+                for (String word : words) {
+                    compareTitles(manager, word);
+                    compareTitles(manager, word.substring(0, 1));
+                    compareTitles(manager, word.toUpperCase() + " 1");
+                }
+                compareTitles(manager, "");
+                compareTitles(manager, "no such title");
+            }
+        }
+    }
+
+    private static void compareTitles(ProjectsManager manager, String text) {
+        String folded = CaseFolding.fold(text);
+        List<Project> expected = new ArrayList<>();
+        for (Project project : manager.getProjects()) {
+            if (CaseFolding.fold(project.getTitle()).contains(folded)) {
+                expected.add(project);
+            }
+        }
+        List<Project> found = new ArrayList<>(manager.findProjects(text));
+        found.sort(null);
+        expected.sort(null);
+        check(found.equals(expected), "findProjects \"" + text + "\" found " + found.size() + ", expected " + expected.size());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}